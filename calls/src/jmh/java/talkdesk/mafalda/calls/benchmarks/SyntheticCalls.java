@@ -0,0 +1,54 @@
+package talkdesk.mafalda.calls.benchmarks;
+
+import talkdesk.mafalda.calls.model.Call;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates the same synthetic calls on every run, so the results of different runs can be compared
+ */
+public final class SyntheticCalls {
+
+    public static final long SEED = 20210709L;
+    public static final long FIRST_DAY = Timestamp.valueOf("2021-01-01 00:00:00").getTime();
+    public static final int DAYS = 365;
+    public static final int NUMBERS = 10_000;
+    public static final long MAX_DURATION = TimeUnit.HOURS.toMillis(2);
+
+    private SyntheticCalls() {
+    }
+
+    /**
+     * @param size number of calls
+     * @return ended calls spread over one year, between a pool of numbers
+     */
+    public static List<Call> endedCalls(int size) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        List<Call> calls = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            long startTime = FIRST_DAY + random.nextLong(TimeUnit.DAYS.toMillis(DAYS));
+            Call call = new Call();
+            call.setId(i + 1L);
+            call.setCallerNumber(number(random.nextInt(NUMBERS)));
+            call.setCalleeNumber(number(random.nextInt(NUMBERS)));
+            call.setType(random.nextBoolean() ? "INBOUND" : "OUTBOUND");
+            call.setStatus("ENDED_CALL");
+            call.setStartTime(new Timestamp(startTime));
+            call.setEndTime(new Timestamp(startTime + random.nextLong(MAX_DURATION)));
+            calls.add(call);
+        }
+        return calls;
+    }
+
+    /**
+     * @param index index of the number
+     * @return a phone number
+     */
+    public static String number(int index) {
+        return String.valueOf(910_000_000 + index);
+    }
+}
@@ -0,0 +1,94 @@
+package talkdesk.mafalda.calls.reactive;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import talkdesk.mafalda.calls.CallsServiceApplication;
+import talkdesk.mafalda.calls.benchmarks.SyntheticCalls;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to answer N concurrent requests listing a page of calls, with the servlet stack (Tomcat, JDBC) and the
+ * reactive stack (Netty, R2DBC) of the same application on the same hardware, over an in-memory H2 database
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class CallStackBenchmark {
+
+    private static final String DATABASE = "mem:stack;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    private static final int CALLS = 1000;
+
+    @Param({"servlet", "reactive"})
+    private String stack;
+
+    @Param({"50", "500"})
+    private int concurrentRequests;
+
+    private ConfigurableApplicationContext context;
+
+    private HttpClient httpClient;
+
+    private HttpRequest getCalls;
+
+    @Setup
+    public void setUp() throws Exception {
+        // arguments, as they take precedence over the application.properties of the tests in the classpath
+        context = new SpringApplicationBuilder(CallsServiceApplication.class).run(
+                "--spring.main.web-application-type=" + stack,
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:" + DATABASE,
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.flyway.enabled=false",
+                "--spring.jpa.hibernate.ddl-auto=create-drop",
+                "--calls.reactive.r2dbc.url=r2dbc:h2:" + DATABASE.replace("mem:", "mem:///"),
+                "--calls.tracing.mode=off");
+        String port = context.getEnvironment().getProperty("local.server.port");
+        httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+        StringBuilder calls = new StringBuilder("[");
+        for (int i = 0; i < CALLS; i++) {
+            calls.append(i == 0 ? "" : ",").append("{\"callerNumber\":\"").append(SyntheticCalls.number(2 * i))
+                    .append("\",\"calleeNumber\":\"").append(SyntheticCalls.number(2 * i + 1))
+                    .append("\",\"type\":\"OUTBOUND\"}");
+        }
+        HttpResponse<String> created = httpClient.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/calls/create/bulk"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(calls.append(']').toString()))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        if (created.statusCode() != 201) {
+            throw new IllegalStateException("The calls were not created: " + created.body());
+        }
+        getCalls = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/calls?page=10&size=20&status=ON_CALL")).GET().build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int getCallsConcurrently() {
+        List<CompletableFuture<HttpResponse<byte[]>>> responses = new ArrayList<>(concurrentRequests);
+        for (int i = 0; i < concurrentRequests; i++) {
+            responses.add(httpClient.sendAsync(getCalls, HttpResponse.BodyHandlers.ofByteArray()));
+        }
+        int bytes = 0;
+        for (CompletableFuture<HttpResponse<byte[]>> response : responses) {
+            bytes += response.join().body().length;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,84 @@
+package talkdesk.mafalda.calls.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import talkdesk.mafalda.calls.benchmarks.SyntheticCalls;
+import talkdesk.mafalda.calls.dtos.CallDto;
+import talkdesk.mafalda.calls.exceptions.CallBadRequestException;
+import talkdesk.mafalda.calls.metrics.CallMetrics;
+import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.repos.CallRepository;
+import talkdesk.mafalda.calls.statistics.CallStatisticsAggregator;
+import talkdesk.mafalda.calls.statistics.CallStatisticsCache;
+import talkdesk.mafalda.calls.statistics.CallStatisticsEngine;
+import talkdesk.mafalda.calls.stream.CallEventStream;
+import talkdesk.mafalda.calls.writebehind.CallWriteBehind;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of checking if a new call is possible with N ongoing calls,
+ * without the database: the repository only returns the call saved
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class CallAdmissionBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    private int activeCalls;
+
+    private ActiveCallIndex activeCallIndex;
+
+    private CallServiceImpl callServiceImpl;
+
+    private CallDto freeCall;
+
+    private CallDto busyCall;
+
+    @Setup
+    public void setUp() {
+        activeCallIndex = new ActiveCallIndex();
+        for (int i = 0; i < activeCalls; i++) {
+            activeCallIndex.reserve(SyntheticCalls.number(i), SyntheticCalls.number(activeCalls + i));
+        }
+        CallRepository callRepository = (CallRepository) Proxy.newProxyInstance(CallRepository.class.getClassLoader(),
+                new Class<?>[]{CallRepository.class},
+                (proxy, method, args) -> "save".equals(method.getName()) ? args[0] : null);
+        CallMetrics callMetrics = new CallMetrics(new SimpleMeterRegistry(), activeCallIndex);
+        CallStatisticsAggregator callStatisticsAggregator =
+                new CallStatisticsAggregator(callRepository, callMetrics, CallStatisticsAggregator.DATABASE, 1);
+        callServiceImpl = new CallServiceImpl(callRepository, activeCallIndex,
+                new CallStatisticsEngine(callStatisticsAggregator), callStatisticsAggregator,
+                new CallStatisticsCache(callMetrics, Duration.ZERO, 0), new CallVersions(Duration.ZERO),
+                new CallEventStream(callMetrics, activeCallIndex, Duration.ZERO, 0, 0, Duration.ZERO, 1),
+                new CallWriteBehind(callRepository, null, null, null, callMetrics, CallWriteBehind.DIRECT,
+                        "memory", "journal", 0, Duration.ZERO, 0),
+                callMetrics);
+
+        freeCall = new CallDto(SyntheticCalls.number(2 * activeCalls), SyntheticCalls.number(2 * activeCalls + 1), "OUTBOUND");
+        busyCall = new CallDto(SyntheticCalls.number(activeCalls / 2), SyntheticCalls.number(2 * activeCalls + 2), "OUTBOUND");
+    }
+
+    @Benchmark
+    public Call admitCall() {
+        Call call = callServiceImpl.saveCall(freeCall);
+        activeCallIndex.remove(call);
+        return call;
+    }
+
+    @Benchmark
+    public CallBadRequestException rejectCallWithBusyCaller() {
+        try {
+            callServiceImpl.saveCall(busyCall);
+            throw new IllegalStateException("The caller number should be busy");
+        } catch (CallBadRequestException e) {
+            return e;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package talkdesk.mafalda.calls.statistics;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of finding the day of a call, done for every call aggregated,
+ * and of formatting the day and the duration, done once per day in the statistics
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CallFormattingBenchmark {
+
+    private Timestamp startTime;
+
+    private long callDuration;
+
+    @Setup
+    public void setUp() {
+        startTime = Timestamp.valueOf("2021-07-09 10:30:10.11");
+        callDuration = TimeUnit.MINUTES.toMillis(75) + 1234;
+    }
+
+    @Benchmark
+    public long getEpochDay() {
+        return CallStatisticsAccumulator.getEpochDay(startTime);
+    }
+
+    @Benchmark
+    public String formatDate() {
+        return CallStatisticsAccumulator.formatDate(startTime);
+    }
+
+    @Benchmark
+    public String formatCallDurationTime() {
+        return CallStatisticsAccumulator.formatCallDurationTime(callDuration);
+    }
+}
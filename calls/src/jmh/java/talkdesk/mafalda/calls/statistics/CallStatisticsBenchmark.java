@@ -0,0 +1,64 @@
+package talkdesk.mafalda.calls.statistics;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import talkdesk.mafalda.calls.benchmarks.SyntheticCalls;
+import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.model.CallStatistics;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of aggregating the statistics of all the ended calls, as done on a rebuild,
+ * and of keeping them up to date when one call is ended.
+ * The aggregation covers the duration by type, the calls by caller and callee number and the cost of the outbound calls.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class CallStatisticsBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    private int calls;
+
+    private List<Call> endedCalls;
+
+    private CallStatisticsAccumulator accumulator;
+
+    private Call call;
+
+    @Setup
+    public void setUp() {
+        endedCalls = SyntheticCalls.endedCalls(calls);
+        accumulator = new CallStatisticsAccumulator();
+        endedCalls.forEach(accumulator::add);
+        call = endedCalls.get(calls / 2);
+    }
+
+    @Benchmark
+    public CallStatisticsAccumulator aggregateAllCalls() {
+        CallStatisticsAccumulator aggregated = new CallStatisticsAccumulator();
+        for (Call endedCall : endedCalls) {
+            aggregated.add(endedCall);
+        }
+        return aggregated;
+    }
+
+    @Benchmark
+    public CallStatistics materializeStatistics() {
+        return accumulator.toCallStatistics();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void endAndDeleteOneCall(Blackhole blackhole) {
+        accumulator.add(call);
+        accumulator.remove(call);
+        blackhole.consume(accumulator);
+    }
+}
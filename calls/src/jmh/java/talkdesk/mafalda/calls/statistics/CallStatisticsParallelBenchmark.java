@@ -0,0 +1,51 @@
+package talkdesk.mafalda.calls.statistics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import talkdesk.mafalda.calls.benchmarks.SyntheticCalls;
+import talkdesk.mafalda.calls.metrics.CallMetrics;
+import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.service.ActiveCallIndex;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of aggregating the statistics of all the ended calls on the fork/join pool of the aggregator,
+ * from one worker, which aggregates the calls sequentially, up to sixteen.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class CallStatisticsParallelBenchmark {
+
+    @Param({"1000000"})
+    private int calls;
+
+    @Param({"1", "2", "4", "8", "16"})
+    private int parallelism;
+
+    private List<Call> endedCalls;
+
+    private CallStatisticsAggregator aggregator;
+
+    @Setup
+    public void setUp() {
+        endedCalls = SyntheticCalls.endedCalls(calls);
+        aggregator = new CallStatisticsAggregator(null, new CallMetrics(new SimpleMeterRegistry(), new ActiveCallIndex()),
+                CallStatisticsAggregator.CALLS, parallelism);
+    }
+
+    @TearDown
+    public void tearDown() {
+        aggregator.shutdown();
+    }
+
+    @Benchmark
+    public CallStatisticsAccumulator aggregateAllCalls() {
+        return aggregator.aggregate(endedCalls);
+    }
+}
@@ -2,10 +2,15 @@ package talkdesk.mafalda.calls;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcTransactionManagerAutoConfiguration;
 import org.springframework.boot.builder.SpringApplicationBuilder;
 import org.springframework.boot.web.servlet.support.SpringBootServletInitializer;
 
-@SpringBootApplication(scanBasePackages = {"talkdesk.mafalda.calls"})
+// the R2DBC connections of the reactive stack are configured by ReactiveCallConfiguration only when it is served,
+// a connection factory bean would disable the JPA data source and a second transaction manager its transactions
+@SpringBootApplication(scanBasePackages = {"talkdesk.mafalda.calls"},
+        exclude = {R2dbcAutoConfiguration.class, R2dbcTransactionManagerAutoConfiguration.class})
 public class CallsServiceApplication extends SpringBootServletInitializer {
 
     public static void main(String[] args) {
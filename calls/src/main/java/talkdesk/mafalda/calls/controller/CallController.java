@@ -1,84 +1,210 @@
 package talkdesk.mafalda.calls.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import io.swagger.v3.oas.annotations.Operation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springdoc.api.annotations.ParameterObject;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import talkdesk.mafalda.calls.dtos.CallDto;
+import talkdesk.mafalda.calls.execution.CallExecutor;
+import talkdesk.mafalda.calls.execution.CallWorkload;
 import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.model.CallCursorPage;
+import talkdesk.mafalda.calls.model.CallOutcome;
 import talkdesk.mafalda.calls.model.CallStatistics;
 import talkdesk.mafalda.calls.service.CallService;
+import talkdesk.mafalda.calls.stream.CallEventStream;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping(path = "/calls")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class CallController {
 
     public static final Logger LOGGER = LoggerFactory.getLogger(CallController.class);
 
     private final CallService callService;
 
+    private final CallExecutor callExecutor;
+
+    private final CallEventStream callEventStream;
+
+    private final ObjectMapper objectMapper;
+
     @Autowired
-    public CallController(CallService callService) {
+    public CallController(CallService callService, CallExecutor callExecutor, CallEventStream callEventStream,
+                          ObjectMapper objectMapper) {
         this.callService = callService;
+        this.callExecutor = callExecutor;
+        this.callEventStream = callEventStream;
+        // the export writes many calls to the same response, which is flushed and closed by the container
+        this.objectMapper = objectMapper.copy()
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     }
 
     @Operation(summary = "Get the pagination of the list of calls")
     @GetMapping
-    @ResponseStatus(HttpStatus.OK)
-    public Page<Call> getCalls(
+    public CompletableFuture<Page<Call>> getCalls(
             @ParameterObject Pageable pageable,
             @RequestParam(value = "type", required = false, defaultValue = "") String type,
-            @RequestParam(value = "status", required = false, defaultValue = "") String status) {
+            @RequestParam(value = "status", required = false, defaultValue = "") String status,
+            WebRequest request) {
         LOGGER.info("Accessing GET Calls endpoint");
-        return callService.getCalls(pageable.getPageNumber(), pageable.getPageSize(), type, status);
+        if (isNotModified(request, callService.getCallsVersion())) {
+            return null;
+        }
+        return callExecutor.execute(CallWorkload.ANALYTICS,
+                () -> callService.getCalls(pageable.getPageNumber(), pageable.getPageSize(), type, status));
+    }
+
+    @Operation(summary = "Get the list of calls from a cursor, ordered by start time, without counting all the calls")
+    @GetMapping(params = "cursor")
+    public CompletableFuture<CallCursorPage> getCalls(
+            @RequestParam(value = "cursor") String cursor,
+            @RequestParam(value = "size", required = false, defaultValue = "20") int size,
+            @RequestParam(value = "type", required = false, defaultValue = "") String type,
+            @RequestParam(value = "status", required = false, defaultValue = "") String status,
+            WebRequest request) {
+        LOGGER.info("Accessing GET Calls endpoint with cursor");
+        if (isNotModified(request, callService.getCallsVersion())) {
+            return null;
+        }
+        return callExecutor.execute(CallWorkload.ANALYTICS, () -> callService.getCalls(cursor, size, type, status));
+    }
+
+    @Operation(summary = "Export all the matching calls as newline delimited JSON, ordered by start time")
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportCalls(
+            @RequestParam(value = "type", required = false, defaultValue = "") String type,
+            @RequestParam(value = "status", required = false, defaultValue = "") String status,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        LOGGER.info("Accessing GET Calls export endpoint");
+        ObjectWriter callWriter = objectMapper.writerFor(Call.class);
+        StreamingResponseBody body = outputStream -> callService.exportCalls(type, status,
+                from == null ? null : Timestamp.valueOf(from), to == null ? null : Timestamp.valueOf(to), call -> {
+                    try {
+                        callWriter.writeValue(outputStream, call);
+                        outputStream.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
 
+    @Operation(summary = "Stream the calls started, ended and deleted and the periodic statistics changes as server-sent events")
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamCalls() {
+        LOGGER.info("Accessing GET Calls stream endpoint");
+        return callEventStream.subscribe();
     }
 
     @Operation(summary = "Create one call")
     @PostMapping("/create")
     @ResponseStatus(HttpStatus.CREATED)
-    public Call saveCall(@RequestBody @Validated CallDto calldto) {
+    public CompletableFuture<Call> saveCall(@RequestBody @Validated CallDto calldto) {
         LOGGER.info("Accessing POST Calls endpoint");
-        return callService.saveCall(calldto);
+        return callExecutor.execute(CallWorkload.ADMISSION, () -> callService.saveCall(calldto));
     }
 
     @Operation(summary = "Create multiple calls")
     @PostMapping("/create/bulk")
     @ResponseStatus(HttpStatus.CREATED)
-    public List<Call> saveCalls(@RequestBody @Validated List<CallDto> calls) {
+    public CompletableFuture<List<Call>> saveCalls(@RequestBody @Validated List<CallDto> calls) {
         LOGGER.info("Accessing POST Calls endpoint (BULK)");
-        return callService.saveCalls(calls);
+        return callExecutor.execute(CallWorkload.ADMISSION, () -> callService.saveCalls(calls));
     }
 
     @Operation(summary = "End call")
     @PatchMapping("/end/{callId}")
     @ResponseStatus(HttpStatus.OK)
-    public Call endCall(@PathVariable(value = "callId") Long callId) {
+    public CompletableFuture<Call> endCall(@PathVariable(value = "callId") Long callId) {
         LOGGER.info("Accessing PATCH Calls endpoint for ID: {}", callId);
-        return callService.endCall(callId);
+        return callExecutor.execute(CallWorkload.LIFECYCLE, () -> callService.endCall(callId));
     }
 
     @Operation(summary = "Delete call")
     @DeleteMapping("/{callId}")
     @ResponseStatus(HttpStatus.OK)
-    public void deleteCall(@PathVariable(value = "callId") Long callId) {
+    public CompletableFuture<Void> deleteCall(@PathVariable(value = "callId") Long callId) {
         LOGGER.info("Accessing DELETE Call endpoint for ID: {}", callId);
-        callService.deleteCall(callId);
+        return callExecutor.execute(CallWorkload.LIFECYCLE, () -> {
+            callService.deleteCall(callId);
+            return null;
+        });
     }
 
-    @Operation(summary = "Get all call statistics")
+    @Operation(summary = "End multiple calls with one statement, reporting the outcome of each id")
+    @PatchMapping("/end")
+    @ResponseStatus(HttpStatus.OK)
+    public CompletableFuture<List<CallOutcome>> endCalls(@RequestBody List<Long> callIds) {
+        LOGGER.info("Accessing PATCH Calls endpoint (BATCH)");
+        return callExecutor.execute(CallWorkload.LIFECYCLE, () -> callService.endCalls(callIds));
+    }
+
+    @Operation(summary = "Delete multiple calls with one statement, reporting the outcome of each id")
+    @DeleteMapping
+    @ResponseStatus(HttpStatus.OK)
+    public CompletableFuture<List<CallOutcome>> deleteCalls(@RequestBody List<Long> callIds) {
+        LOGGER.info("Accessing DELETE Calls endpoint (BATCH)");
+        return callExecutor.execute(CallWorkload.LIFECYCLE, () -> callService.deleteCalls(callIds));
+    }
+
+    @Operation(summary = "Get the call statistics, of all calls or of the calls of a type started in a time range")
     @GetMapping(value = "/statistics")
-    public CallStatistics getCallStatistics() {
+    public CompletableFuture<CallStatistics> getCallStatistics(
+            @RequestParam(value = "type", required = false, defaultValue = "") String type,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            WebRequest request) {
         LOGGER.info("Accessing GET Call Statistics endpoint");
-        return callService.getCallStatistics();
+        if (isNotModified(request, callService.getStatisticsVersion())) {
+            return null;
+        }
+        return callExecutor.execute(CallWorkload.ANALYTICS, () -> callService.getCallStatistics(type,
+                from == null ? null : Timestamp.valueOf(from), to == null ? null : Timestamp.valueOf(to)));
     }
 
+    @Operation(summary = "Rebuild all call statistics from the database")
+    @PostMapping(value = "/statistics/rebuild")
+    public CompletableFuture<CallStatistics> rebuildCallStatistics() {
+        LOGGER.info("Accessing POST Call Statistics rebuild endpoint");
+        return callExecutor.execute(CallWorkload.ANALYTICS, callService::rebuildCallStatistics);
+    }
+
+    /**
+     * Auxiliary function to tag the response with the version of the data, answering 304 Not Modified
+     * if the client already has it. The tag is weak so the response can still be compressed.
+     *
+     * @param request the request, with the tag of the version the client has in If-None-Match
+     * @param version the current version, read before the data
+     * @return true if the client has the current version and nothing else must be read
+     */
+    private static boolean isNotModified(WebRequest request, String version) {
+        return request.checkNotModified("W/\"" + version + "\"");
+    }
 }
@@ -0,0 +1,11 @@
+package talkdesk.mafalda.calls.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE)
+public class CallServiceUnavailableException extends RuntimeException {
+    public CallServiceUnavailableException(String message) {
+        super(message);
+    }
+}
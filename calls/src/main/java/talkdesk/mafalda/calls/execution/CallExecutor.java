@@ -0,0 +1,108 @@
+package talkdesk.mafalda.calls.execution;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import talkdesk.mafalda.calls.exceptions.CallServiceUnavailableException;
+import talkdesk.mafalda.calls.metrics.CallMetrics;
+import talkdesk.mafalda.calls.tracing.QueryTrace;
+
+import javax.annotation.PreDestroy;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Executes the requests to the calls API, chosen with the property calls.execution.mode:
+ * servlet (the default) executes them on the servlet thread, executors executes each {@link CallWorkload}
+ * on its own pool of threads with a bounded queue, so slow statistics cannot hold the threads and the
+ * database connections needed to create and end calls.
+ * <p>
+ * The requests that find the queue of their workload full are rejected with 503 Service Unavailable.
+ * The threads of all the workloads should not be more than the connections of the database pool.
+ */
+@Component
+public class CallExecutor {
+
+    public static final Logger LOGGER = LoggerFactory.getLogger(CallExecutor.class);
+    public static final String SERVLET = "servlet";
+    public static final String EXECUTORS = "executors";
+
+    private final CallMetrics callMetrics;
+
+    /**
+     * executor of each workload, empty when executing on the servlet threads
+     */
+    private final Map<CallWorkload, ThreadPoolExecutor> executors = new EnumMap<>(CallWorkload.class);
+
+    public CallExecutor(CallMetrics callMetrics,
+                        @Value("${calls.execution.mode:servlet}") String mode,
+                        @Value("${calls.execution.admission.threads:4}") int admissionThreads,
+                        @Value("${calls.execution.admission.queue-size:100}") int admissionQueueSize,
+                        @Value("${calls.execution.lifecycle.threads:4}") int lifecycleThreads,
+                        @Value("${calls.execution.lifecycle.queue-size:100}") int lifecycleQueueSize,
+                        @Value("${calls.execution.analytics.threads:2}") int analyticsThreads,
+                        @Value("${calls.execution.analytics.queue-size:10}") int analyticsQueueSize) {
+        this.callMetrics = callMetrics;
+        if (EXECUTORS.equals(mode)) {
+            createExecutor(CallWorkload.ADMISSION, admissionThreads, admissionQueueSize);
+            createExecutor(CallWorkload.LIFECYCLE, lifecycleThreads, lifecycleQueueSize);
+            createExecutor(CallWorkload.ANALYTICS, analyticsThreads, analyticsQueueSize);
+        } else if (!SERVLET.equals(mode)) {
+            throw new IllegalArgumentException("The execution mode must be servlet or executors not " + mode);
+        }
+    }
+
+    /**
+     * Execute a request, on the executor of its workload if there is one
+     *
+     * @param workload class of the request
+     * @param request  handles the request
+     * @param <T>      type of the response
+     * @return the response, completed when the request is executed
+     * @throws CallServiceUnavailableException if the queue of the workload is full
+     */
+    public <T> CompletableFuture<T> execute(CallWorkload workload, Supplier<T> request) {
+        ThreadPoolExecutor executor = executors.get(workload);
+        if (executor == null) {
+            return CompletableFuture.completedFuture(request.get());
+        }
+        // the database work is traced as part of the request, on the thread executing it
+        QueryTrace trace = QueryTrace.current();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                QueryTrace.resume(trace);
+                try {
+                    return request.get();
+                } finally {
+                    QueryTrace.stop();
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            callMetrics.countRejected(workload.getName());
+            LOGGER.warn("The {} queue is full, rejecting the request", workload.getName());
+            throw new CallServiceUnavailableException("Too many " + workload.getName() + " requests, retry later.");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executors.values().forEach(ThreadPoolExecutor::shutdown);
+    }
+
+    private void createExecutor(CallWorkload workload, int threads, int queueSize) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), new CustomizableThreadFactory("calls-" + workload.getName() + "-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        callMetrics.monitorExecutor(workload.getName(), executor);
+        executors.put(workload, executor);
+        LOGGER.info("Executing the {} requests on {} threads with a queue of {}", workload.getName(), threads, queueSize);
+    }
+}
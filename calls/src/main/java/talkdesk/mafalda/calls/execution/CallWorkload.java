@@ -0,0 +1,35 @@
+package talkdesk.mafalda.calls.execution;
+
+/**
+ * Classes of the requests to the calls API, each executed by its own executor
+ */
+public enum CallWorkload {
+
+    /**
+     * calls created, one or in bulk
+     */
+    ADMISSION("admission"),
+
+    /**
+     * calls ended or deleted
+     */
+    LIFECYCLE("lifecycle"),
+
+    /**
+     * calls listed and statistics computed or rebuilt
+     */
+    ANALYTICS("analytics");
+
+    private final String name;
+
+    CallWorkload(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the name of the workload in the properties and the metrics
+     */
+    public String getName() {
+        return name;
+    }
+}
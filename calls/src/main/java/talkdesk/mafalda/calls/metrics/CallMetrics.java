@@ -0,0 +1,289 @@
+package talkdesk.mafalda.calls.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.stereotype.Component;
+import talkdesk.mafalda.calls.service.ActiveCallIndex;
+
+import java.util.Collection;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Meters of the call service, exposed by the actuator prometheus endpoint.
+ * <ul>
+ * <li>calls.service: duration and count of each call service method, by the exception it throws</li>
+ * <li>calls.lifecycle: calls created, ended and deleted</li>
+ * <li>calls.admission: duration of the check that the numbers of a new call are not busy</li>
+ * <li>calls.bulk.size: calls per bulk request</li>
+ * <li>calls.statistics.rows: ended calls read to compute the statistics</li>
+ * <li>calls.statistics.cache: statistics requests served from the cache (hit) or computed (miss)</li>
+ * <li>calls.active: ongoing calls</li>
+ * <li>executor.queued, executor.active, executor.pool.size, executor.queue.remaining and executor.completed:
+ * requests waiting, executing and executed by the executor of each workload, by name</li>
+ * <li>calls.executor.rejected: requests rejected as the queue of their workload was full</li>
+ * <li>calls.stream.subscribers and calls.stream.dropped: subscribers of the calls stream and subscribers disconnected
+ * as they were too slow</li>
+ * <li>calls.write-behind.pending and calls.write-behind.flush: calls waiting in the journal and duration of each
+ * flush saving them, by result, with calls.write-behind.flush.size calls per flush</li>
+ * <li>calls.request.statements, calls.request.rows, calls.request.database and calls.request.repository.calls:
+ * SQL statements executed, rows fetched, time spent in the database and repository methods called by each request,
+ * by endpoint</li>
+ * </ul>
+ * The meters with tags are registered on their first use, as their tags are known then.
+ */
+@Component
+public class CallMetrics {
+
+    public static final String SERVICE = "calls.service";
+    public static final String LIFECYCLE = "calls.lifecycle";
+    public static final String ADMISSION = "calls.admission";
+    public static final String BULK_SIZE = "calls.bulk.size";
+    public static final String STATISTICS_ROWS = "calls.statistics.rows";
+    public static final String STATISTICS_CACHE = "calls.statistics.cache";
+    public static final String ACTIVE = "calls.active";
+    public static final String REQUEST_STATEMENTS = "calls.request.statements";
+    public static final String REQUEST_ROWS = "calls.request.rows";
+    public static final String REQUEST_DATABASE = "calls.request.database";
+    public static final String REQUEST_REPOSITORY_CALLS = "calls.request.repository.calls";
+    public static final String EXECUTOR_REJECTED = "calls.executor.rejected";
+    public static final String STREAM_SUBSCRIBERS = "calls.stream.subscribers";
+    public static final String STREAM_DROPPED = "calls.stream.dropped";
+    public static final String WRITE_BEHIND_PENDING = "calls.write-behind.pending";
+    public static final String WRITE_BEHIND_FLUSH = "calls.write-behind.flush";
+    public static final String WRITE_BEHIND_FLUSH_SIZE = "calls.write-behind.flush.size";
+    public static final String CREATED = "created";
+    public static final String ENDED = "ended";
+    public static final String DELETED = "deleted";
+    public static final String NO_EXCEPTION = "none";
+    public static final String HIT = "hit";
+    public static final String MISS = "miss";
+
+    private final MeterRegistry meterRegistry;
+
+    private final Timer admission;
+
+    private final DistributionSummary bulkSize;
+
+    private final DistributionSummary statisticsRows;
+
+    public CallMetrics(MeterRegistry meterRegistry, ActiveCallIndex activeCallIndex) {
+        this.meterRegistry = meterRegistry;
+        this.admission = Timer.builder(ADMISSION)
+                .description("Duration of the check that the numbers of a new call are not busy")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.bulkSize = DistributionSummary.builder(BULK_SIZE)
+                .description("Calls per bulk request")
+                .baseUnit("calls")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.statisticsRows = DistributionSummary.builder(STATISTICS_ROWS)
+                .description("Ended calls read to compute the statistics")
+                .baseUnit("rows")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder(ACTIVE, activeCallIndex, ActiveCallIndex::size)
+                .description("Ongoing calls")
+                .baseUnit("calls")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Time a call service method, tagged with the exception it throws
+     *
+     * @param method name of the method
+     * @param call   the call to the method
+     * @param <T>    type of the result
+     * @return the result of the method
+     */
+    public <T> T timeService(String method, Supplier<T> call) {
+        long start = System.nanoTime();
+        String exception = NO_EXCEPTION;
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            Timer.builder(SERVICE)
+                    .description("Duration of the call service methods")
+                    .tags("method", method, "exception", exception)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Time a call service method that returns nothing
+     *
+     * @param method name of the method
+     * @param call   the call to the method
+     */
+    public void timeService(String method, Runnable call) {
+        timeService(method, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    /**
+     * @param event created, ended or deleted
+     * @param calls number of calls
+     */
+    public void countLifecycle(String event, long calls) {
+        Counter.builder(LIFECYCLE)
+                .description("Calls created, ended and deleted")
+                .tag("event", event)
+                .register(meterRegistry)
+                .increment(calls);
+    }
+
+    /**
+     * @param nanos duration of an admission check
+     */
+    public void recordAdmission(long nanos) {
+        admission.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param calls calls of a bulk request
+     */
+    public void recordBulkSize(int calls) {
+        bulkSize.record(calls);
+    }
+
+    /**
+     * @param rows ended calls read to compute the statistics
+     */
+    public void recordStatisticsRows(long rows) {
+        statisticsRows.record(rows);
+    }
+
+    /**
+     * Monitor the queue and the threads of the executor of a workload
+     *
+     * @param workload name of the workload
+     * @param executor executor of the workload
+     */
+    public void monitorExecutor(String workload, ThreadPoolExecutor executor) {
+        new ExecutorServiceMetrics(executor, workload, Tags.empty()).bindTo(meterRegistry);
+    }
+
+    /**
+     * @param workload name of the workload of a request rejected as its queue was full
+     */
+    public void countRejected(String workload) {
+        Counter.builder(EXECUTOR_REJECTED)
+                .description("Requests rejected as the queue of their workload was full")
+                .tag("workload", workload)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * @param subscribers subscribers of the calls stream
+     */
+    public void monitorStream(Collection<?> subscribers) {
+        Gauge.builder(STREAM_SUBSCRIBERS, subscribers, Collection::size)
+                .description("Subscribers of the calls stream")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Count a subscriber of the calls stream disconnected as it was too slow
+     */
+    public void countStreamDropped() {
+        Counter.builder(STREAM_DROPPED)
+                .description("Subscribers of the calls stream disconnected as they were too slow")
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * @param writeBehind  saves the calls behind the journal
+     * @param pendingCalls calls waiting to be saved
+     * @param <T>          type of the write-behind
+     */
+    public <T> void monitorWriteBehind(T writeBehind, ToDoubleFunction<T> pendingCalls) {
+        Gauge.builder(WRITE_BEHIND_PENDING, writeBehind, pendingCalls)
+                .description("Calls and ends waiting in the journal to be saved")
+                .baseUnit("calls")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Record a flush of the calls waiting in the journal
+     *
+     * @param calls   calls and ends flushed
+     * @param nanos   duration of the flush
+     * @param success true if the calls were saved
+     */
+    public void recordWriteBehindFlush(int calls, long nanos, boolean success) {
+        Timer.builder(WRITE_BEHIND_FLUSH)
+                .description("Duration of the flushes saving the calls waiting in the journal")
+                .tag("result", success ? "success" : "failure")
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder(WRITE_BEHIND_FLUSH_SIZE)
+                .description("Calls and ends saved per flush of the journal")
+                .baseUnit("calls")
+                .register(meterRegistry)
+                .record(calls);
+    }
+
+    /**
+     * @param result hit or miss of a statistics request in the cache
+     */
+    public void countStatisticsCache(String result) {
+        Counter.builder(STATISTICS_CACHE)
+                .description("Statistics requests served from the cache or computed")
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * Record the database work of a request
+     *
+     * @param method          HTTP method of the request
+     * @param uri             URI pattern of the endpoint
+     * @param statements      SQL statements executed
+     * @param rows            rows fetched
+     * @param databaseNanos   time spent in the database
+     * @param repositoryCalls repository methods called
+     */
+    public void recordRequestQueries(String method, String uri, long statements, long rows, long databaseNanos,
+                                     long repositoryCalls) {
+        DistributionSummary.builder(REQUEST_STATEMENTS)
+                .description("SQL statements executed by each request")
+                .baseUnit("statements")
+                .tags("method", method, "uri", uri)
+                .register(meterRegistry)
+                .record(statements);
+        DistributionSummary.builder(REQUEST_ROWS)
+                .description("Rows fetched from the database by each request")
+                .baseUnit("rows")
+                .tags("method", method, "uri", uri)
+                .register(meterRegistry)
+                .record(rows);
+        Timer.builder(REQUEST_DATABASE)
+                .description("Time spent in the database by each request")
+                .tags("method", method, "uri", uri)
+                .register(meterRegistry)
+                .record(databaseNanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder(REQUEST_REPOSITORY_CALLS)
+                .description("Repository methods called by each request")
+                .baseUnit("calls")
+                .tags("method", method, "uri", uri)
+                .register(meterRegistry)
+                .record(repositoryCalls);
+    }
+}
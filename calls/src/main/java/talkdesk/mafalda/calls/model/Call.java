@@ -1,5 +1,8 @@
 package talkdesk.mafalda.calls.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.hibernate.annotations.GenericGenerator;
+
 import javax.persistence.*;
 import javax.validation.constraints.NotNull;
 import java.sql.Timestamp;
@@ -15,7 +18,8 @@ public class Call {
      * Id of the call (primary key)
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = CallIdGenerator.NAME)
+    @GenericGenerator(name = CallIdGenerator.NAME, strategy = "talkdesk.mafalda.calls.model.CallIdGenerator")
     @Column(name = "id")
     private long id;
     /**
@@ -51,6 +55,12 @@ public class Call {
      */
     @Column(name = "status")
     private String status;
+    /**
+     * whether the ended call is already counted in the daily rollups
+     */
+    @JsonIgnore
+    @Column(name = "rolled_up")
+    private boolean rolledUp;
 
     public Call() {
     }
@@ -110,4 +120,12 @@ public class Call {
     public void setStatus(String status) {
         this.status = status;
     }
+
+    public boolean isRolledUp() {
+        return rolledUp;
+    }
+
+    public void setRolledUp(boolean rolledUp) {
+        this.rolledUp = rolledUp;
+    }
 }
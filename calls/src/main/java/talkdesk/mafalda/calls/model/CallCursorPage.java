@@ -0,0 +1,43 @@
+package talkdesk.mafalda.calls.model;
+
+import java.util.List;
+
+/**
+ * Page of calls read with a cursor, without counting all the calls
+ */
+public class CallCursorPage {
+
+    /**
+     * calls of the page ordered by start time and id
+     */
+    private List<Call> content;
+
+    /**
+     * cursor to request the next page, null if this is the last page
+     */
+    private String nextCursor;
+
+    public CallCursorPage() {
+    }
+
+    public CallCursorPage(List<Call> content, String nextCursor) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Call> getContent() {
+        return content;
+    }
+
+    public void setContent(List<Call> content) {
+        this.content = content;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
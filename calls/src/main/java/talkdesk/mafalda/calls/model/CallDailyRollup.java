@@ -0,0 +1,70 @@
+package talkdesk.mafalda.calls.model;
+
+import javax.persistence.Column;
+import javax.persistence.EmbeddedId;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+/**
+ * Totals of the ended calls of one day, type and number
+ */
+@Entity
+@Table(name = "call_daily_rollup")
+public class CallDailyRollup {
+
+    /**
+     * day, type and number of the calls (primary key)
+     */
+    @EmbeddedId
+    private CallDailyRollupId id;
+    /**
+     * number of calls
+     */
+    @Column(name = "total_calls")
+    private long totalCalls;
+    /**
+     * total duration of the calls in milliseconds
+     */
+    @Column(name = "total_duration")
+    private long totalDuration;
+    /**
+     * total cost of the calls in cents
+     */
+    @Column(name = "total_cost_in_cents")
+    private long totalCostInCents;
+
+    public CallDailyRollup() {
+    }
+
+    public CallDailyRollupId getId() {
+        return id;
+    }
+
+    public void setId(CallDailyRollupId id) {
+        this.id = id;
+    }
+
+    public long getTotalCalls() {
+        return totalCalls;
+    }
+
+    public void setTotalCalls(long totalCalls) {
+        this.totalCalls = totalCalls;
+    }
+
+    public long getTotalDuration() {
+        return totalDuration;
+    }
+
+    public void setTotalDuration(long totalDuration) {
+        this.totalDuration = totalDuration;
+    }
+
+    public long getTotalCostInCents() {
+        return totalCostInCents;
+    }
+
+    public void setTotalCostInCents(long totalCostInCents) {
+        this.totalCostInCents = totalCostInCents;
+    }
+}
@@ -0,0 +1,79 @@
+package talkdesk.mafalda.calls.model;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * Key of the daily rollup: the day, the call type and the caller or callee number
+ */
+@Embeddable
+public class CallDailyRollupId implements Serializable {
+
+    private static final long serialVersionUID = 2811236504139826241L;
+    public static final String CALLER = "CALLER";
+    public static final String CALLEE = "CALLEE";
+
+    /**
+     * day of the start of the calls
+     */
+    @Column(name = "call_date")
+    private LocalDate callDate;
+    /**
+     * type of the calls (INBOUND or OUTBOUND)
+     */
+    @Column(name = "type")
+    private String type;
+    /**
+     * whether the number is the caller or the callee of the calls (CALLER or CALLEE)
+     */
+    @Column(name = "number_type")
+    private String numberType;
+    /**
+     * the caller or callee number
+     */
+    @Column(name = "number")
+    private String number;
+
+    public CallDailyRollupId() {
+    }
+
+    public CallDailyRollupId(LocalDate callDate, String type, String numberType, String number) {
+        this.callDate = callDate;
+        this.type = type;
+        this.numberType = numberType;
+        this.number = number;
+    }
+
+    public LocalDate getCallDate() {
+        return callDate;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getNumberType() {
+        return numberType;
+    }
+
+    public String getNumber() {
+        return number;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CallDailyRollupId that = (CallDailyRollupId) o;
+        return Objects.equals(callDate, that.callDate) && Objects.equals(type, that.type)
+                && Objects.equals(numberType, that.numberType) && Objects.equals(number, that.number);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(callDate, type, numberType, number);
+    }
+}
@@ -0,0 +1,34 @@
+package talkdesk.mafalda.calls.model;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.util.Properties;
+
+/**
+ * Generates the call ids from the call_id_seq sequence with the pooled optimizer,
+ * so only one in every allocation size inserts reads the sequence.
+ * <p>
+ * The allocation size is read from the spring.jpa.properties.calls.id.allocation-size property
+ * and must be equal to the increment of the sequence in the database.
+ */
+public class CallIdGenerator extends SequenceStyleGenerator {
+
+    public static final String NAME = "call_id_generator";
+    public static final String SEQUENCE_NAME = "call_id_seq";
+    public static final String ALLOCATION_SIZE_SETTING = "calls.id.allocation-size";
+    public static final int DEFAULT_ALLOCATION_SIZE = 50;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        int allocationSize = serviceRegistry.getService(ConfigurationService.class)
+                .getSetting(ALLOCATION_SIZE_SETTING, value -> Integer.parseInt(value.toString()), DEFAULT_ALLOCATION_SIZE);
+        params.setProperty(SEQUENCE_PARAM, SEQUENCE_NAME);
+        params.setProperty(INCREMENT_PARAM, String.valueOf(allocationSize));
+        params.setProperty(OPT_PARAM, "pooled");
+        super.configure(type, params, serviceRegistry);
+    }
+}
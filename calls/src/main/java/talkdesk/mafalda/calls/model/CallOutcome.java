@@ -0,0 +1,64 @@
+package talkdesk.mafalda.calls.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Outcome of ending or deleting one call of a batch, so the calls that could not be changed
+ * do not fail the whole batch
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CallOutcome {
+
+    public static final String ENDED = "ENDED";
+    public static final String DELETED = "DELETED";
+    public static final String ALREADY_ENDED = "ALREADY_ENDED";
+    public static final String NOT_FOUND = "NOT_FOUND";
+
+    /**
+     * id of the call
+     */
+    private long id;
+
+    /**
+     * outcome (ENDED, DELETED, ALREADY_ENDED or NOT_FOUND)
+     */
+    private String outcome;
+
+    /**
+     * the ended call, for the calls ended
+     */
+    private Call call;
+
+    public CallOutcome() {
+    }
+
+    public CallOutcome(long id, String outcome, Call call) {
+        this.id = id;
+        this.outcome = outcome;
+        this.call = call;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getOutcome() {
+        return outcome;
+    }
+
+    public void setOutcome(String outcome) {
+        this.outcome = outcome;
+    }
+
+    public Call getCall() {
+        return call;
+    }
+
+    public void setCall(Call call) {
+        this.call = call;
+    }
+}
@@ -0,0 +1,128 @@
+package talkdesk.mafalda.calls.model;
+
+import java.sql.Timestamp;
+
+/**
+ * Change of the call statistics in an interval, pushed periodically to the subscribers of the calls stream
+ */
+public class CallStatisticsDelta {
+
+    /**
+     * start of the interval
+     */
+    private Timestamp from;
+
+    /**
+     * end of the interval
+     */
+    private Timestamp to;
+
+    /**
+     * calls created in the interval
+     */
+    private long callsStarted;
+
+    /**
+     * calls ended in the interval
+     */
+    private long callsEnded;
+
+    /**
+     * calls deleted in the interval
+     */
+    private long callsDeleted;
+
+    /**
+     * change of the duration of the ended calls (hh:mm:ss), negative when more was deleted than ended
+     */
+    private String totalDuration;
+
+    /**
+     * change of the cost of the ended outbound calls
+     */
+    private double totalCost;
+
+    /**
+     * ongoing calls at the end of the interval
+     */
+    private long activeCalls;
+
+    public CallStatisticsDelta() {
+    }
+
+    public CallStatisticsDelta(Timestamp from, Timestamp to, long callsStarted, long callsEnded, long callsDeleted,
+                               String totalDuration, double totalCost, long activeCalls) {
+        this.from = from;
+        this.to = to;
+        this.callsStarted = callsStarted;
+        this.callsEnded = callsEnded;
+        this.callsDeleted = callsDeleted;
+        this.totalDuration = totalDuration;
+        this.totalCost = totalCost;
+        this.activeCalls = activeCalls;
+    }
+
+    public Timestamp getFrom() {
+        return from;
+    }
+
+    public void setFrom(Timestamp from) {
+        this.from = from;
+    }
+
+    public Timestamp getTo() {
+        return to;
+    }
+
+    public void setTo(Timestamp to) {
+        this.to = to;
+    }
+
+    public long getCallsStarted() {
+        return callsStarted;
+    }
+
+    public void setCallsStarted(long callsStarted) {
+        this.callsStarted = callsStarted;
+    }
+
+    public long getCallsEnded() {
+        return callsEnded;
+    }
+
+    public void setCallsEnded(long callsEnded) {
+        this.callsEnded = callsEnded;
+    }
+
+    public long getCallsDeleted() {
+        return callsDeleted;
+    }
+
+    public void setCallsDeleted(long callsDeleted) {
+        this.callsDeleted = callsDeleted;
+    }
+
+    public String getTotalDuration() {
+        return totalDuration;
+    }
+
+    public void setTotalDuration(String totalDuration) {
+        this.totalDuration = totalDuration;
+    }
+
+    public double getTotalCost() {
+        return totalCost;
+    }
+
+    public void setTotalCost(double totalCost) {
+        this.totalCost = totalCost;
+    }
+
+    public long getActiveCalls() {
+        return activeCalls;
+    }
+
+    public void setActiveCalls(long activeCalls) {
+        this.activeCalls = activeCalls;
+    }
+}
@@ -0,0 +1,129 @@
+package talkdesk.mafalda.calls.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * One day of the call statistics, streamed by the reactive API instead of the whole {@link CallStatistics}:
+ * the totals of the calls of a type, or the number of calls of a caller or callee number
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CallStatisticsEntry {
+
+    public static final String TOTALS = "TOTALS";
+    public static final String CALLER = "CALLER";
+    public static final String CALLEE = "CALLEE";
+
+    /**
+     * kind of the entry (TOTALS, CALLER or CALLEE)
+     */
+    private String kind;
+
+    /**
+     * day of the calls (yyyy-mm-dd)
+     */
+    private String day;
+
+    /**
+     * type of the calls, for the totals
+     */
+    private String type;
+
+    /**
+     * caller or callee number, for the number of calls of a number
+     */
+    private String number;
+
+    /**
+     * number of calls
+     */
+    private long totalCalls;
+
+    /**
+     * duration of the calls (hh:mm:ss), for the totals
+     */
+    private String totalDuration;
+
+    /**
+     * cost of the outbound calls, for the totals
+     */
+    private Double totalCost;
+
+    public CallStatisticsEntry() {
+    }
+
+    public static CallStatisticsEntry totals(String day, String type, long totalCalls, String totalDuration, Double totalCost) {
+        CallStatisticsEntry entry = new CallStatisticsEntry();
+        entry.kind = TOTALS;
+        entry.day = day;
+        entry.type = type;
+        entry.totalCalls = totalCalls;
+        entry.totalDuration = totalDuration;
+        entry.totalCost = totalCost;
+        return entry;
+    }
+
+    public static CallStatisticsEntry numberCalls(String kind, String day, String number, long totalCalls) {
+        CallStatisticsEntry entry = new CallStatisticsEntry();
+        entry.kind = kind;
+        entry.day = day;
+        entry.number = number;
+        entry.totalCalls = totalCalls;
+        return entry;
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public void setKind(String kind) {
+        this.kind = kind;
+    }
+
+    public String getDay() {
+        return day;
+    }
+
+    public void setDay(String day) {
+        this.day = day;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getNumber() {
+        return number;
+    }
+
+    public void setNumber(String number) {
+        this.number = number;
+    }
+
+    public long getTotalCalls() {
+        return totalCalls;
+    }
+
+    public void setTotalCalls(long totalCalls) {
+        this.totalCalls = totalCalls;
+    }
+
+    public String getTotalDuration() {
+        return totalDuration;
+    }
+
+    public void setTotalDuration(String totalDuration) {
+        this.totalDuration = totalDuration;
+    }
+
+    public Double getTotalCost() {
+        return totalCost;
+    }
+
+    public void setTotalCost(Double totalCost) {
+        this.totalCost = totalCost;
+    }
+}
@@ -0,0 +1,34 @@
+package talkdesk.mafalda.calls.model;
+
+import java.time.LocalDate;
+
+/**
+ * Totals of the calls of one day and type, aggregated by the database
+ */
+public interface DailyCallTotals {
+
+    /**
+     * @return day of the start of the calls
+     */
+    LocalDate getCallDate();
+
+    /**
+     * @return type of the calls (INBOUND or OUTBOUND)
+     */
+    String getType();
+
+    /**
+     * @return number of calls
+     */
+    long getTotalCalls();
+
+    /**
+     * @return total duration of the calls in milliseconds
+     */
+    long getTotalDuration();
+
+    /**
+     * @return total cost of the calls in cents
+     */
+    long getTotalCostInCents();
+}
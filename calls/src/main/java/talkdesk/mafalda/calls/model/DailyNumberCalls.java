@@ -0,0 +1,24 @@
+package talkdesk.mafalda.calls.model;
+
+import java.time.LocalDate;
+
+/**
+ * Number of calls of one caller or callee number in one day, aggregated by the database
+ */
+public interface DailyNumberCalls {
+
+    /**
+     * @return day of the start of the calls
+     */
+    LocalDate getCallDate();
+
+    /**
+     * @return the caller or callee number
+     */
+    String getNumber();
+
+    /**
+     * @return number of calls
+     */
+    long getTotalCalls();
+}
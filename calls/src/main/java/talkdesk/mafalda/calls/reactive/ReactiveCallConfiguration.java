@@ -0,0 +1,54 @@
+package talkdesk.mafalda.calls.reactive;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Serves the calls API with the reactive stack, chosen with the property spring.main.web-application-type=reactive:
+ * the requests are handled by {@link ReactiveCallController} on the few event loop threads of Netty and the calls
+ * are read and written with R2DBC, so the number of concurrent requests is not limited by the threads.
+ * <p>
+ * The JPA stack is still started, to migrate the database and load the ongoing calls into the active call index,
+ * but the servlet endpoints are not served.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveCallConfiguration {
+
+    /**
+     * Netty is preferred to Tomcat, which is also in the classpath for the servlet stack
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    /**
+     * The pool of R2DBC connections is owned by the repository and is not a bean, as the data source of JPA
+     * is not auto-configured when there is a connection factory bean
+     */
+    @Bean(destroyMethod = "dispose")
+    public ReactiveCallRepository reactiveCallRepository(
+            @Value("${calls.reactive.r2dbc.url}") String url,
+            @Value("${spring.datasource.username}") String username,
+            @Value("${spring.datasource.password}") String password,
+            @Value("${calls.reactive.r2dbc.pool-size:10}") int poolSize,
+            @Value("${spring.jpa.properties.calls.id.allocation-size:50}") int allocationSize) {
+        ConnectionFactoryOptions options = ConnectionFactoryOptions.parse(url).mutate()
+                .option(ConnectionFactoryOptions.USER, username)
+                .option(ConnectionFactoryOptions.PASSWORD, password)
+                .build();
+        ConnectionPool connectionPool = new ConnectionPool(ConnectionPoolConfiguration.builder(ConnectionFactories.get(options))
+                .initialSize(1)
+                .maxSize(poolSize)
+                .build());
+        return new ReactiveCallRepository(connectionPool, allocationSize);
+    }
+}
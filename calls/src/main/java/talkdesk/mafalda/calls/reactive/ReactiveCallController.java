@@ -0,0 +1,90 @@
+package talkdesk.mafalda.calls.reactive;
+
+import io.swagger.v3.oas.annotations.Operation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import talkdesk.mafalda.calls.dtos.CallDto;
+import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.model.CallStatisticsEntry;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Calls API of the reactive stack, with the same paths as the servlet CallController. The lists are streamed
+ * as newline delimited JSON by default, or as a JSON array with Accept: application/json.
+ */
+@RestController
+@RequestMapping(path = "/calls")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveCallController {
+
+    public static final Logger LOGGER = LoggerFactory.getLogger(ReactiveCallController.class);
+
+    private final ReactiveCallService reactiveCallService;
+
+    public ReactiveCallController(ReactiveCallService reactiveCallService) {
+        this.reactiveCallService = reactiveCallService;
+    }
+
+    @Operation(summary = "Stream the page of the list of calls, ordered by start time")
+    @GetMapping(produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Flux<Call> getCalls(
+            @RequestParam(value = "page", required = false, defaultValue = "0") int page,
+            @RequestParam(value = "size", required = false, defaultValue = "20") int size,
+            @RequestParam(value = "type", required = false, defaultValue = "") String type,
+            @RequestParam(value = "status", required = false, defaultValue = "") String status) {
+        LOGGER.info("Accessing GET Calls endpoint");
+        return reactiveCallService.getCalls(page, size, type, status);
+    }
+
+    @Operation(summary = "Create one call")
+    @PostMapping("/create")
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<Call> saveCall(@RequestBody @Validated CallDto calldto) {
+        LOGGER.info("Accessing POST Calls endpoint");
+        return reactiveCallService.saveCall(calldto);
+    }
+
+    @Operation(summary = "Create multiple calls")
+    @PostMapping("/create/bulk")
+    @ResponseStatus(HttpStatus.CREATED)
+    public Flux<Call> saveCalls(@RequestBody @Validated List<CallDto> calls) {
+        LOGGER.info("Accessing POST Calls endpoint (BULK)");
+        return reactiveCallService.saveCalls(calls);
+    }
+
+    @Operation(summary = "End call")
+    @PatchMapping("/end/{callId}")
+    public Mono<Call> endCall(@PathVariable(value = "callId") Long callId) {
+        LOGGER.info("Accessing PATCH Calls endpoint for ID: {}", callId);
+        return reactiveCallService.endCall(callId);
+    }
+
+    @Operation(summary = "Delete call")
+    @DeleteMapping("/{callId}")
+    public Mono<Void> deleteCall(@PathVariable(value = "callId") Long callId) {
+        LOGGER.info("Accessing DELETE Call endpoint for ID: {}", callId);
+        return reactiveCallService.deleteCall(callId);
+    }
+
+    @Operation(summary = "Stream the call statistics by day, of all calls or of the calls of a type started in a time range")
+    @GetMapping(value = "/statistics", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Flux<CallStatisticsEntry> getCallStatistics(
+            @RequestParam(value = "type", required = false, defaultValue = "") String type,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        LOGGER.info("Accessing GET Call Statistics endpoint");
+        return reactiveCallService.getCallStatistics(type,
+                from == null ? null : Timestamp.valueOf(from), to == null ? null : Timestamp.valueOf(to));
+    }
+}
@@ -0,0 +1,294 @@
+package talkdesk.mafalda.calls.reactive;
+
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Row;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.model.CallStatisticsEntry;
+import talkdesk.mafalda.calls.repos.CallRepository;
+import talkdesk.mafalda.calls.statistics.CallStatisticsAccumulator;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static talkdesk.mafalda.calls.service.CallServiceImpl.ENDED_CALL;
+import static talkdesk.mafalda.calls.service.CallServiceImpl.ON_CALL;
+import static talkdesk.mafalda.calls.service.CallServiceImpl.OUTBOUND;
+
+/**
+ * Reads and writes the calls with R2DBC, with the same queries as the {@link CallRepository}
+ * of the servlet stack. The rows are emitted as they are read, so the responses stream them with backpressure.
+ */
+public class ReactiveCallRepository {
+
+    private static final String CALL_COLUMNS = "id, caller_number, callee_number, start_time, end_time, type, status, rolled_up";
+
+    private static final String INSERT_CALL = "INSERT INTO call (id, caller_number, callee_number, start_time, type, status, rolled_up) " +
+            "VALUES (:id, :callerNumber, :calleeNumber, :startTime, :type, :status, FALSE)";
+
+    private static final String SELECT_CALL = "SELECT " + CALL_COLUMNS + " FROM call WHERE id = :id";
+
+    private static final String END_CALL = "UPDATE call SET status = '" + ENDED_CALL + "', end_time = :endTime " +
+            "WHERE id = :id AND status = '" + ON_CALL + "'";
+
+    private static final String DELETE_CALL = "DELETE FROM call WHERE id = :id";
+
+    private static final String RETURNING = " RETURNING " + CALL_COLUMNS;
+
+    private static final String COUNT_CALLS_BY_DAY_AND_NUMBER = "SELECT CAST(start_time AS DATE) AS callDate, %1$s AS number, " +
+            "COUNT(*) AS totalCalls FROM call " +
+            "WHERE status = :status AND type IN (:types) AND start_time >= :from AND start_time < :to " +
+            "GROUP BY CAST(start_time AS DATE), %1$s";
+
+    private final ConnectionFactory connectionFactory;
+
+    private final DatabaseClient databaseClient;
+
+    private final TransactionalOperator transactionalOperator;
+
+    private final int allocationSize;
+
+    /**
+     * whether the database returns the rows of an update or a delete, as PostgreSQL does
+     */
+    private final boolean returning;
+
+    /**
+     * next id of the allocated block and last id of the block, as the pooled ids of the servlet stack
+     */
+    private long nextId;
+
+    private long lastId = -1;
+
+    public ReactiveCallRepository(ConnectionFactory connectionFactory, int allocationSize) {
+        this.connectionFactory = connectionFactory;
+        this.databaseClient = DatabaseClient.create(connectionFactory);
+        // not a bean, the JPA transaction manager stays the only one of the application
+        this.transactionalOperator = TransactionalOperator.create(new R2dbcTransactionManager(connectionFactory));
+        this.allocationSize = allocationSize;
+        this.returning = "PostgreSQL".equals(connectionFactory.getMetadata().getName());
+    }
+
+    /**
+     * @param type   call type, or empty for all types
+     * @param status call status, or empty for all statuses
+     * @param offset calls skipped
+     * @param limit  maximum number of calls
+     * @return the calls ordered by start time and id
+     */
+    public Flux<Call> findCalls(String type, String status, long offset, int limit) {
+        List<String> conditions = new ArrayList<>(2);
+        if (!type.isEmpty()) {
+            conditions.add("type = :type");
+        }
+        if (!status.isEmpty()) {
+            conditions.add("status = :status");
+        }
+        String where = conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+        DatabaseClient.GenericExecuteSpec query = databaseClient.sql("SELECT " + CALL_COLUMNS + " FROM call" + where +
+                        " ORDER BY start_time, id LIMIT :limit OFFSET :offset")
+                .bind("limit", limit)
+                .bind("offset", offset);
+        if (!type.isEmpty()) {
+            query = query.bind("type", type);
+        }
+        if (!status.isEmpty()) {
+            query = query.bind("status", status);
+        }
+        return query.map(ReactiveCallRepository::toCall).all();
+    }
+
+    /**
+     * @param id id of the call
+     * @return the call, or empty if it does not exist
+     */
+    public Mono<Call> findById(long id) {
+        return databaseClient.sql(SELECT_CALL)
+                .bind("id", id)
+                .map(ReactiveCallRepository::toCall)
+                .one();
+    }
+
+    /**
+     * @param call new call, its id is allocated
+     * @return the saved call
+     */
+    public Mono<Call> insert(Call call) {
+        return allocateId().flatMap(id -> {
+            call.setId(id);
+            return databaseClient.sql(INSERT_CALL)
+                    .bind("id", id)
+                    .bind("callerNumber", call.getCallerNumber())
+                    .bind("calleeNumber", call.getCalleeNumber())
+                    .bind("startTime", call.getStartTime().toLocalDateTime())
+                    .bind("type", call.getType())
+                    .bind("status", call.getStatus())
+                    .then()
+                    .thenReturn(call);
+        });
+    }
+
+    /**
+     * @param calls new calls, their ids are allocated
+     * @return the saved calls, all inserted in one transaction
+     */
+    public Flux<Call> insertAll(List<Call> calls) {
+        return Flux.fromIterable(calls).concatMap(this::insert).as(transactionalOperator::transactional);
+    }
+
+    /**
+     * End the call in one statement, only if it is ongoing. On PostgreSQL the update returns the ended call,
+     * on other databases it is read after the update in the same transaction, while the row is locked.
+     *
+     * @param id      id of the call
+     * @param endTime end time of the call
+     * @return the ended call, or empty if it does not exist or is already ended
+     */
+    public Mono<Call> endCall(long id, Timestamp endTime) {
+        if (returning) {
+            return databaseClient.sql(END_CALL + RETURNING)
+                    .bind("endTime", endTime.toLocalDateTime())
+                    .bind("id", id)
+                    .map(ReactiveCallRepository::toCall)
+                    .one();
+        }
+        return databaseClient.sql(END_CALL)
+                .bind("endTime", endTime.toLocalDateTime())
+                .bind("id", id)
+                .fetch()
+                .rowsUpdated()
+                .filter(updated -> updated > 0)
+                .flatMap(updated -> findById(id))
+                .as(transactionalOperator::transactional);
+    }
+
+    /**
+     * Delete the call in one statement. On PostgreSQL the delete returns the deleted call, on other databases
+     * it is read and locked before the delete in the same transaction.
+     *
+     * @param id id of the call
+     * @return the deleted call, or empty if it does not exist
+     */
+    public Mono<Call> deleteById(long id) {
+        if (returning) {
+            return databaseClient.sql(DELETE_CALL + RETURNING)
+                    .bind("id", id)
+                    .map(ReactiveCallRepository::toCall)
+                    .one();
+        }
+        return databaseClient.sql(SELECT_CALL + " FOR UPDATE")
+                .bind("id", id)
+                .map(ReactiveCallRepository::toCall)
+                .one()
+                .flatMap(call -> databaseClient.sql(DELETE_CALL)
+                        .bind("id", id)
+                        .fetch()
+                        .rowsUpdated()
+                        .thenReturn(call))
+                .as(transactionalOperator::transactional);
+    }
+
+    /**
+     * @param status call status
+     * @param types  call types
+     * @param from   calls started at or after this time
+     * @param to     calls started before this time
+     * @return number of calls, duration and cost by day and type
+     */
+    public Flux<CallStatisticsEntry> sumCallsByDayAndType(String status, Collection<String> types, Timestamp from, Timestamp to) {
+        return bindRange(databaseClient.sql(CallRepository.SUM_CALLS_BY_DAY_AND_TYPE_BETWEEN), status, types, from, to)
+                .map(row -> {
+                    String type = row.get(1, String.class);
+                    long duration = row.get(3, Number.class).longValue();
+                    long costInCents = row.get(4, Number.class).longValue();
+                    return CallStatisticsEntry.totals(row.get(0, LocalDate.class).toString(), type,
+                            row.get(2, Number.class).longValue(), CallStatisticsAccumulator.formatCallDurationTime(duration),
+                            OUTBOUND.equals(type) ? costInCents / 100.0 : null);
+                })
+                .all();
+    }
+
+    /**
+     * @param kind   {@link CallStatisticsEntry#CALLER} or {@link CallStatisticsEntry#CALLEE}
+     * @param status call status
+     * @param types  call types
+     * @param from   calls started at or after this time
+     * @param to     calls started before this time
+     * @return number of calls by day and caller or callee number
+     */
+    public Flux<CallStatisticsEntry> countCallsByDayAndNumber(String kind, String status, Collection<String> types,
+                                                              Timestamp from, Timestamp to) {
+        String column = CallStatisticsEntry.CALLER.equals(kind) ? "caller_number" : "callee_number";
+        return bindRange(databaseClient.sql(String.format(COUNT_CALLS_BY_DAY_AND_NUMBER, column)), status, types, from, to)
+                .map(row -> CallStatisticsEntry.numberCalls(kind, row.get(0, LocalDate.class).toString(),
+                        row.get(1, String.class), row.get(2, Number.class).longValue()))
+                .all();
+    }
+
+    /**
+     * Close the connections of the pool
+     */
+    public void dispose() {
+        if (connectionFactory instanceof Disposable) {
+            ((Disposable) connectionFactory).dispose();
+        }
+    }
+
+    /**
+     * Allocate an id from the blocks of call_id_seq, each value of the sequence is the last id of its block
+     *
+     * @return the id
+     */
+    private Mono<Long> allocateId() {
+        synchronized (this) {
+            if (nextId <= lastId) {
+                return Mono.just(nextId++);
+            }
+        }
+        return databaseClient.sql("SELECT NEXTVAL('call_id_seq')")
+                .map(row -> row.get(0, Number.class).longValue())
+                .one()
+                .map(last -> {
+                    long first = Math.max(1, last - allocationSize + 1);
+                    synchronized (this) {
+                        nextId = first + 1;
+                        lastId = last;
+                    }
+                    return first;
+                });
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bindRange(DatabaseClient.GenericExecuteSpec query, String status,
+                                                               Collection<String> types, Timestamp from, Timestamp to) {
+        return query.bind("status", status)
+                .bind("types", types)
+                .bind("from", from.toLocalDateTime())
+                .bind("to", to.toLocalDateTime());
+    }
+
+    private static Call toCall(Row row) {
+        Call call = new Call();
+        call.setId(row.get("id", Long.class));
+        call.setCallerNumber(row.get("caller_number", String.class));
+        call.setCalleeNumber(row.get("callee_number", String.class));
+        call.setStartTime(toTimestamp(row.get("start_time", LocalDateTime.class)));
+        call.setEndTime(toTimestamp(row.get("end_time", LocalDateTime.class)));
+        call.setType(row.get("type", String.class));
+        call.setStatus(row.get("status", String.class));
+        call.setRolledUp(Boolean.TRUE.equals(row.get("rolled_up", Boolean.class)));
+        return call;
+    }
+
+    private static Timestamp toTimestamp(LocalDateTime time) {
+        return time == null ? null : Timestamp.valueOf(time);
+    }
+}
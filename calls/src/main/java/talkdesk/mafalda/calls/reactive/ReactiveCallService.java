@@ -0,0 +1,169 @@
+package talkdesk.mafalda.calls.reactive;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import talkdesk.mafalda.calls.dtos.CallDto;
+import talkdesk.mafalda.calls.exceptions.CallBadRequestException;
+import talkdesk.mafalda.calls.exceptions.CallNotFoundException;
+import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.model.CallStatisticsEntry;
+import talkdesk.mafalda.calls.service.ActiveCallIndex;
+import talkdesk.mafalda.calls.service.CallServiceImpl;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static talkdesk.mafalda.calls.service.CallServiceImpl.ENDED_CALL;
+import static talkdesk.mafalda.calls.service.CallServiceImpl.INBOUND;
+import static talkdesk.mafalda.calls.service.CallServiceImpl.ON_CALL;
+import static talkdesk.mafalda.calls.service.CallServiceImpl.OUTBOUND;
+import static talkdesk.mafalda.calls.statistics.CallStatisticsAggregator.MAX_START_TIME;
+import static talkdesk.mafalda.calls.statistics.CallStatisticsAggregator.MIN_START_TIME;
+
+/**
+ * Calls service of the reactive stack, with the same rules as {@link CallServiceImpl}: the calls are admitted
+ * in the shared active call index, which is only read and written in memory, and then read and written with
+ * {@link ReactiveCallRepository} without blocking.
+ * <p>
+ * The statistics are aggregated from the ended calls in the database on each request. The statistics sources,
+ * the statistics cache, the ETags and the calls stream of the servlet stack are not updated by this service,
+ * so it can only be used with calls.statistics.source=database.
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveCallService {
+
+    public static final Logger LOGGER = LoggerFactory.getLogger(ReactiveCallService.class);
+
+    private static final List<String> ALL_TYPES = Arrays.asList(INBOUND, OUTBOUND);
+
+    private final ReactiveCallRepository reactiveCallRepository;
+
+    private final CallServiceImpl callServiceImpl;
+
+    private final ActiveCallIndex activeCallIndex;
+
+    public ReactiveCallService(ReactiveCallRepository reactiveCallRepository, CallServiceImpl callServiceImpl,
+                               ActiveCallIndex activeCallIndex,
+                               @Value("${calls.statistics.source:memory}") String statisticsSource) {
+        if (!"database".equals(statisticsSource)) {
+            throw new IllegalStateException("The reactive stack can only be used with the database statistics source");
+        }
+        this.reactiveCallRepository = reactiveCallRepository;
+        this.callServiceImpl = callServiceImpl;
+        this.activeCallIndex = activeCallIndex;
+    }
+
+    /**
+     * @param pageNumber page of the calls
+     * @param pageSize   calls by page
+     * @param type       call type, or empty for all types
+     * @param status     call status, or empty for all statuses
+     * @return the calls of the page ordered by start time
+     */
+    public Flux<Call> getCalls(int pageNumber, int pageSize, String type, String status) {
+        CallServiceImpl.checkCallFilters(type, status);
+        LOGGER.debug("Get the calls");
+        return reactiveCallRepository.findCalls(type, status, (long) pageNumber * pageSize, pageSize);
+    }
+
+    /**
+     * @param callDto model received
+     * @return the saved call
+     */
+    public Mono<Call> saveCall(CallDto callDto) {
+        Call call = callServiceImpl.admitCall(callDto);
+        LOGGER.debug("Creating call");
+        return runToCompletion(reactiveCallRepository.insert(call)
+                .doOnError(e -> activeCallIndex.remove(call)));
+    }
+
+    /**
+     * @param callsDto models received
+     * @return the saved calls, all saved or none
+     */
+    public Flux<Call> saveCalls(List<CallDto> callsDto) {
+        List<Call> calls = callServiceImpl.admitCalls(callsDto);
+        LOGGER.debug("Creating {} calls", calls.size());
+        return runToCompletion(reactiveCallRepository.insertAll(calls)
+                .doOnError(e -> calls.forEach(activeCallIndex::remove))
+                .collectList())
+                .flatMapMany(Flux::fromIterable);
+    }
+
+    /**
+     * @param callId the id of the call
+     * @return the ended call
+     */
+    public Mono<Call> endCall(long callId) {
+        LOGGER.debug("Ending the call: {}", callId);
+        return runToCompletion(reactiveCallRepository.endCall(callId, new Timestamp(System.currentTimeMillis()))
+                .doOnNext(activeCallIndex::remove))
+                .switchIfEmpty(Mono.defer(() -> reactiveCallRepository.findById(callId)
+                        .switchIfEmpty(Mono.error(() -> callNotFound(callId)))
+                        .flatMap(call -> {
+                            LOGGER.error("The call ID is already ended {}", callId);
+                            return Mono.error(new CallBadRequestException("The call is already ended: " + callId));
+                        })));
+    }
+
+    /**
+     * @param callId the id of the call
+     * @return completed when the call is deleted
+     */
+    public Mono<Void> deleteCall(long callId) {
+        LOGGER.debug("Deleting the call Id: {}", callId);
+        return runToCompletion(reactiveCallRepository.deleteById(callId)
+                .doOnNext(call -> {
+                    if (ON_CALL.equals(call.getStatus())) {
+                        activeCallIndex.remove(call);
+                    }
+                }))
+                .switchIfEmpty(Mono.error(() -> callNotFound(callId)))
+                .then();
+    }
+
+    /**
+     * @param type call type, or empty for all types
+     * @param from calls started at or after this time, or null
+     * @param to   calls started before this time, or null
+     * @return the totals by day and type of the ended calls, then the calls by day of each caller and callee number
+     */
+    public Flux<CallStatisticsEntry> getCallStatistics(String type, Timestamp from, Timestamp to) {
+        CallServiceImpl.checkCallFilters(type, "");
+        CallServiceImpl.checkTimeRange(from, to);
+        LOGGER.debug("Get the statistics of the {} calls started from {} to {}", type, from, to);
+        List<String> types = type.isEmpty() ? ALL_TYPES : Collections.singletonList(type);
+        Timestamp start = from == null ? MIN_START_TIME : from;
+        Timestamp end = to == null ? MAX_START_TIME : to;
+        return Flux.concat(reactiveCallRepository.sumCallsByDayAndType(ENDED_CALL, types, start, end),
+                reactiveCallRepository.countCallsByDayAndNumber(CallStatisticsEntry.CALLER, ENDED_CALL, types, start, end),
+                reactiveCallRepository.countCallsByDayAndNumber(CallStatisticsEntry.CALLEE, ENDED_CALL, types, start, end));
+    }
+
+    private static CallNotFoundException callNotFound(long callId) {
+        LOGGER.error("Call ID does not exist: {}", callId);
+        return new CallNotFoundException(callId);
+    }
+
+    /**
+     * Run a write of calls to the end even if the request is cancelled, for instance when the client disconnects,
+     * so the numbers are released according to what was written and never stay busy
+     *
+     * @param write inserts, ends or deletes the calls, releasing their numbers
+     * @return the result of the write
+     */
+    private static <T> Mono<T> runToCompletion(Mono<T> write) {
+        Mono<T> written = write.cache();
+        // the error is returned to the request, it is only ignored by this subscription
+        written.onErrorResume(e -> Mono.empty()).subscribe();
+        return written;
+    }
+}
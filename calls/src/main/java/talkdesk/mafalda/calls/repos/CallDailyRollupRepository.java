@@ -0,0 +1,54 @@
+package talkdesk.mafalda.calls.repos;
+
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import talkdesk.mafalda.calls.model.CallDailyRollup;
+import talkdesk.mafalda.calls.model.CallDailyRollupId;
+
+import java.time.LocalDate;
+
+@Repository
+public interface CallDailyRollupRepository extends JpaRepository<CallDailyRollup, CallDailyRollupId> {
+
+    /**
+     * Add the totals to the rollup of the day, type and number, creating it if it does not exist
+     *
+     * @param callDate         day of the calls
+     * @param type             call type
+     * @param numberType       CALLER or CALLEE
+     * @param number           caller or callee number
+     * @param totalCalls       number of calls to add
+     * @param totalDuration    duration to add
+     * @param totalCostInCents cost to add
+     */
+    @Modifying
+    @Query(value = "INSERT INTO call_daily_rollup " +
+            "(call_date, type, number_type, number, total_calls, total_duration, total_cost_in_cents) " +
+            "VALUES (:callDate, :type, :numberType, :number, :totalCalls, :totalDuration, :totalCostInCents) " +
+            "ON CONFLICT (call_date, type, number_type, number) DO UPDATE SET " +
+            "total_calls = call_daily_rollup.total_calls + EXCLUDED.total_calls, " +
+            "total_duration = call_daily_rollup.total_duration + EXCLUDED.total_duration, " +
+            "total_cost_in_cents = call_daily_rollup.total_cost_in_cents + EXCLUDED.total_cost_in_cents",
+            nativeQuery = true)
+    void increment(@Param("callDate") LocalDate callDate,
+                   @Param("type") String type,
+                   @Param("numberType") String numberType,
+                   @Param("number") String number,
+                   @Param("totalCalls") long totalCalls,
+                   @Param("totalDuration") long totalDuration,
+                   @Param("totalCostInCents") long totalCostInCents);
+
+    /**
+     * Delete the rollup if it has no calls left
+     *
+     * @param id day, type and number of the rollup
+     */
+    @Modifying
+    @Query("DELETE FROM CallDailyRollup r WHERE r.id = :id AND r.totalCalls <= 0")
+    void deleteIfEmpty(@Param("id") CallDailyRollupId id);
+
+}
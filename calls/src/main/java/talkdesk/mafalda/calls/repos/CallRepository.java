@@ -4,13 +4,47 @@ package talkdesk.mafalda.calls.repos;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.model.DailyCallTotals;
+import talkdesk.mafalda.calls.model.DailyNumberCalls;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
-public interface CallRepository extends JpaRepository<Call, Long> {
+public interface CallRepository extends JpaRepository<Call, Long>, CallRepositoryCustom {
+
+    /**
+     * Sum of the calls by day and type, followed by the filter of the calls and {@link #SUM_CALLS_BY_DAY_AND_TYPE_GROUP_BY}.
+     * The cost follows the same rules as the statistics: outbound calls cost 0.05 per minute
+     * after the first 5 minutes and the first 5 minutes cost 0.10, inbound calls are free.
+     */
+    String SUM_CALLS_BY_DAY_AND_TYPE = "SELECT CAST(start_time AS DATE) AS callDate, type AS type, COUNT(*) AS totalCalls, " +
+            "SUM(duration) AS totalDuration, " +
+            "SUM(CASE WHEN type <> 'OUTBOUND' THEN 0 WHEN minutes > 5 THEN (minutes - 5) * 5 ELSE 10 END) AS totalCostInCents " +
+            "FROM (SELECT start_time, type, duration, MOD(duration / 60000, 60) AS minutes " +
+            "FROM (SELECT start_time, type, " +
+            "CAST(ROUND((EXTRACT(EPOCH FROM end_time) - EXTRACT(EPOCH FROM start_time)) * 1000) AS BIGINT) AS duration " +
+            "FROM call ";
+
+    String SUM_CALLS_BY_DAY_AND_TYPE_GROUP_BY = ") call_duration) call_minutes GROUP BY CAST(start_time AS DATE), type";
+
+    /**
+     * Sum of the calls started in a time range by day and type, shared with the reactive stack
+     */
+    String SUM_CALLS_BY_DAY_AND_TYPE_BETWEEN = SUM_CALLS_BY_DAY_AND_TYPE +
+            "WHERE status = :status AND type IN (:types) AND start_time >= :from AND start_time < :to" +
+            SUM_CALLS_BY_DAY_AND_TYPE_GROUP_BY;
 
     /**
      * @param status   call status
@@ -47,5 +81,137 @@ public interface CallRepository extends JpaRepository<Call, Long> {
      */
     List<Call> findCallsByStatus(String status);
 
-}
+    /**
+     * Lock a chunk of calls that are not counted in the daily rollups yet,
+     * skipping the calls already locked by other instances
+     *
+     * @param status   call status
+     * @param pageable chunk of calls
+     * @return list of calls
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "javax.persistence.lock.timeout", value = "-2"))
+    List<Call> findCallsByStatusAndRolledUpFalse(String status, Pageable pageable);
+
+    /**
+     * Lock the calls of a batch, so they cannot change until they are ended or deleted
+     *
+     * @param ids ids of the calls
+     * @return the calls that exist
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<Call> findCallsByIdIn(Collection<Long> ids);
+
+    /**
+     * Lock a call, so it cannot change until it is deleted
+     *
+     * @param id id of the call
+     * @return the call, if it exists
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<Call> findCallById(long id);
+
+    /**
+     * Status of a call read from the database, not from the calls already read in the transaction
+     *
+     * @param id id of the call
+     * @return the status, if the call exists
+     */
+    @Query("SELECT c.status FROM Call c WHERE c.id = :id")
+    Optional<String> findStatusById(@Param("id") long id);
+
+    /**
+     * End the ongoing calls of a batch in one statement, the calls read before are detached
+     *
+     * @param ids      ids of the calls
+     * @param endTime  end time of the calls
+     * @param rolledUp whether the calls are counted in the daily rollups in the same transaction
+     * @return number of calls ended
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Call c SET c.status = 'ENDED_CALL', c.endTime = :endTime, c.rolledUp = :rolledUp " +
+            "WHERE c.id IN :ids AND c.status = 'ON_CALL'")
+    int endCallsByIdIn(@Param("ids") Collection<Long> ids, @Param("endTime") Timestamp endTime,
+                       @Param("rolledUp") boolean rolledUp);
+
+    /**
+     * Delete the calls of a batch in one statement, the calls read before are detached
+     *
+     * @param ids ids of the calls
+     * @return number of calls deleted
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Call c WHERE c.id IN :ids")
+    int deleteCallsByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Sum the calls by day and type in the database, with the cost rules of {@link #SUM_CALLS_BY_DAY_AND_TYPE}
+     *
+     * @param status call status
+     * @return number of calls, duration and cost by day and type
+     */
+    @Query(value = SUM_CALLS_BY_DAY_AND_TYPE + "WHERE status = :status" + SUM_CALLS_BY_DAY_AND_TYPE_GROUP_BY,
+            nativeQuery = true)
+    List<DailyCallTotals> sumCallsByDayAndType(@Param("status") String status);
+
+    /**
+     * @param status call status
+     * @return number of calls by day and caller number
+     */
+    @Query(value = "SELECT CAST(start_time AS DATE) AS callDate, caller_number AS number, COUNT(*) AS totalCalls " +
+            "FROM call WHERE status = :status GROUP BY CAST(start_time AS DATE), caller_number",
+            nativeQuery = true)
+    List<DailyNumberCalls> countCallsByDayAndCallerNumber(@Param("status") String status);
+
+    /**
+     * @param status call status
+     * @return number of calls by day and callee number
+     */
+    @Query(value = "SELECT CAST(start_time AS DATE) AS callDate, callee_number AS number, COUNT(*) AS totalCalls " +
+            "FROM call WHERE status = :status GROUP BY CAST(start_time AS DATE), callee_number",
+            nativeQuery = true)
+    List<DailyNumberCalls> countCallsByDayAndCalleeNumber(@Param("status") String status);
 
+    /**
+     * Sum the calls started in a time range by day and type in the database, with the same rules as
+     * {@link #sumCallsByDayAndType(String)}. The range is read from the (status, type, start_time) index.
+     *
+     * @param status call status
+     * @param types  call types
+     * @param from   calls started at or after this time
+     * @param to     calls started before this time
+     * @return number of calls, duration and cost by day and type
+     */
+    @Query(value = SUM_CALLS_BY_DAY_AND_TYPE_BETWEEN, nativeQuery = true)
+    List<DailyCallTotals> sumCallsByDayAndTypeBetween(@Param("status") String status, @Param("types") Collection<String> types,
+                                                      @Param("from") Timestamp from, @Param("to") Timestamp to);
+
+    /**
+     * @param status call status
+     * @param types  call types
+     * @param from   calls started at or after this time
+     * @param to     calls started before this time
+     * @return number of calls started in the time range by day and caller number
+     */
+    @Query(value = "SELECT CAST(start_time AS DATE) AS callDate, caller_number AS number, COUNT(*) AS totalCalls " +
+            "FROM call WHERE status = :status AND type IN (:types) AND start_time >= :from AND start_time < :to " +
+            "GROUP BY CAST(start_time AS DATE), caller_number",
+            nativeQuery = true)
+    List<DailyNumberCalls> countCallsByDayAndCallerNumberBetween(@Param("status") String status, @Param("types") Collection<String> types,
+                                                                 @Param("from") Timestamp from, @Param("to") Timestamp to);
+
+    /**
+     * @param status call status
+     * @param types  call types
+     * @param from   calls started at or after this time
+     * @param to     calls started before this time
+     * @return number of calls started in the time range by day and callee number
+     */
+    @Query(value = "SELECT CAST(start_time AS DATE) AS callDate, callee_number AS number, COUNT(*) AS totalCalls " +
+            "FROM call WHERE status = :status AND type IN (:types) AND start_time >= :from AND start_time < :to " +
+            "GROUP BY CAST(start_time AS DATE), callee_number",
+            nativeQuery = true)
+    List<DailyNumberCalls> countCallsByDayAndCalleeNumberBetween(@Param("status") String status, @Param("types") Collection<String> types,
+                                                                 @Param("from") Timestamp from, @Param("to") Timestamp to);
+
+}
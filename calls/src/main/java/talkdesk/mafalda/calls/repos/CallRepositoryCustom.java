@@ -0,0 +1,81 @@
+package talkdesk.mafalda.calls.repos;
+
+import talkdesk.mafalda.calls.model.Call;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+public interface CallRepositoryCustom {
+
+    /**
+     * Seek the calls ordered by start time and id that come after the given position,
+     * so the query cost does not depend on how many calls were already read
+     *
+     * @param startTime start time of the last call read, or null to start from the first call
+     * @param id        id of the last call read
+     * @param type      call type, or empty for all types
+     * @param status    call status, or empty for all status
+     * @param limit     maximum number of calls
+     * @return list of calls
+     */
+    List<Call> findCallsAfter(Timestamp startTime, long id, String type, String status, int limit);
+
+    /**
+     * Stream the calls ordered by start time and id with a forward only cursor, reading the rows in batches,
+     * so the memory used does not depend on the number of calls. The stream must be consumed and closed
+     * inside a transaction.
+     *
+     * @param type   call type, or empty for all types
+     * @param status call status, or empty for all status
+     * @param from   calls started at or after this time, or null
+     * @param to     calls started before this time, or null
+     * @return stream of calls detached from the persistence context
+     */
+    Stream<Call> streamCalls(String type, String status, Timestamp from, Timestamp to);
+
+    /**
+     * Insert the new calls with JDBC batches, one round trip per batch instead of one per call,
+     * taking the ids of the calls without one (0) from the call id sequence
+     *
+     * @param calls new calls
+     * @return the calls saved
+     */
+    List<Call> insertAll(List<Call> calls);
+
+    /**
+     * Set the ids of the new calls from the call id sequence, without saving them
+     *
+     * @param calls new calls
+     */
+    void allocateIds(List<Call> calls);
+
+    /**
+     * End an ongoing call with one conditional update, so concurrent requests cannot both end it.
+     * On PostgreSQL the update returns the ended call, on other databases it is read after the update.
+     * With the rollup statistics source the call is also marked as rolled up by the same update.
+     *
+     * @param id      call id
+     * @param endTime end time of the call
+     * @return the ended call, or empty if the call does not exist or is already ended
+     */
+    Optional<Call> endCall(long id, Timestamp endTime);
+
+    /**
+     * End the ongoing calls with JDBC batches, leaving the calls already ended unchanged
+     *
+     * @param calls ended calls, with their id and end time
+     * @return number of calls ended
+     */
+    int endAll(Collection<Call> calls);
+
+    /**
+     * @param ids ids of calls
+     * @return the ids of the calls that exist
+     */
+    Set<Long> findExistingIds(Collection<Long> ids);
+
+}
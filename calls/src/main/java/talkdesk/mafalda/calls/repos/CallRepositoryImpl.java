@@ -0,0 +1,233 @@
+package talkdesk.mafalda.calls.repos;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.jpa.QueryHints;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import talkdesk.mafalda.calls.model.Call;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Builds the queries with only the filters requested, so the database can use
+ * the (start_time, id) index instead of evaluating optional parameters on every row
+ */
+public class CallRepositoryImpl implements CallRepositoryCustom {
+
+    public static final String INSERT_CALL = "INSERT INTO call "
+            + "(id, caller_number, callee_number, start_time, end_time, type, status, rolled_up) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    public static final String END_CALL = "UPDATE call SET status = 'ENDED_CALL', end_time = ? "
+            + "WHERE id = ? AND status = 'ON_CALL'";
+
+    public static final String END_CALL_ROLLED_UP = "UPDATE call SET status = 'ENDED_CALL', end_time = ?, rolled_up = TRUE "
+            + "WHERE id = ? AND status = 'ON_CALL'";
+
+    public static final String CALL_COLUMNS = "id, caller_number, callee_number, start_time, end_time, type, status, rolled_up";
+
+    public static final String END_CALL_RETURNING = END_CALL + " RETURNING " + CALL_COLUMNS;
+
+    public static final String END_CALL_ROLLED_UP_RETURNING = END_CALL_ROLLED_UP + " RETURNING " + CALL_COLUMNS;
+
+    public static final String SELECT_CALL = "SELECT " + CALL_COLUMNS + " FROM call WHERE id = ?";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final int exportFetchSize;
+
+    private final int insertBatchSize;
+
+    /**
+     * whether the daily rollups count the calls as they end, in the same transaction
+     */
+    private final boolean rollUp;
+
+    /**
+     * whether the database returns the rows of an update, known on the first end of a call
+     */
+    private volatile Boolean updateReturning;
+
+    public CallRepositoryImpl(JdbcTemplate jdbcTemplate,
+                              @Value("${calls.export.fetch-size:1000}") int exportFetchSize,
+                              @Value("${calls.bulk.batch-size:1000}") int insertBatchSize,
+                              @Value("${calls.statistics.source:memory}") String statisticsSource) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.exportFetchSize = exportFetchSize;
+        this.insertBatchSize = insertBatchSize;
+        this.rollUp = "rollup".equals(statisticsSource);
+    }
+
+    @Override
+    public List<Call> findCallsAfter(Timestamp startTime, long id, String type, String status, int limit) {
+        StringBuilder jpql = new StringBuilder("SELECT c FROM Call c WHERE c.startTime IS NOT NULL");
+        if (startTime != null) {
+            // the redundant lower bound lets the database start the range scan of the index at the cursor
+            jpql.append(" AND c.startTime >= :startTime AND (c.startTime > :startTime OR c.id > :id)");
+        }
+        appendFilters(jpql, type, status);
+        jpql.append(" ORDER BY c.startTime, c.id");
+
+        TypedQuery<Call> query = entityManager.createQuery(jpql.toString(), Call.class);
+        if (startTime != null) {
+            query.setParameter("startTime", startTime);
+            query.setParameter("id", id);
+        }
+        setFilters(query, type, status);
+        return query.setMaxResults(limit).getResultList();
+    }
+
+    @Override
+    public Stream<Call> streamCalls(String type, String status, Timestamp from, Timestamp to) {
+        StringBuilder jpql = new StringBuilder("SELECT c FROM Call c WHERE 1 = 1");
+        if (from != null) {
+            jpql.append(" AND c.startTime >= :from");
+        }
+        if (to != null) {
+            jpql.append(" AND c.startTime < :to");
+        }
+        appendFilters(jpql, type, status);
+        jpql.append(" ORDER BY c.startTime, c.id");
+
+        TypedQuery<Call> query = entityManager.createQuery(jpql.toString(), Call.class)
+                .setHint(QueryHints.HINT_FETCH_SIZE, exportFetchSize)
+                .setHint(QueryHints.HINT_READONLY, true);
+        if (from != null) {
+            query.setParameter("from", from);
+        }
+        if (to != null) {
+            query.setParameter("to", to);
+        }
+        setFilters(query, type, status);
+        // detach each call once read, otherwise the persistence context keeps all the exported calls
+        return query.getResultStream().peek(entityManager::detach);
+    }
+
+    @Override
+    @Transactional
+    public List<Call> insertAll(List<Call> calls) {
+        List<Call> newCalls = calls.stream().filter(call -> call.getId() == 0).collect(Collectors.toList());
+        if (!newCalls.isEmpty()) {
+            allocateIds(newCalls);
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_CALL, calls, insertBatchSize, (statement, call) -> {
+            statement.setLong(1, call.getId());
+            statement.setString(2, call.getCallerNumber());
+            statement.setString(3, call.getCalleeNumber());
+            statement.setTimestamp(4, call.getStartTime());
+            statement.setTimestamp(5, call.getEndTime());
+            statement.setString(6, call.getType());
+            statement.setString(7, call.getStatus());
+            statement.setBoolean(8, call.isRolledUp());
+        });
+        return calls;
+    }
+
+    @Override
+    @Transactional
+    public void allocateIds(List<Call> calls) {
+        // the ids come from the same pooled sequence as the calls saved by JPA, one sequence read per allocation
+        SharedSessionContractImplementor session = entityManager.unwrap(SharedSessionContractImplementor.class);
+        IdentifierGenerator idGenerator = session.getFactory().getMetamodel().entityPersister(Call.class).getIdentifierGenerator();
+        for (Call call : calls) {
+            call.setId((Long) idGenerator.generate(session, call));
+        }
+    }
+
+    @Override
+    @Transactional
+    public Optional<Call> endCall(long id, Timestamp endTime) {
+        // the rollups count the call in the same transaction, so it is marked as counted by the same statement
+        if (isUpdateReturning()) {
+            return jdbcTemplate.query(rollUp ? END_CALL_ROLLED_UP_RETURNING : END_CALL_RETURNING, CallRepositoryImpl::mapCall,
+                    endTime, id).stream().findFirst();
+        }
+        // the updated row stays locked until the end of the transaction, so it is read as it was ended
+        if (jdbcTemplate.update(rollUp ? END_CALL_ROLLED_UP : END_CALL, endTime, id) == 0) {
+            return Optional.empty();
+        }
+        return jdbcTemplate.query(SELECT_CALL, CallRepositoryImpl::mapCall, id).stream().findFirst();
+    }
+
+    @Override
+    @Transactional
+    public int endAll(Collection<Call> calls) {
+        int[][] counts = jdbcTemplate.batchUpdate(END_CALL, calls, insertBatchSize, (statement, call) -> {
+            statement.setTimestamp(1, call.getEndTime());
+            statement.setLong(2, call.getId());
+        });
+        return Arrays.stream(counts).flatMapToInt(Arrays::stream).map(count -> Math.max(count, 0)).sum();
+    }
+
+    @Override
+    public Set<Long> findExistingIds(Collection<Long> ids) {
+        Set<Long> existingIds = new HashSet<>(ids.size());
+        List<Long> remaining = new ArrayList<>(ids);
+        // bounded IN lists, so the statement stays small whatever the number of ids
+        for (int from = 0; from < remaining.size(); from += insertBatchSize) {
+            existingIds.addAll(entityManager.createQuery("SELECT c.id FROM Call c WHERE c.id IN :ids", Long.class)
+                    .setParameter("ids", remaining.subList(from, Math.min(from + insertBatchSize, remaining.size())))
+                    .getResultList());
+        }
+        return existingIds;
+    }
+
+    private boolean isUpdateReturning() {
+        if (updateReturning == null) {
+            updateReturning = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection ->
+                    "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName()));
+        }
+        return updateReturning;
+    }
+
+    private static Call mapCall(ResultSet resultSet, int row) throws SQLException {
+        Call call = new Call();
+        call.setId(resultSet.getLong("id"));
+        call.setCallerNumber(resultSet.getString("caller_number"));
+        call.setCalleeNumber(resultSet.getString("callee_number"));
+        call.setStartTime(resultSet.getTimestamp("start_time"));
+        call.setEndTime(resultSet.getTimestamp("end_time"));
+        call.setType(resultSet.getString("type"));
+        call.setStatus(resultSet.getString("status"));
+        call.setRolledUp(resultSet.getBoolean("rolled_up"));
+        return call;
+    }
+
+    private static void appendFilters(StringBuilder jpql, String type, String status) {
+        if (!type.isEmpty()) {
+            jpql.append(" AND c.type = :type");
+        }
+        if (!status.isEmpty()) {
+            jpql.append(" AND c.status = :status");
+        }
+    }
+
+    private static void setFilters(TypedQuery<Call> query, String type, String status) {
+        if (!type.isEmpty()) {
+            query.setParameter("type", type);
+        }
+        if (!status.isEmpty()) {
+            query.setParameter("status", status);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package talkdesk.mafalda.calls.service;
+
+import org.springframework.stereotype.Component;
+import talkdesk.mafalda.calls.model.Call;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory index of the caller and callee numbers that are currently on a call.
+ * It allows to check if a number is busy without scanning all the ongoing calls.
+ * <p>
+ * Numbers are reserved with an atomic add on concurrent sets, so two concurrent calls
+ * can never hold the same caller or callee number and unrelated numbers never wait on each other.
+ */
+@Component
+public class ActiveCallIndex {
+
+    /**
+     * caller numbers of the ongoing calls
+     */
+    private final Set<String> busyCallerNumbers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * callee numbers of the ongoing calls
+     */
+    private final Set<String> busyCalleeNumbers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Replace the content of the index by the given ongoing calls
+     *
+     * @param activeCalls calls with ON_CALL status
+     */
+    public void load(Collection<Call> activeCalls) {
+        busyCallerNumbers.clear();
+        busyCalleeNumbers.clear();
+        activeCalls.forEach(this::add);
+    }
+
+    /**
+     * @param callerNumber number of the caller
+     * @return true if the number is the caller of an ongoing call
+     */
+    public boolean isCallerBusy(String callerNumber) {
+        return busyCallerNumbers.contains(callerNumber);
+    }
+
+    /**
+     * @param calleeNumber number of the callee
+     * @return true if the number is the callee of an ongoing call
+     */
+    public boolean isCalleeBusy(String calleeNumber) {
+        return busyCalleeNumbers.contains(calleeNumber);
+    }
+
+    /**
+     * Atomically reserve the numbers of a new call.
+     * If the callee number is busy the caller number reservation is rolled back.
+     *
+     * @param callerNumber number of the caller
+     * @param calleeNumber number of the callee
+     * @return the result of the reservation
+     */
+    public Reservation reserve(String callerNumber, String calleeNumber) {
+        if (!busyCallerNumbers.add(callerNumber)) {
+            return Reservation.CALLER_BUSY;
+        }
+        if (!busyCalleeNumbers.add(calleeNumber)) {
+            busyCallerNumbers.remove(callerNumber);
+            return Reservation.CALLEE_BUSY;
+        }
+        return Reservation.RESERVED;
+    }
+
+    /**
+     * Release the numbers reserved for a call
+     *
+     * @param callerNumber number of the caller
+     * @param calleeNumber number of the callee
+     */
+    public void release(String callerNumber, String calleeNumber) {
+        busyCallerNumbers.remove(callerNumber);
+        busyCalleeNumbers.remove(calleeNumber);
+    }
+
+    /**
+     * Mark the numbers of the call as busy
+     *
+     * @param call the started call
+     */
+    public void add(Call call) {
+        busyCallerNumbers.add(call.getCallerNumber());
+        busyCalleeNumbers.add(call.getCalleeNumber());
+    }
+
+    /**
+     * Release the numbers of the call
+     *
+     * @param call the ended or deleted call
+     */
+    public void remove(Call call) {
+        release(call.getCallerNumber(), call.getCalleeNumber());
+    }
+
+    /**
+     * @return number of ongoing calls in the index
+     */
+    public int size() {
+        return busyCallerNumbers.size();
+    }
+
+    /**
+     * Result of a number reservation
+     */
+    public enum Reservation {
+        RESERVED,
+        CALLER_BUSY,
+        CALLEE_BUSY
+    }
+}
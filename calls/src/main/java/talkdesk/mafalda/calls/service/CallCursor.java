@@ -0,0 +1,67 @@
+package talkdesk.mafalda.calls.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import talkdesk.mafalda.calls.exceptions.CallBadRequestException;
+import talkdesk.mafalda.calls.model.Call;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position of the last call read in the list of calls ordered by start time and id.
+ * Clients only see it as an opaque token.
+ */
+public final class CallCursor {
+
+    public static final Logger LOGGER = LoggerFactory.getLogger(CallCursor.class);
+    public static final String SEPARATOR = "|";
+
+    private final Timestamp startTime;
+
+    private final long id;
+
+    private CallCursor(Timestamp startTime, long id) {
+        this.startTime = startTime;
+        this.id = id;
+    }
+
+    /**
+     * @param call the last call read
+     * @return the cursor positioned after the call
+     */
+    public static String encode(Call call) {
+        String position = call.getStartTime().toInstant() + SEPARATOR + call.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor the token returned with the previous page, or empty for the first page
+     * @return the position of the cursor, null for the first page
+     */
+    public static CallCursor decode(String cursor) {
+        if (cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = position.lastIndexOf(SEPARATOR);
+            return new CallCursor(Timestamp.from(Instant.parse(position.substring(0, separator))),
+                    Long.parseLong(position.substring(separator + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+            LOGGER.error("Invalid cursor {}", cursor);
+            throw new CallBadRequestException("Invalid cursor " + cursor);
+        }
+    }
+
+    public Timestamp getStartTime() {
+        return startTime;
+    }
+
+    public long getId() {
+        return id;
+    }
+}
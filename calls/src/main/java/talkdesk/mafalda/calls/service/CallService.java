@@ -3,9 +3,13 @@ package talkdesk.mafalda.calls.service;
 import org.springframework.data.domain.Page;
 import talkdesk.mafalda.calls.dtos.CallDto;
 import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.model.CallCursorPage;
+import talkdesk.mafalda.calls.model.CallOutcome;
 import talkdesk.mafalda.calls.model.CallStatistics;
 
+import java.sql.Timestamp;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface CallService {
 
@@ -35,11 +39,42 @@ public interface CallService {
      */
     void deleteCall(long id);
 
+    /**
+     * End the ongoing calls of a batch with one statement
+     *
+     * @param ids call ids
+     * @return the outcome of each id, ENDED, ALREADY_ENDED or NOT_FOUND, in the order of the ids
+     */
+    List<CallOutcome> endCalls(List<Long> ids);
+
+    /**
+     * Delete the calls of a batch with one statement
+     *
+     * @param ids call ids
+     * @return the outcome of each id, DELETED or NOT_FOUND, in the order of the ids
+     */
+    List<CallOutcome> deleteCalls(List<Long> ids);
+
     /**
      * @return the statistics for all calls
      */
     CallStatistics getCallStatistics();
 
+    /**
+     * @param type call type, or empty for all types
+     * @param from calls started at or after this time, or null
+     * @param to   calls started before this time, or null
+     * @return the statistics for the ended calls of the type started in the time range
+     */
+    CallStatistics getCallStatistics(String type, Timestamp from, Timestamp to);
+
+    /**
+     * Rebuild the statistics from the calls in the database
+     *
+     * @return the rebuilt statistics for all calls
+     */
+    CallStatistics rebuildCallStatistics();
+
     /**
      * @param pageNumber the page number
      * @param pageSize   the page size
@@ -49,4 +84,40 @@ public interface CallService {
      */
     Page<Call> getCalls(int pageNumber, int pageSize, String type, String status);
 
+    /**
+     * @param cursor   the cursor returned with the previous page, or empty for the first page
+     * @param pageSize the page size
+     * @param type     call type
+     * @param status   call status
+     * @return the page of the list of calls ordered by start time and id, with the cursor of the next page
+     */
+    CallCursorPage getCalls(String cursor, int pageSize, String type, String status);
+
+    /**
+     * Read all the matching calls in one transaction, without keeping them in memory
+     *
+     * @param type     call type
+     * @param status   call status
+     * @param from     calls started at or after this time, or null
+     * @param to       calls started before this time, or null
+     * @param consumer receives each call ordered by start time and id
+     * @return the number of calls exported
+     */
+    long exportCalls(String type, String status, Timestamp from, Timestamp to, Consumer<Call> consumer);
+
+    /**
+     * Must be read before the calls, as it may be incremented meanwhile
+     *
+     * @return the version of the calls, changed when calls are created, ended or deleted
+     */
+    String getCallsVersion();
+
+    /**
+     * Must be read before the statistics, as it may be incremented meanwhile
+     *
+     * @return the version of the statistics, changed when calls are ended, ended calls are deleted
+     * or the statistics are rebuilt
+     */
+    String getStatisticsVersion();
+
 }
@@ -7,22 +7,36 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import talkdesk.mafalda.calls.dtos.CallDto;
 import talkdesk.mafalda.calls.exceptions.CallBadRequestException;
 import talkdesk.mafalda.calls.exceptions.CallNotFoundException;
+import talkdesk.mafalda.calls.metrics.CallMetrics;
 import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.model.CallCursorPage;
+import talkdesk.mafalda.calls.model.CallOutcome;
 import talkdesk.mafalda.calls.model.CallStatistics;
 import talkdesk.mafalda.calls.repos.CallRepository;
+import talkdesk.mafalda.calls.statistics.CallStatisticsAggregator;
+import talkdesk.mafalda.calls.statistics.CallStatisticsCache;
+import talkdesk.mafalda.calls.statistics.CallStatisticsSource;
+import talkdesk.mafalda.calls.stream.CallEventStream;
+import talkdesk.mafalda.calls.writebehind.CallWriteBehind;
 
+import javax.annotation.PostConstruct;
 import java.sql.Timestamp;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class CallServiceImpl implements CallService {
@@ -32,27 +46,64 @@ public class CallServiceImpl implements CallService {
     public static final String ENDED_CALL = "ENDED_CALL";
     public static final String INBOUND = "INBOUND";
     public static final String OUTBOUND = "OUTBOUND";
+    public static final int MAX_PAGE_SIZE = 2000;
+    public static final int MAX_BATCH_SIZE = 1000;
+    private static final String EMPTY_STATUS = "";
+    private static final String EMPTY_TYPE = "";
 
     private final CallRepository callRepository;
 
+    private final ActiveCallIndex activeCallIndex;
 
-    public CallServiceImpl(CallRepository callRepository) {
+    private final CallStatisticsSource callStatisticsSource;
+
+    private final CallStatisticsAggregator callStatisticsAggregator;
+
+    private final CallStatisticsCache callStatisticsCache;
+
+    private final CallVersions callVersions;
+
+    private final CallEventStream callEventStream;
+
+    private final CallWriteBehind callWriteBehind;
+
+    private final CallMetrics callMetrics;
+
+
+    public CallServiceImpl(CallRepository callRepository, ActiveCallIndex activeCallIndex,
+                           CallStatisticsSource callStatisticsSource, CallStatisticsAggregator callStatisticsAggregator,
+                           CallStatisticsCache callStatisticsCache, CallVersions callVersions,
+                           CallEventStream callEventStream, CallWriteBehind callWriteBehind, CallMetrics callMetrics) {
         this.callRepository = callRepository;
+        this.activeCallIndex = activeCallIndex;
+        this.callStatisticsSource = callStatisticsSource;
+        this.callStatisticsAggregator = callStatisticsAggregator;
+        this.callStatisticsCache = callStatisticsCache;
+        this.callVersions = callVersions;
+        this.callEventStream = callEventStream;
+        this.callWriteBehind = callWriteBehind;
+        this.callMetrics = callMetrics;
+    }
+
+    /**
+     * Load the ongoing calls from the database into the active call index, once the calls left in the
+     * write-behind journal are saved, recomputing the statistics if there were any
+     */
+    @PostConstruct
+    public void loadActiveCalls() {
+        if (callWriteBehind.getRecoveredCalls() > 0) {
+            callStatisticsSource.rebuild();
+        }
+        List<Call> activeCalls = callRepository.findCallsByStatus(ON_CALL);
+        activeCallIndex.load(activeCalls);
+        LOGGER.info("Loaded {} ongoing calls into the active call index", activeCalls.size());
     }
 
     @Override
     public Page<Call> getCalls(int pageNumber, int pageSize, String type, String status) {
         Pageable paging = PageRequest.of(pageNumber, pageSize);
 
-        if (!type.isEmpty() && (!type.equals(INBOUND) && !type.equals(OUTBOUND))) {
-            LOGGER.error("The call type must be OUTBOUND or INBOUND not {}", type);
-            throw new CallBadRequestException("The call type must be OUTBOUND or INBOUND not " + type);
-        }
-
-        if (!status.isEmpty() && (!status.equals(ON_CALL) && !status.equals(ENDED_CALL))) {
-            LOGGER.error("The call status must be ON_CALL or ENDED_CALL not {}", status);
-            throw new CallBadRequestException("The call status must be ON_CALL or ENDED_CALL not " + status);
-        }
+        checkCallFilters(type, status);
         LOGGER.debug("Get the calls");
         if (!type.isEmpty() && status.isEmpty()) {
             return this.callRepository.findCallsByType(type, paging);
@@ -64,84 +115,398 @@ public class CallServiceImpl implements CallService {
         return this.callRepository.findAllByStatusAndType(status, type, paging);
     }
 
+    @Override
+    public CallCursorPage getCalls(String cursor, int pageSize, String type, String status) {
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            LOGGER.error("The page size must be between 1 and {} not {}", MAX_PAGE_SIZE, pageSize);
+            throw new CallBadRequestException("The page size must be between 1 and " + MAX_PAGE_SIZE + " not " + pageSize);
+        }
+        checkCallFilters(type, status);
+        CallCursor position = CallCursor.decode(cursor);
+
+        LOGGER.debug("Get the calls after cursor {}", cursor);
+        // read one more call to know if there is a next page without counting the calls
+        List<Call> calls = position == null
+                ? this.callRepository.findCallsAfter(null, 0, type, status, pageSize + 1)
+                : this.callRepository.findCallsAfter(position.getStartTime(), position.getId(), type, status, pageSize + 1);
+        if (calls.size() <= pageSize) {
+            return new CallCursorPage(calls, null);
+        }
+        List<Call> page = new ArrayList<>(calls.subList(0, pageSize));
+        return new CallCursorPage(page, CallCursor.encode(page.get(pageSize - 1)));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long exportCalls(String type, String status, Timestamp from, Timestamp to, Consumer<Call> consumer) {
+        checkCallFilters(type, status);
+        checkTimeRange(from, to);
+
+        LOGGER.debug("Export the calls");
+        long exported = 0;
+        try (Stream<Call> calls = this.callRepository.streamCalls(type, status, from, to)) {
+            Iterator<Call> iterator = calls.iterator();
+            while (iterator.hasNext()) {
+                consumer.accept(iterator.next());
+                exported++;
+            }
+        }
+        LOGGER.info("Exported {} calls", exported);
+        return exported;
+    }
+
+    /**
+     * Auxiliary function to check the filters of the list of calls
+     *
+     * @param type   call type
+     * @param status call status
+     */
+    public static void checkCallFilters(String type, String status) {
+        if (!type.isEmpty() && (!type.equals(INBOUND) && !type.equals(OUTBOUND))) {
+            LOGGER.error("The call type must be OUTBOUND or INBOUND not {}", type);
+            throw new CallBadRequestException("The call type must be OUTBOUND or INBOUND not " + type);
+        }
+
+        if (!status.isEmpty() && (!status.equals(ON_CALL) && !status.equals(ENDED_CALL))) {
+            LOGGER.error("The call status must be ON_CALL or ENDED_CALL not {}", status);
+            throw new CallBadRequestException("The call status must be ON_CALL or ENDED_CALL not " + status);
+        }
+    }
+
+    /**
+     * Auxiliary function to check that a time range is not empty
+     *
+     * @param from start of the time range, or null
+     * @param to   end of the time range, or null
+     */
+    public static void checkTimeRange(Timestamp from, Timestamp to) {
+        if (from != null && to != null && !from.before(to)) {
+            LOGGER.error("The start of the time range {} must be before the end {}", from, to);
+            throw new CallBadRequestException("The start of the time range " + from + " must be before the end " + to);
+        }
+    }
 
     @Override
     public Call saveCall(CallDto callDto) {
-        checkIfCallIsPossible(callDto);
-        Call call = transformToEntity(callDto);
+        Call call = admitCall(callDto);
         LOGGER.debug("Creating call: {}", call.getId());
-        return callRepository.save(call);
+        Call savedCall;
+        try {
+            savedCall = callWriteBehind.isEnabled()
+                    ? callWriteBehind.createAll(Collections.singletonList(call)).get(0)
+                    : callRepository.save(call);
+        } catch (RuntimeException e) {
+            activeCallIndex.remove(call);
+            throw e;
+        }
+        callVersions.callsChanged(false);
+        callEventStream.callsStarted(Collections.singletonList(savedCall));
+        return savedCall;
     }
 
     @Override
     public List<Call> saveCalls(List<CallDto> callsDto) {
-        List<Call> calls = callsDto.stream().map(callDto -> {
-            checkIfCallIsPossible(callDto);
-            return transformToEntity(callDto);
-        }).collect(Collectors.toList());
-        LOGGER.debug("Creating calls: {}", calls);
-        return this.callRepository.saveAll(calls);
+        List<Call> calls = admitCalls(callsDto);
+        List<Call> savedCalls;
+        try {
+            LOGGER.debug("Creating {} calls", calls.size());
+            savedCalls = callWriteBehind.isEnabled()
+                    ? callWriteBehind.createAll(calls)
+                    : this.callRepository.insertAll(calls);
+        } catch (RuntimeException e) {
+            calls.forEach(activeCallIndex::remove);
+            throw e;
+        }
+        callVersions.callsChanged(false);
+        callEventStream.callsStarted(savedCalls);
+        return savedCalls;
+    }
+
+    /**
+     * Check if the call is possible and reserve its numbers in the active call index
+     *
+     * @param callDto model received
+     * @return the call to save, its numbers must be removed from the active call index if it is not saved
+     */
+    public Call admitCall(CallDto callDto) {
+        checkIfCallIsPossible(callDto);
+        return transformToEntity(callDto);
+    }
+
+    /**
+     * Check if all the calls are possible and reserve their numbers in the active call index
+     *
+     * @param callsDto models received
+     * @return the calls to save, their numbers must be removed from the active call index if they are not saved
+     */
+    public List<Call> admitCalls(List<CallDto> callsDto) {
+        checkIfCallsArePossible(callsDto);
+        List<Call> calls = new ArrayList<>(callsDto.size());
+        try {
+            for (CallDto callDto : callsDto) {
+                checkIfCallIsPossible(callDto);
+                calls.add(transformToEntity(callDto));
+            }
+        } catch (RuntimeException e) {
+            calls.forEach(activeCallIndex::remove);
+            throw e;
+        }
+        return calls;
     }
 
     @Override
+    @Transactional
     public Call endCall(long callId) {
-        Call call = checkIfCallEnded(callId);
-        setCallStatus(call, ENDED_CALL);
-        call.setEndTime(new Timestamp(System.currentTimeMillis()));
-        LOGGER.debug("Ending the call the call: {}", call.getId());
-        return this.callRepository.save(call);
+        Timestamp endTime = new Timestamp(System.currentTimeMillis());
+        LOGGER.debug("Ending the call the call: {}", callId);
+        Call endedCall;
+        if (callWriteBehind.isEnabled()) {
+            endedCall = callWriteBehind.end(callId, endTime);
+        } else {
+            // one conditional update instead of reading and saving the call, so concurrent requests cannot both end it
+            endedCall = this.callRepository.endCall(callId, endTime).orElseThrow(() -> callNotEnded(callId));
+        }
+        releaseNumbers(endedCall);
+        callStatisticsSource.callEnded(endedCall);
+        callStatisticsCache.callChanged(endedCall);
+        callVersions.callsChanged(true);
+        callEventStream.callEnded(endedCall);
+        return endedCall;
     }
 
     @Override
+    @Transactional
     public void deleteCall(long callId) {
         LOGGER.debug("Deleting the call Id: {}", callId);
+        // the call may still be waiting in the write-behind journal
+        callWriteBehind.flush();
         Call call = verifyCallId(callId);
         this.callRepository.deleteById(call.getId());
+        if (ON_CALL.equals(call.getStatus())) {
+            releaseNumbers(call);
+        } else if (ENDED_CALL.equals(call.getStatus())) {
+            callStatisticsSource.callDeleted(call);
+            callStatisticsCache.callChanged(call);
+        }
+        callVersions.callsChanged(ENDED_CALL.equals(call.getStatus()));
+        callEventStream.callDeleted(call);
     }
 
     @Override
-    public CallStatistics getCallStatistics() {
+    @Transactional
+    public List<CallOutcome> endCalls(List<Long> callIds) {
+        Set<Long> ids = checkBatch(callIds);
+        LOGGER.debug("Ending {} calls", ids.size());
+        // the calls may still be waiting in the write-behind journal
+        callWriteBehind.flush();
+        Map<Long, Call> calls = lockCalls(ids);
+        List<Long> ongoingIds = calls.values().stream()
+                .filter(call -> ON_CALL.equals(call.getStatus()))
+                .map(Call::getId)
+                .collect(Collectors.toList());
+        Timestamp endTime = new Timestamp(System.currentTimeMillis());
+        if (!ongoingIds.isEmpty()) {
+            // detaches the calls read, so ending them below is not saved again call by call
+            this.callRepository.endCallsByIdIn(ongoingIds, endTime, callStatisticsSource.isRollup());
+        }
 
-        CallStatistics callStatistics = new CallStatistics();
+        List<CallOutcome> outcomes = new ArrayList<>(ids.size());
+        List<Call> endedCalls = new ArrayList<>(ongoingIds.size());
+        for (Long id : ids) {
+            Call call = calls.get(id);
+            if (call == null) {
+                outcomes.add(new CallOutcome(id, CallOutcome.NOT_FOUND, null));
+            } else if (ENDED_CALL.equals(call.getStatus())) {
+                outcomes.add(new CallOutcome(id, CallOutcome.ALREADY_ENDED, null));
+            } else {
+                setCallStatus(call, ENDED_CALL);
+                call.setEndTime(endTime);
+                releaseNumbers(call);
+                callStatisticsSource.callEnded(call);
+                callStatisticsCache.callChanged(call);
+                endedCalls.add(call);
+                outcomes.add(new CallOutcome(id, CallOutcome.ENDED, call));
+            }
+        }
+        if (!ongoingIds.isEmpty()) {
+            callVersions.callsChanged(true);
+            callEventStream.callsEnded(endedCalls);
+        }
+        return outcomes;
+    }
+
+    @Override
+    @Transactional
+    public List<CallOutcome> deleteCalls(List<Long> callIds) {
+        Set<Long> ids = checkBatch(callIds);
+        LOGGER.debug("Deleting {} calls", ids.size());
+        // the calls may still be waiting in the write-behind journal
+        callWriteBehind.flush();
+        Map<Long, Call> calls = lockCalls(ids);
+        if (!calls.isEmpty()) {
+            this.callRepository.deleteCallsByIdIn(calls.keySet());
+        }
 
-        List<Call> calls = callRepository.findCallsByStatus(ENDED_CALL);
+        List<CallOutcome> outcomes = new ArrayList<>(ids.size());
+        List<Call> deletedCalls = new ArrayList<>(calls.size());
+        boolean statisticsChanged = false;
+        for (Long id : ids) {
+            Call call = calls.get(id);
+            if (call == null) {
+                outcomes.add(new CallOutcome(id, CallOutcome.NOT_FOUND, null));
+                continue;
+            }
+            if (ON_CALL.equals(call.getStatus())) {
+                releaseNumbers(call);
+            } else if (ENDED_CALL.equals(call.getStatus())) {
+                callStatisticsSource.callDeleted(call);
+                callStatisticsCache.callChanged(call);
+                statisticsChanged = true;
+            }
+            deletedCalls.add(call);
+            outcomes.add(new CallOutcome(id, CallOutcome.DELETED, null));
+        }
+        if (!calls.isEmpty()) {
+            callVersions.callsChanged(statisticsChanged);
+            callEventStream.callsDeleted(deletedCalls);
+        }
+        return outcomes;
+    }
 
-        callStatistics.setTotalInboundCallDuration(getDurationCallByType(INBOUND));
-        callStatistics.setTotalOutboundCallDuration(getDurationCallByType(OUTBOUND));
+    @Override
+    public CallStatistics getCallStatistics() {
+        return callStatisticsCache.get(EMPTY_TYPE, null, null, callStatisticsSource::getCallStatistics);
+    }
 
-        callStatistics.setTotalNumberOfCalls(calls.size());
-        setTotalCallsByCallerNumberAndCalleeNumber(calls, callStatistics);
+    @Override
+    public CallStatistics getCallStatistics(String type, Timestamp from, Timestamp to) {
+        if (type.isEmpty() && from == null && to == null) {
+            return getCallStatistics();
+        }
+        checkCallFilters(type, EMPTY_STATUS);
+        checkTimeRange(from, to);
+        LOGGER.debug("Get the statistics of the {} calls started from {} to {}", type, from, to);
+        return callStatisticsCache.get(type, from, to,
+                () -> callStatisticsAggregator.aggregateEndedCalls(type, from, to).toCallStatistics());
+    }
 
-        callStatistics.setTotalCostByOutbound(getTotalCostByOutbound());
+    @Override
+    public CallStatistics rebuildCallStatistics() {
+        CallStatistics callStatistics = callStatisticsSource.rebuild();
+        callStatisticsCache.clear();
+        callVersions.statisticsChanged();
         return callStatistics;
     }
 
+    @Override
+    public String getCallsVersion() {
+        return callVersions.getCallsVersion();
+    }
+
+    @Override
+    public String getStatisticsVersion() {
+        return callVersions.getStatisticsVersion();
+    }
+
     /**
      * Auxiliary function to check if the call is possible
-     * Search if the caller or receiver number is busy
      * Check if the number of the caller and the receiver are the same
+     * Reserve the caller and receiver numbers in the active call index, failing if any of them is busy.
+     * The reservation must be released if the call is not saved. The duration of the check is recorded.
      *
      * @param callDto model received
      */
     private void checkIfCallIsPossible(CallDto callDto) {
+        long start = System.nanoTime();
+        try {
+            checkIfNumbersAreFree(callDto);
+        } finally {
+            callMetrics.recordAdmission(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Auxiliary function of the admission check, reserving the numbers of the call
+     *
+     * @param callDto model received
+     */
+    private void checkIfNumbersAreFree(CallDto callDto) {
 
         if (callDto.getCalleeNumber().equals(callDto.getCallerNumber())) {
             LOGGER.error("Callee number should be different from than caller number");
             throw new CallBadRequestException("Callee number should be different from than caller number.");
         }
 
-        List<Call> calls = callRepository.findCallsByStatus(ON_CALL);
-        for (Call call : calls) {
-            if (call.getCallerNumber().equals(callDto.getCallerNumber())) {
-                LOGGER.error("Callee number {} is busy", callDto.getCallerNumber());
+        switch (activeCallIndex.reserve(callDto.getCallerNumber(), callDto.getCalleeNumber())) {
+            case CALLER_BUSY:
+                LOGGER.error("Caller number {} is busy", callDto.getCallerNumber());
                 throw new CallBadRequestException("Caller number " + callDto.getCallerNumber() + " is busy.");
-            } else if (call.getCalleeNumber().equals(callDto.getCalleeNumber())) {
+            case CALLEE_BUSY:
+                LOGGER.error("Callee number {} is busy", callDto.getCalleeNumber());
+                throw new CallBadRequestException("Callee number " + callDto.getCalleeNumber() + " is busy.");
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Auxiliary function to check all the calls of a batch before reserving any number,
+     * so a batch that conflicts with itself or with the ongoing calls is rejected without
+     * blocking the numbers of other requests meanwhile
+     *
+     * @param callsDto models received
+     */
+    private void checkIfCallsArePossible(List<CallDto> callsDto) {
+        Set<String> callerNumbers = new HashSet<>(callsDto.size() * 2);
+        Set<String> calleeNumbers = new HashSet<>(callsDto.size() * 2);
+        for (CallDto callDto : callsDto) {
+            if (callDto.getCalleeNumber().equals(callDto.getCallerNumber())) {
+                LOGGER.error("Callee number should be different from than caller number");
+                throw new CallBadRequestException("Callee number should be different from than caller number.");
+            }
+            if (!callerNumbers.add(callDto.getCallerNumber()) || activeCallIndex.isCallerBusy(callDto.getCallerNumber())) {
+                LOGGER.error("Caller number {} is busy", callDto.getCallerNumber());
+                throw new CallBadRequestException("Caller number " + callDto.getCallerNumber() + " is busy.");
+            }
+            if (!calleeNumbers.add(callDto.getCalleeNumber()) || activeCallIndex.isCalleeBusy(callDto.getCalleeNumber())) {
                 LOGGER.error("Callee number {} is busy", callDto.getCalleeNumber());
                 throw new CallBadRequestException("Callee number " + callDto.getCalleeNumber() + " is busy.");
             }
         }
     }
 
+    /**
+     * Auxiliary function to check the ids of a batch
+     *
+     * @param callIds ids received
+     * @return the ids without repetitions, in the order received
+     */
+    private static Set<Long> checkBatch(List<Long> callIds) {
+        if (callIds.isEmpty() || callIds.size() > MAX_BATCH_SIZE) {
+            LOGGER.error("The batch must have between 1 and {} call ids not {}", MAX_BATCH_SIZE, callIds.size());
+            throw new CallBadRequestException("The batch must have between 1 and " + MAX_BATCH_SIZE + " call ids not " + callIds.size());
+        }
+        if (callIds.contains(null)) {
+            LOGGER.error("The batch must not have null call ids");
+            throw new CallBadRequestException("The batch must not have null call ids.");
+        }
+        return new LinkedHashSet<>(callIds);
+    }
+
+    /**
+     * Auxiliary function to read and lock the calls of a batch with one statement
+     *
+     * @param ids call ids
+     * @return the calls that exist by id
+     */
+    private Map<Long, Call> lockCalls(Set<Long> ids) {
+        Map<Long, Call> calls = new HashMap<>(ids.size() * 2);
+        for (Call call : this.callRepository.findCallsByIdIn(ids)) {
+            calls.put(call.getId(), call);
+        }
+        return calls;
+    }
+
     /**
      * Auxiliary function to transform the data received in to Entity (Call)
      *
@@ -159,148 +524,46 @@ public class CallServiceImpl implements CallService {
     }
 
     /**
-     * Auxiliary function to verify if the id of the call exists and if the call is already ended
+     * Release the numbers of an ended or deleted call once the transaction is committed,
+     * so they stay busy if the call is rolled back
      *
-     * @param callId the id of the call
-     * @return the Call
+     * @param call the call that was ongoing
      */
-    private Call checkIfCallEnded(long callId) {
-        LOGGER.debug("Verifying existence of call for ID: {}", callId);
-        Optional<Call> callOptional = this.callRepository.findById(callId);
-        if (callOptional.isPresent()) {
-            Call call = callOptional.get();
-            if (call.getStatus().equals(ENDED_CALL)) {
-                LOGGER.error("The call ID is already ended {}", callId);
-                throw new CallBadRequestException("The call is already ended: " + callId);
+    private void releaseNumbers(Call call) {
+        CallTransactions.afterCommit(() -> activeCallIndex.remove(call));
+    }
 
-            }
-            return call;
+    /**
+     * Auxiliary function to explain why a call was not ended by the conditional update
+     *
+     * @param callId the id of the call
+     * @return CallBadRequestException if the call is already ended, CallNotFoundException if it does not exist
+     */
+    private RuntimeException callNotEnded(long callId) {
+        if (this.callRepository.existsById(callId)) {
+            LOGGER.error("The call ID is already ended {}", callId);
+            return new CallBadRequestException("The call is already ended: " + callId);
         }
         LOGGER.error("Call ID does not exist: {}", callId);
-        throw new CallNotFoundException(callId);
+        return new CallNotFoundException(callId);
     }
 
     /**
-     * Auxiliary function to verify if the id of the call exists
+     * Auxiliary function to verify if the id of the call exists, locking the call
+     * so the backfill of the rollups cannot count it while it is deleted
      *
      * @param callId the id of the call
      * @return the Call
      */
     private Call verifyCallId(long callId) {
         LOGGER.debug("Verifying existence of call for ID: {}", callId);
-        return this.callRepository.findById(callId).orElseThrow(() -> {
+        return this.callRepository.findCallById(callId).orElseThrow(() -> {
             LOGGER.error("Call ID does not exist: {}", callId);
             throw new CallNotFoundException(callId);
         });
     }
 
 
-    /**
-     * Auxiliary function to get the total call duration by type
-     *
-     * @param type call type
-     * @return the date and the total call duration
-     */
-    public Map<String, String> getDurationCallByType(String type) {
-        List<Call> calls = this.callRepository.findCallsByTypeAndStatus(type, ENDED_CALL);
-        Map<String, Long> durationByTypeAggregatedByDay = new HashMap<>();
-        Map<String, String> totalDurationCall = new HashMap<>();
-
-        calls.forEach(call -> {
-            long callDuration = call.getEndTime().getTime() - call.getStartTime().getTime();
-            String date = formatDate(call.getStartTime());
-            if (!durationByTypeAggregatedByDay.containsKey(date)) {
-                durationByTypeAggregatedByDay.put(date, callDuration);
-            } else {
-                durationByTypeAggregatedByDay.put(date, durationByTypeAggregatedByDay.get(date) + callDuration);
-            }
-        });
-
-        for (Map.Entry<String, Long> entry : durationByTypeAggregatedByDay.entrySet()) {
-            totalDurationCall.put(entry.getKey(), formatCallDurationTime(entry.getValue()));
-        }
-
-        return totalDurationCall;
-    }
-
-
-    /**
-     * Auxiliary function to set the total of calls by caller Number and callee Number
-     *
-     * @param calls          list of calls
-     * @param callStatistics the model of callStatistics
-     */
-    private void setTotalCallsByCallerNumberAndCalleeNumber(List<Call> calls, CallStatistics callStatistics) {
-        Map<String, Map<String, Long>> callsByCaller = new HashMap<>();
-        Map<String, Map<String, Long>> callsByCallee = new HashMap<>();
-
-        for (Call call : calls) {
-            String caller = call.getCallerNumber();
-            String callee = call.getCalleeNumber();
-            totalCallsByNumberType(call, callsByCaller, caller);
-            totalCallsByNumberType(call, callsByCallee, callee);
-        }
-
-        callStatistics.setTotalCallsByCallerNumber(callsByCaller);
-        callStatistics.setTotalCallsByCalleeNumber(callsByCallee);
-
-    }
-
-    /**
-     * Auxiliary function to parse the calls by callee number or caller number
-     *
-     * @param call              the call
-     * @param callsByNumberType map to collect the numberType aggregated by date
-     * @param numberType        Callee Number or Caller Number
-     */
-    public void totalCallsByNumberType(Call call, Map<String, Map<String, Long>> callsByNumberType, String numberType) {
-
-        String date = formatDate(call.getStartTime());
-
-        if (!callsByNumberType.containsKey(date)) {
-            callsByNumberType.put(date, new HashMap<>());
-        }
-
-        Map<String, Long> calls = callsByNumberType.get(date);
-
-        if (!calls.containsKey(numberType)) {
-            calls.put(numberType, (long) 1);
-        } else {
-            calls.put(numberType, calls.get(numberType) + 1);
-        }
-    }
-
-
-    /**
-     * Auxiliary function to get the total call cost by type.
-     * Outbound calls cost 0.05 per minute after the first 5 minutes. The first 5 minutes cost 0.10.
-     * Inbound calls are free.
-     *
-     * @return day and total cost
-     */
-    public Map<String, Double> getTotalCostByOutbound() {
-
-        Map<String, Double> totalCostByOutbound = new HashMap<>();
-
-        List<Call> calls = callRepository.findCallsByTypeAndStatus(OUTBOUND, ENDED_CALL);
-
-        for (Call call : calls) {
-            long durationCallTime = call.getEndTime().getTime() - call.getStartTime().getTime();
-            long durationCallTimeMinutes = TimeUnit.MILLISECONDS.toMinutes(durationCallTime) % TimeUnit.HOURS.toMinutes(1);
-
-            double totalCost = 0.10;
-            if (durationCallTimeMinutes > 5)
-                totalCost = (durationCallTimeMinutes - 5) * 0.05;
-
-            if (!totalCostByOutbound.containsKey(formatDate(call.getStartTime()))) {
-                totalCostByOutbound.put(formatDate(call.getStartTime()), totalCost);
-            } else {
-                totalCostByOutbound.put(formatDate(call.getStartTime()), totalCostByOutbound.get(formatDate(call.getStartTime())) + totalCost);
-            }
-        }
-        return totalCostByOutbound;
-    }
-
     /**
      * Auxiliary function to update the status and the start time of the call, when a call is started
      *
@@ -311,28 +574,4 @@ public class CallServiceImpl implements CallService {
         call.setStatus(status);
     }
 
-    /**
-     * Auxiliary function to format time value to a date (dd-mm-yyyy)
-     *
-     * @param time time
-     * @return time into String
-     */
-    private String formatDate(Timestamp time) {
-        DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-        return dateFormat.format(time);
-    }
-
-    /**
-     * Auxiliary function to format the call duration into hh:mm:ss
-     *
-     * @param callDuration call duration
-     * @return call duration into String
-     */
-    private String formatCallDurationTime(long callDuration) {
-        return String.format("%02d:%02d:%02d",
-                TimeUnit.MILLISECONDS.toHours(callDuration),
-                TimeUnit.MILLISECONDS.toMinutes(callDuration) % TimeUnit.HOURS.toMinutes(1),
-                TimeUnit.MILLISECONDS.toSeconds(callDuration) % TimeUnit.MINUTES.toSeconds(1));
-    }
-
 }
@@ -0,0 +1,32 @@
+package talkdesk.mafalda.calls.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Defers the work that must only see committed calls, such as the statistics, the versions and the events
+ */
+public final class CallTransactions {
+
+    private CallTransactions() {
+    }
+
+    /**
+     * Run the task once the current transaction is committed, or immediately if there is no transaction.
+     * The task is not run if the transaction is rolled back.
+     *
+     * @param task the work to defer
+     */
+    public static void afterCommit(Runnable task) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    task.run();
+                }
+            });
+        } else {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package talkdesk.mafalda.calls.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the changes of the calls and of the statistics made by this instance, so the responses can be tagged
+ * with the version of the data and revalidated without reading it again.
+ * <p>
+ * The counters are incremented once the changes are committed, and the versions must be read before the data,
+ * so a version is never newer than the data it tags.
+ * <p>
+ * The versions start with an id of the instance, as the counters of each instance are independent, and end with
+ * the current window of calls.etag.validity, so the changes of other instances are seen at most a window later.
+ */
+@Component
+public class CallVersions {
+
+    private final String instance = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+
+    private final long validityMillis;
+
+    private final AtomicLong calls = new AtomicLong();
+
+    private final AtomicLong statistics = new AtomicLong();
+
+    public CallVersions(@Value("${calls.etag.validity:5s}") Duration validity) {
+        this.validityMillis = validity.toMillis();
+    }
+
+    /**
+     * Called when calls are created, ended or deleted
+     *
+     * @param statisticsChanged true if an ended call was ended or deleted
+     */
+    public void callsChanged(boolean statisticsChanged) {
+        CallTransactions.afterCommit(() -> {
+            calls.incrementAndGet();
+            if (statisticsChanged) {
+                statistics.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Called when the statistics are rebuilt
+     */
+    public void statisticsChanged() {
+        CallTransactions.afterCommit(statistics::incrementAndGet);
+    }
+
+    /**
+     * @return the version of the calls
+     */
+    public String getCallsVersion() {
+        return version(calls.get());
+    }
+
+    /**
+     * @return the version of the statistics
+     */
+    public String getStatisticsVersion() {
+        return version(statistics.get());
+    }
+
+    private String version(long changes) {
+        long window = validityMillis > 0 ? System.currentTimeMillis() / validityMillis : 0;
+        return instance + '-' + changes + '-' + window;
+    }
+}
@@ -0,0 +1,125 @@
+package talkdesk.mafalda.calls.service;
+
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.domain.Page;
+import org.springframework.stereotype.Service;
+import talkdesk.mafalda.calls.dtos.CallDto;
+import talkdesk.mafalda.calls.metrics.CallMetrics;
+import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.model.CallCursorPage;
+import talkdesk.mafalda.calls.model.CallOutcome;
+import talkdesk.mafalda.calls.model.CallStatistics;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static talkdesk.mafalda.calls.metrics.CallMetrics.CREATED;
+import static talkdesk.mafalda.calls.metrics.CallMetrics.DELETED;
+import static talkdesk.mafalda.calls.metrics.CallMetrics.ENDED;
+
+/**
+ * Times every method of the call service and counts the calls created, ended and deleted,
+ * delegating to {@link CallServiceImpl}
+ */
+@Service
+@Primary
+public class MeteredCallService implements CallService {
+
+    private final CallServiceImpl callService;
+
+    private final CallMetrics callMetrics;
+
+    public MeteredCallService(CallServiceImpl callService, CallMetrics callMetrics) {
+        this.callService = callService;
+        this.callMetrics = callMetrics;
+    }
+
+    @Override
+    public Call saveCall(CallDto call) {
+        Call savedCall = callMetrics.timeService("saveCall", () -> callService.saveCall(call));
+        callMetrics.countLifecycle(CREATED, 1);
+        return savedCall;
+    }
+
+    @Override
+    public List<Call> saveCalls(List<CallDto> calls) {
+        callMetrics.recordBulkSize(calls.size());
+        List<Call> savedCalls = callMetrics.timeService("saveCalls", () -> callService.saveCalls(calls));
+        callMetrics.countLifecycle(CREATED, savedCalls.size());
+        return savedCalls;
+    }
+
+    @Override
+    public Call endCall(long id) {
+        Call endedCall = callMetrics.timeService("endCall", () -> callService.endCall(id));
+        callMetrics.countLifecycle(ENDED, 1);
+        return endedCall;
+    }
+
+    @Override
+    public void deleteCall(long id) {
+        callMetrics.timeService("deleteCall", () -> callService.deleteCall(id));
+        callMetrics.countLifecycle(DELETED, 1);
+    }
+
+    @Override
+    public List<CallOutcome> endCalls(List<Long> ids) {
+        List<CallOutcome> outcomes = callMetrics.timeService("endCalls", () -> callService.endCalls(ids));
+        callMetrics.countLifecycle(ENDED, count(outcomes, CallOutcome.ENDED));
+        return outcomes;
+    }
+
+    @Override
+    public List<CallOutcome> deleteCalls(List<Long> ids) {
+        List<CallOutcome> outcomes = callMetrics.timeService("deleteCalls", () -> callService.deleteCalls(ids));
+        callMetrics.countLifecycle(DELETED, count(outcomes, CallOutcome.DELETED));
+        return outcomes;
+    }
+
+    @Override
+    public CallStatistics getCallStatistics() {
+        return callMetrics.timeService("getCallStatistics", () -> callService.getCallStatistics());
+    }
+
+    @Override
+    public CallStatistics getCallStatistics(String type, Timestamp from, Timestamp to) {
+        return callMetrics.timeService("getCallStatistics", () -> callService.getCallStatistics(type, from, to));
+    }
+
+    @Override
+    public CallStatistics rebuildCallStatistics() {
+        return callMetrics.timeService("rebuildCallStatistics", () -> callService.rebuildCallStatistics());
+    }
+
+    @Override
+    public Page<Call> getCalls(int pageNumber, int pageSize, String type, String status) {
+        return callMetrics.timeService("getCalls", () -> callService.getCalls(pageNumber, pageSize, type, status));
+    }
+
+    @Override
+    public CallCursorPage getCalls(String cursor, int pageSize, String type, String status) {
+        return callMetrics.timeService("getCalls", () -> callService.getCalls(cursor, pageSize, type, status));
+    }
+
+    @Override
+    public long exportCalls(String type, String status, Timestamp from, Timestamp to, Consumer<Call> consumer) {
+        return callMetrics.timeService("exportCalls", () -> callService.exportCalls(type, status, from, to, consumer));
+    }
+
+    @Override
+    public String getCallsVersion() {
+        // only reads a counter, not timed
+        return callService.getCallsVersion();
+    }
+
+    @Override
+    public String getStatisticsVersion() {
+        // only reads a counter, not timed
+        return callService.getStatisticsVersion();
+    }
+
+    private static long count(List<CallOutcome> outcomes, String outcome) {
+        return outcomes.stream().filter(callOutcome -> outcome.equals(callOutcome.getOutcome())).count();
+    }
+}
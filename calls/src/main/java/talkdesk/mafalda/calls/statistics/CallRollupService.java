@@ -0,0 +1,195 @@
+package talkdesk.mafalda.calls.statistics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.model.CallDailyRollup;
+import talkdesk.mafalda.calls.model.CallDailyRollupId;
+import talkdesk.mafalda.calls.model.CallStatistics;
+import talkdesk.mafalda.calls.repos.CallDailyRollupRepository;
+import talkdesk.mafalda.calls.repos.CallRepository;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static talkdesk.mafalda.calls.model.CallDailyRollupId.CALLEE;
+import static talkdesk.mafalda.calls.model.CallDailyRollupId.CALLER;
+import static talkdesk.mafalda.calls.service.CallServiceImpl.ENDED_CALL;
+
+/**
+ * Keeps the totals of the ended calls by day, type and number in the call_daily_rollup table,
+ * in the same transaction that ends or deletes the call, and serves the statistics from that table.
+ * <p>
+ * Each call is marked as rolled up once it is counted, so the backfill only counts the calls ended
+ * before the rollups were enabled and can be run by several instances at the same time.
+ */
+@Service
+@ConditionalOnProperty(name = "calls.statistics.source", havingValue = "rollup")
+public class CallRollupService implements CallStatisticsSource {
+
+    public static final Logger LOGGER = LoggerFactory.getLogger(CallRollupService.class);
+
+    private final CallRepository callRepository;
+
+    private final CallDailyRollupRepository callDailyRollupRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final int backfillChunkSize;
+
+    public CallRollupService(CallRepository callRepository,
+                             CallDailyRollupRepository callDailyRollupRepository,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${calls.statistics.rollup.backfill-chunk-size:1000}") int backfillChunkSize) {
+        this.callRepository = callRepository;
+        this.callDailyRollupRepository = callDailyRollupRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.backfillChunkSize = backfillChunkSize;
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void callEnded(Call call) {
+        increment(call, 1);
+        call.setRolledUp(true);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void callDeleted(Call call) {
+        if (call.isRolledUp()) {
+            increment(call, -1);
+            callDailyRollupRepository.deleteIfEmpty(getRollupId(call, CALLER, call.getCallerNumber()));
+            callDailyRollupRepository.deleteIfEmpty(getRollupId(call, CALLEE, call.getCalleeNumber()));
+        }
+    }
+
+    @Override
+    public boolean isRollup() {
+        return true;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public CallStatistics getCallStatistics() {
+        CallStatisticsAccumulator accumulator = new CallStatisticsAccumulator();
+        for (CallDailyRollup rollup : callDailyRollupRepository.findAll()) {
+            CallDailyRollupId id = rollup.getId();
+            long day = id.getCallDate().toEpochDay();
+            if (CALLER.equals(id.getNumberType())) {
+                accumulator.addTotals(day, id.getType(), rollup.getTotalCalls(), rollup.getTotalDuration(), rollup.getTotalCostInCents());
+                accumulator.addCallerCalls(day, id.getNumber(), rollup.getTotalCalls());
+            } else {
+                accumulator.addCalleeCalls(day, id.getNumber(), rollup.getTotalCalls());
+            }
+        }
+        return accumulator.toCallStatistics();
+    }
+
+    @Override
+    public CallStatistics rebuild() {
+        backfill();
+        return getCallStatistics();
+    }
+
+    /**
+     * Count the ended calls that are not in the rollups yet when the application starts
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        backfill();
+    }
+
+    /**
+     * Count all the ended calls that are not in the rollups yet, one chunk per transaction
+     *
+     * @return number of calls counted
+     */
+    public long backfill() {
+        long total = 0;
+        int rolledUp;
+        do {
+            Integer chunk = transactionTemplate.execute(status -> rollUpChunk());
+            rolledUp = chunk == null ? 0 : chunk;
+            total += rolledUp;
+            LOGGER.debug("Rolled up {} calls", total);
+        } while (rolledUp > 0);
+        LOGGER.info("Backfill of the daily rollups counted {} calls", total);
+        return total;
+    }
+
+    /**
+     * Auxiliary function to count a chunk of calls in the rollups
+     *
+     * @return number of calls counted
+     */
+    private int rollUpChunk() {
+        List<Call> calls = callRepository.findCallsByStatusAndRolledUpFalse(ENDED_CALL,
+                PageRequest.of(0, backfillChunkSize, Sort.by("id")));
+
+        Map<CallDailyRollupId, CallDailyRollup> rollups = new HashMap<>();
+        for (Call call : calls) {
+            addToRollup(rollups, call, CALLER, call.getCallerNumber());
+            addToRollup(rollups, call, CALLEE, call.getCalleeNumber());
+            call.setRolledUp(true);
+        }
+
+        rollups.forEach((id, rollup) -> callDailyRollupRepository.increment(id.getCallDate(), id.getType(),
+                id.getNumberType(), id.getNumber(), rollup.getTotalCalls(), rollup.getTotalDuration(), rollup.getTotalCostInCents()));
+        return calls.size();
+    }
+
+    private void addToRollup(Map<CallDailyRollupId, CallDailyRollup> rollups, Call call, String numberType, String number) {
+        long callDuration = getCallDuration(call);
+        CallDailyRollup rollup = rollups.computeIfAbsent(getRollupId(call, numberType, number), id -> {
+            CallDailyRollup newRollup = new CallDailyRollup();
+            newRollup.setId(id);
+            return newRollup;
+        });
+        rollup.setTotalCalls(rollup.getTotalCalls() + 1);
+        rollup.setTotalDuration(rollup.getTotalDuration() + callDuration);
+        rollup.setTotalCostInCents(rollup.getTotalCostInCents()
+                + CallStatisticsAccumulator.getCallCostInCents(call.getType(), callDuration));
+    }
+
+    /**
+     * Auxiliary function to add or remove one call from the rollups of the caller and the callee
+     *
+     * @param call the call
+     * @param sign 1 to add the call, -1 to remove it
+     */
+    private void increment(Call call, int sign) {
+        LocalDate callDate = getCallDate(call);
+        long callDuration = getCallDuration(call);
+        long callCost = CallStatisticsAccumulator.getCallCostInCents(call.getType(), callDuration);
+        callDailyRollupRepository.increment(callDate, call.getType(), CALLER, call.getCallerNumber(),
+                sign, sign * callDuration, sign * callCost);
+        callDailyRollupRepository.increment(callDate, call.getType(), CALLEE, call.getCalleeNumber(),
+                sign, sign * callDuration, sign * callCost);
+    }
+
+    private static CallDailyRollupId getRollupId(Call call, String numberType, String number) {
+        return new CallDailyRollupId(getCallDate(call), call.getType(), numberType, number);
+    }
+
+    private static LocalDate getCallDate(Call call) {
+        return call.getStartTime().toLocalDateTime().toLocalDate();
+    }
+
+    private static long getCallDuration(Call call) {
+        return call.getEndTime().getTime() - call.getStartTime().getTime();
+    }
+}
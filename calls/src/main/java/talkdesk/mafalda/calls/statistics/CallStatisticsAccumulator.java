@@ -0,0 +1,319 @@
+package talkdesk.mafalda.calls.statistics;
+
+import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.model.CallStatistics;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static talkdesk.mafalda.calls.service.CallServiceImpl.INBOUND;
+import static talkdesk.mafalda.calls.service.CallServiceImpl.OUTBOUND;
+
+/**
+ * Aggregate of the statistics of ended calls by day.
+ * Calls can be added and removed one at a time, so the aggregate can be kept up to date
+ * without recomputing it from all the calls. This class is not thread safe.
+ * <p>
+ * The days are kept as epoch days and only formatted when the statistics are materialized,
+ * once per day instead of once per call. The calls by number are counted in primitive counters
+ * and only converted to the maps of the response at the same time.
+ */
+public class CallStatisticsAccumulator {
+
+    /**
+     * time zone of the days of the calls, the default time zone when the application starts
+     */
+    private static final TimeZone TIME_ZONE = TimeZone.getDefault();
+
+    /**
+     * total inbound calls by epoch day
+     */
+    private final LongObjectMap<DailyTotals> inboundByDay = new LongObjectMap<>();
+
+    /**
+     * total outbound calls by epoch day
+     */
+    private final LongObjectMap<DailyTotals> outboundByDay = new LongObjectMap<>();
+
+    /**
+     * number of calls by epoch day and caller number
+     */
+    private final LongObjectMap<NumberCounts> callsByCallerNumber = new LongObjectMap<>();
+
+    /**
+     * number of calls by epoch day and callee number
+     */
+    private final LongObjectMap<NumberCounts> callsByCalleeNumber = new LongObjectMap<>();
+
+    /**
+     * total number of calls
+     */
+    private long totalNumberOfCalls;
+
+    /**
+     * @param call ended call to add to the statistics
+     */
+    public void add(Call call) {
+        update(call, 1);
+    }
+
+    /**
+     * @param call ended call to remove from the statistics
+     */
+    public void remove(Call call) {
+        update(call, -1);
+    }
+
+    /**
+     * Add all the calls aggregated by other accumulator
+     *
+     * @param other the other accumulator
+     */
+    public void merge(CallStatisticsAccumulator other) {
+        other.inboundByDay.forEach((day, totals) -> mergeTotals(inboundByDay, day, totals));
+        other.outboundByDay.forEach((day, totals) -> mergeTotals(outboundByDay, day, totals));
+        other.callsByCallerNumber.forEach((day, calls) -> mergeCounts(callsByCallerNumber, day, calls));
+        other.callsByCalleeNumber.forEach((day, calls) -> mergeCounts(callsByCalleeNumber, day, calls));
+        totalNumberOfCalls += other.totalNumberOfCalls;
+    }
+
+    /**
+     * @return number of aggregated calls
+     */
+    long getTotalNumberOfCalls() {
+        return totalNumberOfCalls;
+    }
+
+    /**
+     * @return the statistics of the aggregated calls
+     */
+    public CallStatistics toCallStatistics() {
+        CallStatistics callStatistics = new CallStatistics();
+        callStatistics.setTotalInboundCallDuration(getDurationByDay(inboundByDay));
+        callStatistics.setTotalOutboundCallDuration(getDurationByDay(outboundByDay));
+        callStatistics.setTotalNumberOfCalls((int) totalNumberOfCalls);
+        callStatistics.setTotalCallsByCallerNumber(getCallsByDay(callsByCallerNumber));
+        callStatistics.setTotalCallsByCalleeNumber(getCallsByDay(callsByCalleeNumber));
+        callStatistics.setTotalCostByOutbound(getCostByDay(outboundByDay));
+        return callStatistics;
+    }
+
+    /**
+     * Add the totals of calls of one day and type
+     *
+     * @param day         the epoch day of the calls
+     * @param type        call type
+     * @param calls       number of calls
+     * @param duration    total duration of the calls
+     * @param costInCents total cost of the calls in cents
+     */
+    public void addTotals(long day, String type, long calls, long duration, long costInCents) {
+        if (INBOUND.equals(type)) {
+            addTotals(inboundByDay, day, calls, duration, 0);
+        } else if (OUTBOUND.equals(type)) {
+            addTotals(outboundByDay, day, calls, duration, costInCents);
+        }
+        totalNumberOfCalls += calls;
+    }
+
+    /**
+     * @param day          the epoch day of the calls
+     * @param callerNumber caller number
+     * @param calls        number of calls made by the caller number
+     */
+    public void addCallerCalls(long day, String callerNumber, long calls) {
+        count(callsByCallerNumber, day, callerNumber, calls);
+    }
+
+    /**
+     * @param day          the epoch day of the calls
+     * @param calleeNumber callee number
+     * @param calls        number of calls received by the callee number
+     */
+    public void addCalleeCalls(long day, String calleeNumber, long calls) {
+        count(callsByCalleeNumber, day, calleeNumber, calls);
+    }
+
+    /**
+     * Auxiliary function to add or remove one call from all the aggregates
+     *
+     * @param call the call
+     * @param sign 1 to add the call, -1 to remove it
+     */
+    private void update(Call call, int sign) {
+        long day = getEpochDay(call.getStartTime());
+        long callDuration = call.getEndTime().getTime() - call.getStartTime().getTime();
+
+        addTotals(day, call.getType(), sign, sign * callDuration, sign * getCallCostInCents(call.getType(), callDuration));
+        addCallerCalls(day, call.getCallerNumber(), sign);
+        addCalleeCalls(day, call.getCalleeNumber(), sign);
+    }
+
+    /**
+     * Auxiliary function to get the cost of a call.
+     * Outbound calls cost 0.05 per minute after the first 5 minutes. The first 5 minutes cost 0.10.
+     * Inbound calls are free.
+     * The cost is kept in cents so that adding and removing calls never accumulates rounding errors.
+     *
+     * @param type         call type
+     * @param callDuration call duration
+     * @return the cost of the call in cents
+     */
+    public static long getCallCostInCents(String type, long callDuration) {
+        if (!OUTBOUND.equals(type)) {
+            return 0;
+        }
+        long durationCallTimeMinutes = TimeUnit.MILLISECONDS.toMinutes(callDuration) % TimeUnit.HOURS.toMinutes(1);
+        if (durationCallTimeMinutes > 5) {
+            return (durationCallTimeMinutes - 5) * 5;
+        }
+        return 10;
+    }
+
+    private static void mergeTotals(LongObjectMap<DailyTotals> totalsByDay, long day, DailyTotals totals) {
+        addTotals(totalsByDay, day, totals.calls, totals.duration, totals.costInCents);
+    }
+
+    private static void addTotals(LongObjectMap<DailyTotals> totalsByDay, long day, long calls, long duration, long costInCents) {
+        DailyTotals totals = totalsByDay.computeIfAbsent(day, key -> new DailyTotals());
+        totals.calls += calls;
+        totals.duration += duration;
+        totals.costInCents += costInCents;
+        if (totals.calls == 0) {
+            totalsByDay.remove(day);
+        }
+    }
+
+    private static void count(LongObjectMap<NumberCounts> callsByNumber, long day, String number, long delta) {
+        NumberCounts calls = callsByNumber.computeIfAbsent(day, key -> new NumberCounts());
+        calls.add(number, delta);
+        if (calls.isEmpty()) {
+            callsByNumber.remove(day);
+        }
+    }
+
+    private static void mergeCounts(LongObjectMap<NumberCounts> callsByNumber, long day, NumberCounts counts) {
+        NumberCounts calls = callsByNumber.computeIfAbsent(day, key -> new NumberCounts());
+        calls.addAll(counts);
+        if (calls.isEmpty()) {
+            callsByNumber.remove(day);
+        }
+    }
+
+    private static Map<String, String> getDurationByDay(LongObjectMap<DailyTotals> totalsByDay) {
+        Map<String, String> totalDurationCall = new HashMap<>();
+        totalsByDay.forEach((day, totals) -> totalDurationCall.put(formatDate(day), formatCallDurationTime(totals.duration)));
+        return totalDurationCall;
+    }
+
+    private static Map<String, Double> getCostByDay(LongObjectMap<DailyTotals> totalsByDay) {
+        Map<String, Double> totalCostByOutbound = new HashMap<>();
+        totalsByDay.forEach((day, totals) -> totalCostByOutbound.put(formatDate(day), totals.costInCents / 100.0));
+        return totalCostByOutbound;
+    }
+
+    private static Map<String, Map<String, Long>> getCallsByDay(LongObjectMap<NumberCounts> callsByNumber) {
+        Map<String, Map<String, Long>> callsByDay = new HashMap<>();
+        callsByNumber.forEach((day, calls) -> callsByDay.put(formatDate(day), calls.toMap()));
+        return callsByDay;
+    }
+
+    /**
+     * Auxiliary function to get the day of a time in the time zone of the application, without allocating
+     *
+     * @param time time
+     * @return the number of days since 1970-01-01
+     */
+    public static long getEpochDay(Timestamp time) {
+        long epochMilli = time.getTime();
+        return Math.floorDiv(epochMilli + TIME_ZONE.getOffset(epochMilli), TimeUnit.DAYS.toMillis(1));
+    }
+
+    /**
+     * Auxiliary function to format an epoch day to a date (yyyy-mm-dd)
+     *
+     * @param day the number of days since 1970-01-01
+     * @return day into String
+     */
+    public static String formatDate(long day) {
+        return DateTimeFormatter.ISO_LOCAL_DATE.format(LocalDate.ofEpochDay(day));
+    }
+
+    /**
+     * Auxiliary function to format time value to a date (yyyy-mm-dd)
+     *
+     * @param time time
+     * @return time into String
+     */
+    public static String formatDate(Timestamp time) {
+        return formatDate(getEpochDay(time));
+    }
+
+    /**
+     * Auxiliary function to format the call duration into hh:mm:ss
+     *
+     * @param callDuration call duration
+     * @return call duration into String
+     */
+    public static String formatCallDurationTime(long callDuration) {
+        long seconds = TimeUnit.MILLISECONDS.toSeconds(callDuration);
+        long hours = TimeUnit.SECONDS.toHours(seconds);
+        StringBuilder duration = new StringBuilder(8);
+        if (hours < 10) {
+            duration.append('0');
+        }
+        duration.append(hours).append(':');
+        appendTwoDigits(duration, seconds / 60 % 60).append(':');
+        return appendTwoDigits(duration, seconds % 60).toString();
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder builder, long value) {
+        return builder.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CallStatisticsAccumulator that = (CallStatisticsAccumulator) o;
+        return totalNumberOfCalls == that.totalNumberOfCalls
+                && inboundByDay.equals(that.inboundByDay)
+                && outboundByDay.equals(that.outboundByDay)
+                && callsByCallerNumber.equals(that.callsByCallerNumber)
+                && callsByCalleeNumber.equals(that.callsByCalleeNumber);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(inboundByDay, outboundByDay, callsByCallerNumber, callsByCalleeNumber, totalNumberOfCalls);
+    }
+
+    /**
+     * Number of calls, duration and cost of the calls of one type in one day
+     */
+    private static final class DailyTotals {
+
+        private long calls;
+        private long duration;
+        private long costInCents;
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            DailyTotals that = (DailyTotals) o;
+            return calls == that.calls && duration == that.duration && costInCents == that.costInCents;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(calls, duration, costInCents);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package talkdesk.mafalda.calls.statistics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import talkdesk.mafalda.calls.metrics.CallMetrics;
+import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.model.DailyCallTotals;
+import talkdesk.mafalda.calls.model.DailyNumberCalls;
+import talkdesk.mafalda.calls.repos.CallRepository;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static talkdesk.mafalda.calls.service.CallServiceImpl.ENDED_CALL;
+import static talkdesk.mafalda.calls.service.CallServiceImpl.INBOUND;
+import static talkdesk.mafalda.calls.service.CallServiceImpl.OUTBOUND;
+
+/**
+ * Aggregates the statistics of the ended calls, by default in the database, so only the totals
+ * by day are read instead of all the calls.
+ * <p>
+ * The calls can also be read and aggregated in the application. The calls are then split in ranges
+ * aggregated in parallel on a fork/join pool and the partial aggregates merged, which gives the
+ * same statistics as aggregating them one by one.
+ */
+@Component
+public class CallStatisticsAggregator {
+
+    public static final Logger LOGGER = LoggerFactory.getLogger(CallStatisticsAggregator.class);
+    public static final String DATABASE = "database";
+    public static final String CALLS = "calls";
+
+    /**
+     * smallest range of calls aggregated by one task
+     */
+    public static final int MIN_PARTITION_SIZE = 10_000;
+
+    /**
+     * bounds of the time range when the statistics are not limited by start time
+     */
+    public static final Timestamp MIN_START_TIME = Timestamp.valueOf("0001-01-01 00:00:00");
+    public static final Timestamp MAX_START_TIME = Timestamp.valueOf("9999-12-31 00:00:00");
+
+    private static final List<String> ALL_TYPES = Arrays.asList(INBOUND, OUTBOUND);
+
+    private final CallRepository callRepository;
+
+    private final CallMetrics callMetrics;
+
+    private final boolean aggregateInDatabase;
+
+    private final ForkJoinPool forkJoinPool;
+
+    public CallStatisticsAggregator(CallRepository callRepository, CallMetrics callMetrics,
+                                    @Value("${calls.statistics.aggregation:database}") String aggregation,
+                                    @Value("${calls.statistics.parallelism:1}") int parallelism) {
+        if (!DATABASE.equals(aggregation) && !CALLS.equals(aggregation)) {
+            throw new IllegalArgumentException("The statistics aggregation must be database or calls not " + aggregation);
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The statistics parallelism must be at least 1 not " + parallelism);
+        }
+        this.callRepository = callRepository;
+        this.callMetrics = callMetrics;
+        this.aggregateInDatabase = DATABASE.equals(aggregation);
+        this.forkJoinPool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    }
+
+    /**
+     * @return the statistics of all the ended calls
+     */
+    public CallStatisticsAccumulator aggregateEndedCalls() {
+        if (!aggregateInDatabase) {
+            return recordRows(aggregate(callRepository.findCallsByStatus(ENDED_CALL)));
+        }
+        return recordRows(accumulate(callRepository.sumCallsByDayAndType(ENDED_CALL),
+                callRepository.countCallsByDayAndCallerNumber(ENDED_CALL),
+                callRepository.countCallsByDayAndCalleeNumber(ENDED_CALL)));
+    }
+
+    /**
+     * Aggregate only the ended calls of a type started in a time range, so the cost follows the size of the range.
+     * The calls are read in one transaction, as they are streamed when aggregated in the application.
+     *
+     * @param type call type, or empty for all types
+     * @param from calls started at or after this time, or null
+     * @param to   calls started before this time, or null
+     * @return the statistics of the matching ended calls
+     */
+    @Transactional(readOnly = true)
+    public CallStatisticsAccumulator aggregateEndedCalls(String type, Timestamp from, Timestamp to) {
+        if (!aggregateInDatabase) {
+            try (Stream<Call> calls = callRepository.streamCalls(type, ENDED_CALL, from, to)) {
+                return recordRows(aggregate(calls.collect(Collectors.toList())));
+            }
+        }
+        List<String> types = type.isEmpty() ? ALL_TYPES : Collections.singletonList(type);
+        Timestamp start = from == null ? MIN_START_TIME : from;
+        Timestamp end = to == null ? MAX_START_TIME : to;
+        return recordRows(accumulate(callRepository.sumCallsByDayAndTypeBetween(ENDED_CALL, types, start, end),
+                callRepository.countCallsByDayAndCallerNumberBetween(ENDED_CALL, types, start, end),
+                callRepository.countCallsByDayAndCalleeNumberBetween(ENDED_CALL, types, start, end)));
+    }
+
+    /**
+     * Aggregate the calls, in parallel if the parallelism is above 1 and there are enough calls
+     *
+     * @param calls ended calls
+     * @return the statistics of the calls
+     */
+    public CallStatisticsAccumulator aggregate(List<Call> calls) {
+        if (forkJoinPool == null || calls.size() < 2 * MIN_PARTITION_SIZE) {
+            return aggregate(calls, 0, calls.size());
+        }
+        LOGGER.debug("Aggregating {} calls with parallelism {}", calls.size(), forkJoinPool.getParallelism());
+        return forkJoinPool.invoke(new AggregationTask(calls, 0, calls.size()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (forkJoinPool != null) {
+            forkJoinPool.shutdown();
+        }
+    }
+
+    /**
+     * Record the number of ended calls read, which are all counted in the statistics
+     *
+     * @param accumulator the statistics of the ended calls read
+     * @return the same statistics
+     */
+    private CallStatisticsAccumulator recordRows(CallStatisticsAccumulator accumulator) {
+        callMetrics.recordStatisticsRows(accumulator.getTotalNumberOfCalls());
+        return accumulator;
+    }
+
+    private static CallStatisticsAccumulator accumulate(List<DailyCallTotals> dailyTotals,
+                                                        List<DailyNumberCalls> dailyCallerCalls,
+                                                        List<DailyNumberCalls> dailyCalleeCalls) {
+        CallStatisticsAccumulator accumulator = new CallStatisticsAccumulator();
+        for (DailyCallTotals totals : dailyTotals) {
+            accumulator.addTotals(totals.getCallDate().toEpochDay(), totals.getType(), totals.getTotalCalls(),
+                    totals.getTotalDuration(), totals.getTotalCostInCents());
+        }
+        for (DailyNumberCalls calls : dailyCallerCalls) {
+            accumulator.addCallerCalls(calls.getCallDate().toEpochDay(), calls.getNumber(), calls.getTotalCalls());
+        }
+        for (DailyNumberCalls calls : dailyCalleeCalls) {
+            accumulator.addCalleeCalls(calls.getCallDate().toEpochDay(), calls.getNumber(), calls.getTotalCalls());
+        }
+        return accumulator;
+    }
+
+    private static CallStatisticsAccumulator aggregate(List<Call> calls, int from, int to) {
+        CallStatisticsAccumulator accumulator = new CallStatisticsAccumulator();
+        for (int i = from; i < to; i++) {
+            accumulator.add(calls.get(i));
+        }
+        return accumulator;
+    }
+
+    /**
+     * Aggregates a range of the calls, splitting it in halves until the ranges are small enough
+     */
+    private static final class AggregationTask extends RecursiveTask<CallStatisticsAccumulator> {
+
+        private static final long serialVersionUID = -4296371025893618934L;
+
+        private final transient List<Call> calls;
+        private final int from;
+        private final int to;
+
+        private AggregationTask(List<Call> calls, int from, int to) {
+            this.calls = calls;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected CallStatisticsAccumulator compute() {
+            if (to - from < 2 * MIN_PARTITION_SIZE) {
+                return aggregate(calls, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            AggregationTask second = new AggregationTask(calls, middle, to);
+            second.fork();
+            CallStatisticsAccumulator accumulator = new AggregationTask(calls, from, middle).compute();
+            accumulator.merge(second.join());
+            return accumulator;
+        }
+    }
+}
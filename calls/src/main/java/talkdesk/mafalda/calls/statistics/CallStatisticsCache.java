@@ -0,0 +1,203 @@
+package talkdesk.mafalda.calls.statistics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import talkdesk.mafalda.calls.metrics.CallMetrics;
+import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.model.CallStatistics;
+import talkdesk.mafalda.calls.service.CallTransactions;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Caches the statistics responses by type and time range, so the dashboards polling the statistics
+ * share one computation instead of recomputing them on each request.
+ * <p>
+ * Concurrent requests for statistics that are not cached wait for a single computation.
+ * The statistics are kept up to calls.statistics.cache.ttl and the least recently used are evicted
+ * above calls.statistics.cache.max-size. When a call is ended or deleted only the statistics of the
+ * ranges that include its start time and of its type are evicted, once the change is committed.
+ * <p>
+ * Calls ended or deleted by other instances are only seen when the statistics expire.
+ */
+@Component
+public class CallStatisticsCache {
+
+    public static final Logger LOGGER = LoggerFactory.getLogger(CallStatisticsCache.class);
+
+    private final CallMetrics callMetrics;
+
+    private final long ttlNanos;
+
+    private final int maxSize;
+
+    /**
+     * statistics by type and time range, in access order
+     */
+    private final Map<Key, Entry> entries;
+
+    public CallStatisticsCache(CallMetrics callMetrics,
+                               @Value("${calls.statistics.cache.ttl:5s}") Duration ttl,
+                               @Value("${calls.statistics.cache.max-size:1000}") int maxSize) {
+        this.callMetrics = callMetrics;
+        this.ttlNanos = ttl.toNanos();
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > CallStatisticsCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Get the cached statistics, computing them if they are not cached or expired
+     *
+     * @param type        type of the calls, or empty for all types
+     * @param from        start of the time range, or null
+     * @param to          end of the time range, or null
+     * @param computation computes the statistics
+     * @return the statistics
+     */
+    public CallStatistics get(String type, Timestamp from, Timestamp to, Supplier<CallStatistics> computation) {
+        if (ttlNanos <= 0 || maxSize <= 0) {
+            return computation.get();
+        }
+        Key key = new Key(type, from, to);
+        Entry entry;
+        boolean miss;
+        synchronized (this) {
+            entry = entries.get(key);
+            miss = entry == null || entry.isExpired(System.nanoTime());
+            if (miss) {
+                entry = new Entry();
+                entries.put(key, entry);
+            }
+        }
+        callMetrics.countStatisticsCache(miss ? CallMetrics.MISS : CallMetrics.HIT);
+        if (miss) {
+            compute(key, entry, computation);
+        }
+        return join(entry.statistics);
+    }
+
+    /**
+     * Evict the statistics that include the call, once the current transaction is committed
+     *
+     * @param call the ended call or the deleted ended call
+     */
+    public void callChanged(Call call) {
+        CallTransactions.afterCommit(() -> evict(call));
+    }
+
+    /**
+     * @param call the ended call or the deleted ended call
+     */
+    public synchronized void evict(Call call) {
+        entries.keySet().removeIf(key -> key.includes(call));
+    }
+
+    /**
+     * Evict all the statistics
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private void compute(Key key, Entry entry, Supplier<CallStatistics> computation) {
+        LOGGER.debug("Computing the statistics of the {} calls started from {} to {}", key.type, key.from, key.to);
+        try {
+            CallStatistics callStatistics = computation.get();
+            entry.expiresAt = System.nanoTime() + ttlNanos;
+            entry.statistics.complete(callStatistics);
+        } catch (RuntimeException | Error e) {
+            // the waiting requests fail too, the next request computes them again
+            synchronized (this) {
+                entries.remove(key, entry);
+            }
+            entry.statistics.completeExceptionally(e);
+        }
+    }
+
+    private static CallStatistics join(CompletableFuture<CallStatistics> statistics) {
+        try {
+            return statistics.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    private static final class Key {
+
+        private final String type;
+
+        private final Timestamp from;
+
+        private final Timestamp to;
+
+        private Key(String type, Timestamp from, Timestamp to) {
+            this.type = type;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * @param call an ended call
+         * @return true if the statistics of the key include the call
+         */
+        private boolean includes(Call call) {
+            Timestamp startTime = call.getStartTime();
+            return (type.isEmpty() || type.equals(call.getType()))
+                    && (from == null || !startTime.before(from))
+                    && (to == null || startTime.before(to));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return type.equals(key.type) && Objects.equals(from, key.from) && Objects.equals(to, key.to);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, from, to);
+        }
+    }
+
+    private static final class Entry {
+
+        private final CompletableFuture<CallStatistics> statistics = new CompletableFuture<>();
+
+        /**
+         * set before the statistics are completed, so it is visible once they are done
+         */
+        private volatile long expiresAt;
+
+        /**
+         * @param now current nano time
+         * @return true if the statistics were computed and are older than the ttl, the statistics
+         * being computed never expire so the requests meanwhile wait for them
+         */
+        private boolean isExpired(long now) {
+            return statistics.isDone() && now - expiresAt >= 0;
+        }
+    }
+}
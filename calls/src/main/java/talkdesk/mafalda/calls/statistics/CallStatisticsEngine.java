@@ -0,0 +1,193 @@
+package talkdesk.mafalda.calls.statistics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import talkdesk.mafalda.calls.exceptions.CallServiceUnavailableException;
+import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.model.CallStatistics;
+import talkdesk.mafalda.calls.service.CallTransactions;
+
+import javax.annotation.PostConstruct;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the statistics of the ended calls up to date as calls are ended or deleted,
+ * so the statistics can be served without reading all the calls from the database.
+ * <p>
+ * The statistics are materialized once after each change and shared by all the readers until the next change.
+ * <p>
+ * The statistics are kept in memory, so calls ended or deleted by other instances
+ * are only seen after a rebuild.
+ */
+@Component
+@ConditionalOnProperty(name = "calls.statistics.source", havingValue = "memory", matchIfMissing = true)
+public class CallStatisticsEngine implements CallStatisticsSource {
+
+    public static final Logger LOGGER = LoggerFactory.getLogger(CallStatisticsEngine.class);
+    public static final int MAX_REBUILD_ATTEMPTS = 3;
+
+    private final CallStatisticsAggregator callStatisticsAggregator;
+
+    private CallStatisticsAccumulator accumulator = new CallStatisticsAccumulator();
+
+    /**
+     * number of changes committing or applied, used to detect changes during a rebuild
+     */
+    private long version;
+
+    /**
+     * changes committing in the database and not applied yet, a rebuild may or may not see them
+     */
+    private int pending;
+
+    /**
+     * statistics materialized since the last change
+     */
+    private volatile CallStatistics snapshot;
+
+    public CallStatisticsEngine(CallStatisticsAggregator callStatisticsAggregator) {
+        this.callStatisticsAggregator = callStatisticsAggregator;
+    }
+
+    /**
+     * Load the statistics of the ended calls from the database
+     */
+    @PostConstruct
+    public void init() {
+        rebuild(callStatisticsAggregator::aggregateEndedCalls);
+    }
+
+    @Override
+    public void callEnded(Call call) {
+        applyAfterCommit(() -> add(call));
+    }
+
+    @Override
+    public void callDeleted(Call call) {
+        applyAfterCommit(() -> remove(call));
+    }
+
+    /**
+     * @param call the ended call
+     */
+    public synchronized void add(Call call) {
+        accumulator.add(call);
+        changed();
+    }
+
+    /**
+     * @param call the deleted ended call
+     */
+    public synchronized void remove(Call call) {
+        accumulator.remove(call);
+        changed();
+    }
+
+    @Override
+    public CallStatistics getCallStatistics() {
+        CallStatistics callStatistics = snapshot;
+        if (callStatistics == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    snapshot = accumulator.toCallStatistics();
+                }
+                callStatistics = snapshot;
+            }
+        }
+        return callStatistics;
+    }
+
+    @Override
+    public CallStatistics rebuild() {
+        LOGGER.debug("Rebuilding the call statistics");
+        if (!rebuild(callStatisticsAggregator::aggregateEndedCalls)) {
+            LOGGER.warn("The call statistics were not consistent with the database and were rebuilt");
+        }
+        return getCallStatistics();
+    }
+
+    /**
+     * Rebuild the statistics from all the ended calls.
+     * The calls are aggregated without holding the lock, if any call is added or removed meanwhile, or was committing
+     * but not applied yet when the aggregation started, the rebuild is retried.
+     * The statistics kept until now are not replaced if the calls changed during every attempt.
+     *
+     * @param aggregation aggregates all the ended calls
+     * @return true if the rebuilt statistics are equal to the statistics kept until now
+     * @throws CallServiceUnavailableException if the calls changed during every attempt
+     */
+    public boolean rebuild(Supplier<CallStatisticsAccumulator> aggregation) {
+        for (int attempt = 1; attempt <= MAX_REBUILD_ATTEMPTS; attempt++) {
+            long startVersion;
+            boolean startPending;
+            synchronized (this) {
+                startVersion = version;
+                startPending = pending > 0;
+            }
+
+            CallStatisticsAccumulator rebuilt = aggregation.get();
+
+            synchronized (this) {
+                if (!startPending && version == startVersion) {
+                    boolean consistent = rebuilt.equals(accumulator);
+                    accumulator = rebuilt;
+                    changed();
+                    return consistent;
+                }
+            }
+            LOGGER.debug("Calls changed while rebuilding the statistics, retrying");
+        }
+        LOGGER.warn("Calls changed during all the {} attempts to rebuild the statistics, keeping the current ones",
+                MAX_REBUILD_ATTEMPTS);
+        throw new CallServiceUnavailableException("The calls changed while rebuilding the statistics, retry later.");
+    }
+
+    /**
+     * Apply a change once the current transaction is committed, counting it as pending from just before the commit
+     * until it is applied, so a rebuild that sees the committed call is not installed before the change is applied
+     *
+     * @param change adds or removes a call
+     */
+    private void applyAfterCommit(Runnable change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            CallTransactions.afterCommit(change);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+
+            private boolean committing;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                synchronized (CallStatisticsEngine.this) {
+                    pending++;
+                    version++;
+                }
+                committing = true;
+            }
+
+            @Override
+            public void afterCommit() {
+                change.run();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (committing) {
+                    synchronized (CallStatisticsEngine.this) {
+                        pending--;
+                    }
+                }
+            }
+        });
+    }
+
+    private void changed() {
+        version++;
+        snapshot = null;
+    }
+}
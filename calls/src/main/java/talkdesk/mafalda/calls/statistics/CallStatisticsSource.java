@@ -0,0 +1,44 @@
+package talkdesk.mafalda.calls.statistics;
+
+import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.model.CallStatistics;
+
+/**
+ * Provides the statistics of the ended calls.
+ * The implementation is chosen with the property calls.statistics.source.
+ */
+public interface CallStatisticsSource {
+
+    /**
+     * Called in the transaction that ends the call
+     *
+     * @param call the ended call
+     */
+    void callEnded(Call call);
+
+    /**
+     * Called in the transaction that deletes the ended call
+     *
+     * @param call the deleted ended call
+     */
+    void callDeleted(Call call);
+
+    /**
+     * @return true if the calls are counted in the daily rollups as they end, so they are saved as rolled up
+     */
+    default boolean isRollup() {
+        return false;
+    }
+
+    /**
+     * @return the statistics for all calls
+     */
+    CallStatistics getCallStatistics();
+
+    /**
+     * Rebuild the statistics from the calls in the database
+     *
+     * @return the rebuilt statistics for all calls
+     */
+    CallStatistics rebuild();
+}
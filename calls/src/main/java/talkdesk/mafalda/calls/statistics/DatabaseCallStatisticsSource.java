@@ -0,0 +1,41 @@
+package talkdesk.mafalda.calls.statistics;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.model.CallStatistics;
+
+/**
+ * Computes the statistics in the database on each request, grouping the ended calls by day, type and number.
+ * Nothing is kept between requests, so it is always consistent across instances.
+ */
+@Component
+@ConditionalOnProperty(name = "calls.statistics.source", havingValue = "database")
+public class DatabaseCallStatisticsSource implements CallStatisticsSource {
+
+    private final CallStatisticsAggregator callStatisticsAggregator;
+
+    public DatabaseCallStatisticsSource(CallStatisticsAggregator callStatisticsAggregator) {
+        this.callStatisticsAggregator = callStatisticsAggregator;
+    }
+
+    @Override
+    public void callEnded(Call call) {
+        // the statistics are computed from the call table on each request
+    }
+
+    @Override
+    public void callDeleted(Call call) {
+        // the statistics are computed from the call table on each request
+    }
+
+    @Override
+    public CallStatistics getCallStatistics() {
+        return callStatisticsAggregator.aggregateEndedCalls().toCallStatistics();
+    }
+
+    @Override
+    public CallStatistics rebuild() {
+        return getCallStatistics();
+    }
+}
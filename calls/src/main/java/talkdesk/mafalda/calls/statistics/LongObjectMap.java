@@ -0,0 +1,176 @@
+package talkdesk.mafalda.calls.statistics;
+
+import java.util.Objects;
+import java.util.function.LongFunction;
+
+/**
+ * Open addressing hash map with primitive long keys, so looking up a key never boxes it.
+ * Null values are not supported. This class is not thread safe.
+ *
+ * @param <V> type of the values
+ */
+final class LongObjectMap<V> {
+
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] keys;
+
+    /**
+     * values by slot, a null value marks an empty slot
+     */
+    private Object[] values;
+
+    private int mask;
+
+    private int size;
+
+    LongObjectMap() {
+        keys = new long[MIN_CAPACITY];
+        values = new Object[MIN_CAPACITY];
+        mask = MIN_CAPACITY - 1;
+    }
+
+    /**
+     * @param key the key
+     * @return the value of the key, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        for (int slot = slot(key); values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return (V) values[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param key      the key
+     * @param function creates the value when the key has none
+     * @return the current or the created value of the key
+     */
+    @SuppressWarnings("unchecked")
+    V computeIfAbsent(long key, LongFunction<V> function) {
+        int slot = slot(key);
+        for (; values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return (V) values[slot];
+            }
+        }
+        V value = Objects.requireNonNull(function.apply(key));
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > (mask + 1) / 4 * 3) {
+            resize();
+        }
+        return value;
+    }
+
+    /**
+     * Remove the key shifting back the keys that follow it, so no deleted markers are needed
+     *
+     * @param key the key
+     */
+    void remove(long key) {
+        int hole = slot(key);
+        while (values[hole] != null && keys[hole] != key) {
+            hole = (hole + 1) & mask;
+        }
+        if (values[hole] == null) {
+            return;
+        }
+        values[hole] = null;
+        size--;
+        for (int slot = (hole + 1) & mask; values[slot] != null; slot = (slot + 1) & mask) {
+            // move the key to the hole unless its own slot is between the hole and where it is
+            if (((slot - slot(keys[slot])) & mask) >= ((slot - hole) & mask)) {
+                keys[hole] = keys[slot];
+                values[hole] = values[slot];
+                values[slot] = null;
+                hole = slot;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEach(Consumer<? super V> consumer) {
+        for (int slot = 0; slot < values.length; slot++) {
+            if (values[slot] != null) {
+                consumer.accept(keys[slot], (V) values[slot]);
+            }
+        }
+    }
+
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new Object[oldValues.length * 2];
+        mask = keys.length - 1;
+        for (int oldSlot = 0; oldSlot < oldValues.length; oldSlot++) {
+            if (oldValues[oldSlot] != null) {
+                int slot = slot(oldKeys[oldSlot]);
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[oldSlot];
+                values[slot] = oldValues[oldSlot];
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        LongObjectMap<?> that = (LongObjectMap<?>) o;
+        if (size != that.size) return false;
+        for (int slot = 0; slot < values.length; slot++) {
+            if (values[slot] != null && !values[slot].equals(that.get(keys[slot]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hashCode = 0;
+        for (int slot = 0; slot < values.length; slot++) {
+            if (values[slot] != null) {
+                hashCode += Long.hashCode(keys[slot]) ^ values[slot].hashCode();
+            }
+        }
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        forEach((key, value) -> builder.append(builder.length() > 1 ? ", " : "").append(key).append('=').append(value));
+        return builder.append('}').toString();
+    }
+
+    /**
+     * Receives each key and value of the map
+     *
+     * @param <V> type of the values
+     */
+    @FunctionalInterface
+    interface Consumer<V> {
+        void accept(long key, V value);
+    }
+}
@@ -0,0 +1,247 @@
+package talkdesk.mafalda.calls.statistics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Number of calls by phone number, without boxing the counts.
+ * <p>
+ * Numeric phone numbers, leading zeros included, are encoded as longs and counted in an open addressing table,
+ * so counting a call allocates nothing. Other numbers (with a plus sign, for instance) are counted in a map
+ * of strings. A number is only kept while its count is not zero.
+ * This class is not thread safe.
+ */
+final class NumberCounts {
+
+    private static final int MIN_CAPACITY = 8;
+
+    /**
+     * longest number of digits that always fits in a long after the leading 1
+     */
+    private static final int MAX_DIGITS = 18;
+
+    private long[] numbers = new long[MIN_CAPACITY];
+
+    /**
+     * counts by slot, a zero count marks an empty slot
+     */
+    private long[] counts = new long[MIN_CAPACITY];
+
+    private int mask = MIN_CAPACITY - 1;
+
+    private int size;
+
+    /**
+     * counts of the numbers that can not be encoded as longs, created on the first one
+     */
+    private Map<String, long[]> otherNumbers;
+
+    /**
+     * @param number phone number
+     * @param delta  calls to add, negative to remove calls
+     */
+    void add(String number, long delta) {
+        long encoded = encode(number);
+        if (encoded >= 0) {
+            add(encoded, delta);
+        } else {
+            addOther(number, delta);
+        }
+    }
+
+    /**
+     * Add all the counts of other numbers
+     *
+     * @param other the other counts
+     */
+    void addAll(NumberCounts other) {
+        for (int slot = 0; slot < other.counts.length; slot++) {
+            if (other.counts[slot] != 0) {
+                add(other.numbers[slot], other.counts[slot]);
+            }
+        }
+        if (other.otherNumbers != null) {
+            other.otherNumbers.forEach((number, count) -> addOther(number, count[0]));
+        }
+    }
+
+    boolean isEmpty() {
+        return size == 0 && (otherNumbers == null || otherNumbers.isEmpty());
+    }
+
+    /**
+     * @param consumer receives each number and its count
+     */
+    void forEach(ObjLongConsumer<String> consumer) {
+        for (int slot = 0; slot < counts.length; slot++) {
+            if (counts[slot] != 0) {
+                consumer.accept(decode(numbers[slot]), counts[slot]);
+            }
+        }
+        if (otherNumbers != null) {
+            otherNumbers.forEach((number, count) -> consumer.accept(number, count[0]));
+        }
+    }
+
+    /**
+     * @return the counts in the shape of the statistics response
+     */
+    Map<String, Long> toMap() {
+        Map<String, Long> map = new HashMap<>((size + (otherNumbers == null ? 0 : otherNumbers.size())) * 4 / 3 + 1);
+        forEach(map::put);
+        return map;
+    }
+
+    /**
+     * Auxiliary function to encode a phone number as a long without allocating.
+     * The digits are prefixed with a 1, so the leading zeros are kept.
+     *
+     * @param number phone number
+     * @return the encoded number, or -1 if it is not only digits or is too long
+     */
+    static long encode(String number) {
+        int length = number.length();
+        if (length == 0 || length > MAX_DIGITS) {
+            return -1;
+        }
+        long encoded = 1;
+        for (int i = 0; i < length; i++) {
+            char digit = number.charAt(i);
+            if (digit < '0' || digit > '9') {
+                return -1;
+            }
+            encoded = encoded * 10 + (digit - '0');
+        }
+        return encoded;
+    }
+
+    /**
+     * @param encoded number encoded by {@link #encode(String)}
+     * @return the phone number
+     */
+    static String decode(long encoded) {
+        return Long.toString(encoded).substring(1);
+    }
+
+    private void add(long number, long delta) {
+        if (delta == 0) {
+            return;
+        }
+        int slot = slot(number);
+        for (; counts[slot] != 0; slot = (slot + 1) & mask) {
+            if (numbers[slot] == number) {
+                counts[slot] += delta;
+                if (counts[slot] == 0) {
+                    removeSlot(slot);
+                }
+                return;
+            }
+        }
+        numbers[slot] = number;
+        counts[slot] = delta;
+        if (++size > (mask + 1) / 4 * 3) {
+            resize();
+        }
+    }
+
+    private void addOther(String number, long delta) {
+        if (otherNumbers == null) {
+            otherNumbers = new HashMap<>();
+        }
+        long[] count = otherNumbers.computeIfAbsent(number, key -> new long[1]);
+        count[0] += delta;
+        if (count[0] == 0) {
+            otherNumbers.remove(number);
+        }
+    }
+
+    /**
+     * Empty the slot shifting back the numbers that follow it, so no deleted markers are needed
+     *
+     * @param hole the slot to empty
+     */
+    private void removeSlot(int hole) {
+        counts[hole] = 0;
+        size--;
+        for (int slot = (hole + 1) & mask; counts[slot] != 0; slot = (slot + 1) & mask) {
+            // move the number to the hole unless its own slot is between the hole and where it is
+            if (((slot - slot(numbers[slot])) & mask) >= ((slot - hole) & mask)) {
+                numbers[hole] = numbers[slot];
+                counts[hole] = counts[slot];
+                counts[slot] = 0;
+                hole = slot;
+            }
+        }
+    }
+
+    private int slot(long number) {
+        long hash = number * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void resize() {
+        long[] oldNumbers = numbers;
+        long[] oldCounts = counts;
+        numbers = new long[oldNumbers.length * 2];
+        counts = new long[oldCounts.length * 2];
+        mask = numbers.length - 1;
+        for (int oldSlot = 0; oldSlot < oldCounts.length; oldSlot++) {
+            if (oldCounts[oldSlot] != 0) {
+                int slot = slot(oldNumbers[oldSlot]);
+                while (counts[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                numbers[slot] = oldNumbers[oldSlot];
+                counts[slot] = oldCounts[oldSlot];
+            }
+        }
+    }
+
+    private long get(long number) {
+        for (int slot = slot(number); counts[slot] != 0; slot = (slot + 1) & mask) {
+            if (numbers[slot] == number) {
+                return counts[slot];
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        NumberCounts that = (NumberCounts) o;
+        if (size != that.size) return false;
+        for (int slot = 0; slot < counts.length; slot++) {
+            if (counts[slot] != 0 && counts[slot] != that.get(numbers[slot])) {
+                return false;
+            }
+        }
+        return getOtherCounts().equals(that.getOtherCounts());
+    }
+
+    @Override
+    public int hashCode() {
+        int hashCode = 0;
+        for (int slot = 0; slot < counts.length; slot++) {
+            if (counts[slot] != 0) {
+                hashCode += Long.hashCode(numbers[slot]) ^ Long.hashCode(counts[slot]);
+            }
+        }
+        return hashCode + getOtherCounts().hashCode();
+    }
+
+    private Map<String, Long> getOtherCounts() {
+        Map<String, Long> otherCounts = new HashMap<>();
+        if (otherNumbers != null) {
+            otherNumbers.forEach((number, count) -> otherCounts.put(number, count[0]));
+        }
+        return otherCounts;
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+}
@@ -0,0 +1,330 @@
+package talkdesk.mafalda.calls.stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import talkdesk.mafalda.calls.exceptions.CallServiceUnavailableException;
+import talkdesk.mafalda.calls.metrics.CallMetrics;
+import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.model.CallStatisticsDelta;
+import talkdesk.mafalda.calls.service.ActiveCallIndex;
+import talkdesk.mafalda.calls.service.CallTransactions;
+import talkdesk.mafalda.calls.statistics.CallStatisticsAccumulator;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static talkdesk.mafalda.calls.service.CallServiceImpl.ENDED_CALL;
+
+/**
+ * Pushes the lifecycle of the calls to the subscribers of GET /calls/stream as server-sent events: call-started,
+ * call-ended and call-deleted with the call, once the change is committed, and every calls.stream.statistics-interval
+ * a statistics event with the {@link CallStatisticsDelta} of the interval, which also keeps idle connections open.
+ * <p>
+ * The events are queued per subscriber, up to calls.stream.buffer-size changes, and sent on the threads of the stream,
+ * so a slow subscriber never delays the requests changing the calls. A subscriber is sent to by one thread at a time
+ * and the threads are not shared through a queue, so a subscriber whose connection stalls only blocks its own thread. The events of the calls created, ended or
+ * deleted by one request are queued as one change, so a bulk request cannot fill the queue on its own. A subscriber
+ * whose queue is full is disconnected and has to reconnect, which the browsers do on their own.
+ * At most calls.stream.max-subscribers are connected.
+ * <p>
+ * Only the changes made by this instance are pushed.
+ */
+@Component
+public class CallEventStream {
+
+    public static final Logger LOGGER = LoggerFactory.getLogger(CallEventStream.class);
+    public static final String CALL_STARTED = "call-started";
+    public static final String CALL_ENDED = "call-ended";
+    public static final String CALL_DELETED = "call-deleted";
+    public static final String STATISTICS = "statistics";
+
+    private final CallMetrics callMetrics;
+
+    private final ActiveCallIndex activeCallIndex;
+
+    private final long timeoutMillis;
+
+    private final int bufferSize;
+
+    private final int maxSubscribers;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * sends the events, at least calls.stream.threads threads and more while subscribers are blocked sending
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * publishes the statistics
+     */
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    /**
+     * changes since the last statistics event
+     */
+    private final LongAdder callsStarted = new LongAdder();
+
+    private final LongAdder callsEnded = new LongAdder();
+
+    private final LongAdder callsDeleted = new LongAdder();
+
+    private final LongAdder duration = new LongAdder();
+
+    private final LongAdder costInCents = new LongAdder();
+
+    private long lastStatistics = System.currentTimeMillis();
+
+    public CallEventStream(CallMetrics callMetrics, ActiveCallIndex activeCallIndex,
+                           @Value("${calls.stream.timeout:30m}") Duration timeout,
+                           @Value("${calls.stream.buffer-size:100}") int bufferSize,
+                           @Value("${calls.stream.max-subscribers:1000}") int maxSubscribers,
+                           @Value("${calls.stream.statistics-interval:5s}") Duration statisticsInterval,
+                           @Value("${calls.stream.threads:2}") int threads) {
+        this.callMetrics = callMetrics;
+        this.activeCallIndex = activeCallIndex;
+        this.timeoutMillis = timeout.toMillis();
+        this.bufferSize = bufferSize;
+        this.maxSubscribers = maxSubscribers;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("calls-stream-");
+        threadFactory.setDaemon(true);
+        // no queue, a task waiting behind a blocked send would delay every subscriber: one thread per subscriber
+        // sending, and per subscriber dropped while its send is blocked, at most
+        this.executor = new ThreadPoolExecutor(threads, Math.max(threads, 2 * maxSubscribers), 1, TimeUnit.MINUTES,
+                new SynchronousQueue<>(), threadFactory);
+        this.scheduler = new ScheduledThreadPoolExecutor(1, threadFactory);
+        if (!statisticsInterval.isZero() && !statisticsInterval.isNegative()) {
+            scheduler.scheduleAtFixedRate(this::publishStatistics, statisticsInterval.toMillis(),
+                    statisticsInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        callMetrics.monitorStream(subscribers);
+    }
+
+    /**
+     * @return the events of a new subscriber
+     * @throws CallServiceUnavailableException if there are too many subscribers
+     */
+    public SseEmitter subscribe() {
+        if (subscribers.size() >= maxSubscribers) {
+            LOGGER.warn("There are {} subscribers to the calls stream, rejecting a new one", subscribers.size());
+            throw new CallServiceUnavailableException("Too many subscribers to the calls stream, retry later.");
+        }
+        Subscriber subscriber = new Subscriber(createEmitter(timeoutMillis));
+        subscribers.add(subscriber);
+        subscriber.emitter.onCompletion(() -> subscribers.remove(subscriber));
+        subscriber.emitter.onTimeout(() -> subscribers.remove(subscriber));
+        subscriber.emitter.onError(e -> subscribers.remove(subscriber));
+        LOGGER.debug("New subscriber to the calls stream, {} subscribers", subscribers.size());
+        return subscriber.emitter;
+    }
+
+    /**
+     * Called when calls are created, the events are pushed once the current transaction is committed
+     *
+     * @param calls the created calls
+     */
+    public void callsStarted(List<Call> calls) {
+        CallTransactions.afterCommit(() -> {
+            callsStarted.add(calls.size());
+            publish(CALL_STARTED, calls);
+        });
+    }
+
+    /**
+     * Called when a call is ended, the event is pushed once the current transaction is committed
+     *
+     * @param call the ended call
+     */
+    public void callEnded(Call call) {
+        callsEnded(Collections.singletonList(call));
+    }
+
+    /**
+     * Called when calls are ended, the events are pushed once the current transaction is committed
+     *
+     * @param calls the ended calls
+     */
+    public void callsEnded(List<Call> calls) {
+        CallTransactions.afterCommit(() -> {
+            callsEnded.add(calls.size());
+            calls.forEach(call -> addTotals(call, 1));
+            publish(CALL_ENDED, calls);
+        });
+    }
+
+    /**
+     * Called when a call is deleted, the event is pushed once the current transaction is committed
+     *
+     * @param call the deleted call
+     */
+    public void callDeleted(Call call) {
+        callsDeleted(Collections.singletonList(call));
+    }
+
+    /**
+     * Called when calls are deleted, the events are pushed once the current transaction is committed
+     *
+     * @param calls the deleted calls
+     */
+    public void callsDeleted(List<Call> calls) {
+        CallTransactions.afterCommit(() -> {
+            callsDeleted.add(calls.size());
+            calls.stream()
+                    .filter(call -> ENDED_CALL.equals(call.getStatus()))
+                    .forEach(call -> addTotals(call, -1));
+            publish(CALL_DELETED, calls);
+        });
+    }
+
+    /**
+     * Push the changes of the statistics since the last statistics event
+     */
+    public synchronized void publishStatistics() {
+        long now = System.currentTimeMillis();
+        long durationDelta = duration.sumThenReset();
+        CallStatisticsDelta delta = new CallStatisticsDelta(new Timestamp(lastStatistics), new Timestamp(now),
+                callsStarted.sumThenReset(), callsEnded.sumThenReset(), callsDeleted.sumThenReset(),
+                (durationDelta < 0 ? "-" : "") + CallStatisticsAccumulator.formatCallDurationTime(Math.abs(durationDelta)),
+                costInCents.sumThenReset() / 100.0, activeCallIndex.size());
+        lastStatistics = now;
+        publish(STATISTICS, Collections.singletonList(delta));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        subscribers.clear();
+    }
+
+    /**
+     * @param timeoutMillis time after which the subscriber is disconnected
+     * @return the emitter of the events of a new subscriber
+     */
+    protected SseEmitter createEmitter(long timeoutMillis) {
+        return new SseEmitter(timeoutMillis);
+    }
+
+    /**
+     * @param name name of the events
+     * @param data data of each event, queued together as one change
+     */
+    private void publish(String name, List<?> data) {
+        Event event = new Event(name, data);
+        subscribers.forEach(subscriber -> subscriber.offer(event));
+    }
+
+    private void addTotals(Call call, int sign) {
+        long callDuration = call.getEndTime().getTime() - call.getStartTime().getTime();
+        duration.add(sign * callDuration);
+        costInCents.add(sign * CallStatisticsAccumulator.getCallCostInCents(call.getType(), callDuration));
+    }
+
+    private void execute(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            if (executor.isShutdown()) {
+                LOGGER.debug("The calls stream is shut down");
+            } else {
+                LOGGER.warn("Too many subscribers of the calls stream are blocked sending, an event was not sent");
+            }
+        }
+    }
+
+    /**
+     * Events of the same name queued as one change
+     */
+    private static final class Event {
+
+        private final String name;
+
+        private final List<?> data;
+
+        private Event(String name, List<?> data) {
+            this.name = name;
+            this.data = data;
+        }
+    }
+
+    private final class Subscriber implements Runnable {
+
+        private final SseEmitter emitter;
+
+        private final BlockingQueue<Event> events = new ArrayBlockingQueue<>(bufferSize);
+
+        /**
+         * true while a thread of the stream is sending the queued events
+         */
+        private final AtomicBoolean sending = new AtomicBoolean();
+
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        private void offer(Event event) {
+            if (!events.offer(event)) {
+                drop();
+            } else if (sending.compareAndSet(false, true)) {
+                execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                Event event;
+                while ((event = events.poll()) != null) {
+                    for (Object data : event.data) {
+                        emitter.send(SseEmitter.event().name(event.name).data(data, MediaType.APPLICATION_JSON));
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                // the subscriber disconnected
+                LOGGER.debug("Could not send to a subscriber of the calls stream", e);
+                subscribers.remove(this);
+                events.clear();
+            } finally {
+                sending.set(false);
+            }
+            // an event queued after the last poll and before sending was cleared
+            if (!events.isEmpty() && sending.compareAndSet(false, true)) {
+                execute(this);
+            }
+        }
+
+        /**
+         * Disconnect the subscriber, which is not reading the events as fast as they are pushed
+         */
+        private void drop() {
+            if (subscribers.remove(this)) {
+                LOGGER.warn("A subscriber of the calls stream is too slow, disconnecting it");
+                callMetrics.countStreamDropped();
+                events.clear();
+                // completed on a thread of the stream, as it waits for the event being sent
+                execute(emitter::complete);
+            }
+        }
+    }
+}
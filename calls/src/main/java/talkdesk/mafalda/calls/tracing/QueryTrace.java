@@ -0,0 +1,118 @@
+package talkdesk.mafalda.calls.tracing;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Database work done by the request being handled on the current thread: the SQL statements executed,
+ * the rows fetched, the time spent waiting for the database and the repository methods called.
+ * <p>
+ * The trace is started and stopped by {@link QueryTraceFilter} and filled by {@link TracingDataSource}
+ * and the repository interceptor, on the thread of the request. The requests handled asynchronously resume
+ * the trace on each thread they move to, one at a time. This class is not thread safe.
+ */
+public final class QueryTrace {
+
+    public static final String STATEMENTS_HEADER = "X-Query-Statements";
+    public static final String ROWS_HEADER = "X-Query-Rows";
+    public static final String DATABASE_TIME_HEADER = "X-Query-Time-Ms";
+    public static final String REPOSITORY_CALLS_HEADER = "X-Repository-Calls";
+
+    private static final ThreadLocal<QueryTrace> CURRENT = new ThreadLocal<>();
+
+    private long statements;
+
+    private long rows;
+
+    private long databaseNanos;
+
+    private long repositoryCalls;
+
+    /**
+     * @return a new trace for the current thread
+     */
+    public static QueryTrace start() {
+        QueryTrace trace = new QueryTrace();
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    /**
+     * @return the trace of the current thread, or null if the thread is not tracing
+     */
+    public static QueryTrace current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Continue a trace on the current thread
+     *
+     * @param trace the trace of the request, or null if the request is not traced
+     */
+    public static void resume(QueryTrace trace) {
+        if (trace == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(trace);
+        }
+    }
+
+    /**
+     * Stop tracing the current thread
+     */
+    public static void stop() {
+        CURRENT.remove();
+    }
+
+    /**
+     * @param nanos time the database took to execute the statement
+     */
+    void addStatement(long nanos) {
+        statements++;
+        databaseNanos += nanos;
+    }
+
+    /**
+     * @param nanos time the database took to return the row
+     */
+    void addRow(long nanos) {
+        rows++;
+        databaseNanos += nanos;
+    }
+
+    /**
+     * @param nanos time waiting for the database outside the execution of statements
+     */
+    void addDatabaseTime(long nanos) {
+        databaseNanos += nanos;
+    }
+
+    void addRepositoryCall() {
+        repositoryCalls++;
+    }
+
+    public long getStatements() {
+        return statements;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getDatabaseNanos() {
+        return databaseNanos;
+    }
+
+    public long getRepositoryCalls() {
+        return repositoryCalls;
+    }
+
+    /**
+     * @param consumer receives the name and the value of each response header of the trace
+     */
+    public void forEachHeader(BiConsumer<String, String> consumer) {
+        consumer.accept(STATEMENTS_HEADER, Long.toString(statements));
+        consumer.accept(ROWS_HEADER, Long.toString(rows));
+        consumer.accept(DATABASE_TIME_HEADER, String.format("%.3f", databaseNanos / 1_000_000.0));
+        consumer.accept(REPOSITORY_CALLS_HEADER, Long.toString(repositoryCalls));
+    }
+}
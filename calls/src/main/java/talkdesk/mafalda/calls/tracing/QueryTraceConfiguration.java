@@ -0,0 +1,73 @@
+package talkdesk.mafalda.calls.tracing;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import talkdesk.mafalda.calls.metrics.CallMetrics;
+
+import javax.sql.DataSource;
+
+/**
+ * Traces the database work of the requests to the calls API, chosen with the property calls.tracing.mode:
+ * metrics (the default) records it in the metrics by endpoint, headers also returns it in the response
+ * headers for debugging and off disables the tracing.
+ */
+@Configuration
+@ConditionalOnExpression("'${calls.tracing.mode:metrics}' != 'off'")
+public class QueryTraceConfiguration {
+
+    public static final String HEADERS = "headers";
+
+    /**
+     * Wrap the data sources to count the statements, rows and database time
+     */
+    @Bean
+    public static BeanPostProcessor tracingDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                return bean instanceof DataSource && !(bean instanceof TracingDataSource)
+                        ? new TracingDataSource((DataSource) bean) : bean;
+            }
+        };
+    }
+
+    /**
+     * Count the calls to the repository methods, to tell the statements of each call apart from N+1 patterns
+     */
+    @Bean
+    public static BeanPostProcessor tracingRepositoryPostProcessor() {
+        MethodInterceptor interceptor = invocation -> {
+            QueryTrace trace = QueryTrace.current();
+            if (trace != null) {
+                trace.addRepositoryCall();
+            }
+            return invocation.proceed();
+        };
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof RepositoryFactoryBeanSupport) {
+                    ((RepositoryFactoryBeanSupport<?, ?, ?>) bean).addRepositoryFactoryCustomizer(factory ->
+                            factory.addRepositoryProxyPostProcessor((proxyFactory, information) ->
+                                    proxyFactory.addAdvice(interceptor)));
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public FilterRegistrationBean<QueryTraceFilter> queryTraceFilter(CallMetrics callMetrics,
+                                                                     @Value("${calls.tracing.mode:metrics}") String mode) {
+        FilterRegistrationBean<QueryTraceFilter> registration =
+                new FilterRegistrationBean<>(new QueryTraceFilter(callMetrics, HEADERS.equals(mode)));
+        registration.addUrlPatterns("/calls", "/calls/*");
+        return registration;
+    }
+}
@@ -0,0 +1,65 @@
+package talkdesk.mafalda.calls.tracing;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+import talkdesk.mafalda.calls.metrics.CallMetrics;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Traces the database work of each request and records it in the metrics by endpoint.
+ * With the headers enabled the trace is also returned in the response headers: the responses with a body
+ * get them from {@link QueryTraceResponseAdvice} before it is written, the others when the request ends.
+ * <p>
+ * The requests handled asynchronously keep the trace in a request attribute, it is resumed on each dispatch
+ * and recorded when the last one ends. The calls streamed by the export are read on another thread, so they
+ * are not traced.
+ */
+public class QueryTraceFilter extends OncePerRequestFilter {
+
+    public static final String UNKNOWN_URI = "UNKNOWN";
+    public static final String TRACE_ATTRIBUTE = QueryTrace.class.getName();
+
+    private final CallMetrics callMetrics;
+
+    private final boolean headers;
+
+    public QueryTraceFilter(CallMetrics callMetrics, boolean headers) {
+        this.callMetrics = callMetrics;
+        this.headers = headers;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        QueryTrace trace = (QueryTrace) request.getAttribute(TRACE_ATTRIBUTE);
+        if (trace == null) {
+            trace = QueryTrace.start();
+            request.setAttribute(TRACE_ATTRIBUTE, trace);
+        } else {
+            QueryTrace.resume(trace);
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            QueryTrace.stop();
+            if (!request.isAsyncStarted()) {
+                Object uri = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+                callMetrics.recordRequestQueries(request.getMethod(), uri == null ? UNKNOWN_URI : uri.toString(),
+                        trace.getStatements(), trace.getRows(), trace.getDatabaseNanos(), trace.getRepositoryCalls());
+                if (headers && !response.isCommitted()) {
+                    trace.forEachHeader(response::setHeader);
+                }
+            }
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+}
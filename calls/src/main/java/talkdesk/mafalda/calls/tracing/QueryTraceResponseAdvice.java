@@ -0,0 +1,40 @@
+package talkdesk.mafalda.calls.tracing;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Adds the query trace of the request to the headers of the responses with a body, in the headers
+ * tracing mode, as the response is committed when the body is written
+ */
+@ControllerAdvice
+public class QueryTraceResponseAdvice implements ResponseBodyAdvice<Object> {
+
+    private final boolean headers;
+
+    public QueryTraceResponseAdvice(@Value("${calls.tracing.mode:metrics}") String mode) {
+        this.headers = QueryTraceConfiguration.HEADERS.equals(mode);
+    }
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return headers;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        QueryTrace trace = QueryTrace.current();
+        if (trace != null) {
+            trace.forEachHeader(response.getHeaders()::set);
+        }
+        return body;
+    }
+}
@@ -0,0 +1,110 @@
+package talkdesk.mafalda.calls.tracing;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Counts the statements executed and the rows fetched through the connections of the data source,
+ * and the time spent in the database, in the {@link QueryTrace} of the current thread.
+ * <p>
+ * Only the connections obtained while the thread is tracing are wrapped, so the connections of the
+ * statistics rebuilds, the export and the other background work have no overhead. A batch counts as one
+ * statement, as it is sent to the database at once.
+ */
+public class TracingDataSource extends DelegatingDataSource {
+
+    public TracingDataSource(DataSource targetDataSource) {
+        super(targetDataSource);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return trace(obtainTargetDataSource().getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return trace(obtainTargetDataSource().getConnection(username, password));
+    }
+
+    private static Connection trace(Connection connection) {
+        return QueryTrace.current() == null ? connection : wrap(Connection.class, connection);
+    }
+
+    private static <T> T wrap(Class<T> type, T target) {
+        return type.cast(Proxy.newProxyInstance(TracingDataSource.class.getClassLoader(), new Class<?>[]{type},
+                new TracingHandler(target)));
+    }
+
+    /**
+     * Wraps the statements created by a connection and the result sets of a statement,
+     * and times the executions of the statements and the fetches of the rows
+     */
+    private static final class TracingHandler implements InvocationHandler {
+
+        private final Object target;
+
+        private TracingHandler(Object target) {
+            this.target = target;
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            // the statements and result sets are kept in maps by the persistence provider, so they must be equal to themselves
+            if ("equals".equals(name)) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+            QueryTrace trace = QueryTrace.current();
+            if (trace == null) {
+                return invokeTarget(method, args);
+            }
+            if (target instanceof Connection) {
+                Object result = invokeTarget(method, args);
+                return result instanceof Statement ? wrap((Class) method.getReturnType(), result) : result;
+            }
+            if (target instanceof Statement && name.startsWith("execute")) {
+                long start = System.nanoTime();
+                Object result = invokeTarget(method, args);
+                trace.addStatement(System.nanoTime() - start);
+                return result instanceof ResultSet ? wrap(ResultSet.class, (ResultSet) result) : result;
+            }
+            if (target instanceof Statement && method.getReturnType() == ResultSet.class) {
+                Object result = invokeTarget(method, args);
+                return result == null ? null : wrap(ResultSet.class, (ResultSet) result);
+            }
+            if (target instanceof ResultSet && "next".equals(name)) {
+                long start = System.nanoTime();
+                Object result = invokeTarget(method, args);
+                if (Boolean.TRUE.equals(result)) {
+                    trace.addRow(System.nanoTime() - start);
+                } else {
+                    trace.addDatabaseTime(System.nanoTime() - start);
+                }
+                return result;
+            }
+            return invokeTarget(method, args);
+        }
+
+        private Object invokeTarget(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
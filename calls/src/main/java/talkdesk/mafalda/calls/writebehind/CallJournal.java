@@ -0,0 +1,318 @@
+package talkdesk.mafalda.calls.writebehind;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import talkdesk.mafalda.calls.model.Call;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static talkdesk.mafalda.calls.service.CallServiceImpl.ENDED_CALL;
+import static talkdesk.mafalda.calls.service.CallServiceImpl.ON_CALL;
+
+/**
+ * Append only log of the calls created and ended, written to segment files calls-&lt;sequence&gt;.log of a directory.
+ * <p>
+ * Each record is its length, its CRC32 and the call, so a record torn by a crash is detected and the replay stops
+ * there. The records are made durable by {@link #sync(long)}, which forces all the records written so far with one
+ * fsync, so the requests waiting for it at the same time share it.
+ * <p>
+ * The segment being written is closed and a new one opened by {@link #rotate()}, and the closed segments are deleted
+ * once their calls are saved in the database.
+ */
+public class CallJournal implements Closeable {
+
+    public static final Logger LOGGER = LoggerFactory.getLogger(CallJournal.class);
+    public static final byte CREATED = 1;
+    public static final byte ENDED = 2;
+    private static final Pattern SEGMENT = Pattern.compile("calls-(\\d+)\\.log");
+
+    private final Path directory;
+
+    /**
+     * segments written before the current one and not deleted yet
+     */
+    private final List<Path> closedSegments = new ArrayList<>();
+
+    /**
+     * taken before the journal lock by the fsync and the rotation, so a segment is never closed while forced
+     */
+    private final Object syncLock = new Object();
+
+    private long sequence;
+
+    private FileChannel channel;
+
+    /**
+     * bytes written to all the segments, the position of the records
+     */
+    private long written;
+
+    /**
+     * bytes written to all the segments and forced to the disk
+     */
+    private long synced;
+
+    /**
+     * Open the journal in a directory, the segments already there are kept to be replayed
+     *
+     * @param directory directory of the segments, created if missing
+     * @throws IOException if the directory cannot be read or the new segment created
+     */
+    public CallJournal(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        closedSegments.addAll(listSegments(directory));
+        sequence = closedSegments.isEmpty() ? 0 : sequenceOf(closedSegments.get(closedSegments.size() - 1));
+        openSegment();
+    }
+
+    /**
+     * @return the segments written before this journal was opened or rotated and not deleted yet, oldest first
+     */
+    public synchronized List<Path> getClosedSegments() {
+        return new ArrayList<>(closedSegments);
+    }
+
+    /**
+     * Append the records of created calls, not durable until synced
+     *
+     * @param calls created calls, with their id
+     * @return position to sync to make the records durable
+     */
+    public long appendCreated(List<Call> calls) {
+        ByteArrayOutputStream records = new ByteArrayOutputStream(calls.size() * 64);
+        for (Call call : calls) {
+            writeRecord(records, record -> {
+                record.writeByte(CREATED);
+                record.writeLong(call.getId());
+                record.writeLong(call.getStartTime().getTime());
+                record.writeUTF(call.getCallerNumber());
+                record.writeUTF(call.getCalleeNumber());
+                record.writeUTF(call.getType());
+            });
+        }
+        return append(records);
+    }
+
+    /**
+     * Append the record of an ended call, not durable until synced
+     *
+     * @param call ended call, with its id and end time
+     * @return position to sync to make the record durable
+     */
+    public long appendEnded(Call call) {
+        ByteArrayOutputStream records = new ByteArrayOutputStream(32);
+        writeRecord(records, record -> {
+            record.writeByte(ENDED);
+            record.writeLong(call.getId());
+            record.writeLong(call.getEndTime().getTime());
+        });
+        return append(records);
+    }
+
+    /**
+     * Wait until the records up to a position are forced to the disk, forcing them if no one else is
+     *
+     * @param position position returned when appending the records
+     */
+    public void sync(long position) {
+        synchronized (syncLock) {
+            if (synced >= position) {
+                return;
+            }
+            FileChannel forcedChannel;
+            long forced;
+            synchronized (this) {
+                forcedChannel = channel;
+                forced = written;
+            }
+            try {
+                forcedChannel.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to sync the call journal", e);
+            }
+            synced = forced;
+        }
+    }
+
+    /**
+     * Force and close the segment being written and open a new one, the records appended until now are in the
+     * closed segments
+     *
+     * @return the closed segments not deleted yet, oldest first
+     */
+    public List<Path> rotate() {
+        synchronized (syncLock) {
+            synchronized (this) {
+                try {
+                    channel.force(false);
+                    channel.close();
+                    synced = written;
+                    closedSegments.add(segmentPath(sequence));
+                    openSegment();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to rotate the call journal", e);
+                }
+                return new ArrayList<>(closedSegments);
+            }
+        }
+    }
+
+    /**
+     * Delete closed segments, once their calls are saved
+     *
+     * @param segments closed segments
+     */
+    public synchronized void delete(List<Path> segments) {
+        for (Path segment : segments) {
+            try {
+                Files.deleteIfExists(segment);
+                closedSegments.remove(segment);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to delete the call journal segment {}, it will be replayed again", segment, e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Read the records of a segment, stopping at the first incomplete or corrupt record
+     *
+     * @param segment segment file
+     * @param created receives the created calls, ongoing
+     * @param ended   receives the ended calls, with only their id and end time
+     * @return number of records read
+     * @throws IOException if the segment cannot be read
+     */
+    public static int replay(Path segment, Consumer<Call> created, Consumer<Call> ended) throws IOException {
+        byte[] bytes = Files.readAllBytes(segment);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int records = 0;
+        while (buffer.remaining() >= 8) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining() || checksum(bytes, buffer.position(), length) != checksum) {
+                LOGGER.warn("The call journal segment {} ends with a torn record at {}, ignoring the rest",
+                        segment, buffer.position() - 8);
+                return records;
+            }
+            try (DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes, buffer.position(), length))) {
+                readRecord(record, created, ended);
+            } catch (EOFException e) {
+                throw new IOException("Malformed record in the call journal segment " + segment, e);
+            }
+            buffer.position(buffer.position() + length);
+            records++;
+        }
+        return records;
+    }
+
+    private static void readRecord(DataInputStream record, Consumer<Call> created, Consumer<Call> ended)
+            throws IOException {
+        byte kind = record.readByte();
+        Call call = new Call();
+        call.setId(record.readLong());
+        if (kind == CREATED) {
+            call.setStartTime(new Timestamp(record.readLong()));
+            call.setCallerNumber(record.readUTF());
+            call.setCalleeNumber(record.readUTF());
+            call.setType(record.readUTF());
+            call.setStatus(ON_CALL);
+            created.accept(call);
+        } else if (kind == ENDED) {
+            call.setEndTime(new Timestamp(record.readLong()));
+            call.setStatus(ENDED_CALL);
+            ended.accept(call);
+        } else {
+            throw new IOException("Unknown record kind " + kind + " in the call journal");
+        }
+    }
+
+    private synchronized long append(ByteArrayOutputStream records) {
+        ByteBuffer buffer = ByteBuffer.wrap(records.toByteArray());
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to the call journal", e);
+        }
+        written += records.size();
+        return written;
+    }
+
+    private void openSegment() throws IOException {
+        sequence++;
+        channel = FileChannel.open(segmentPath(sequence), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        // the new segment must survive a crash as well as its records
+        try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        } catch (IOException e) {
+            LOGGER.debug("The directory of the call journal cannot be synced on this platform", e);
+        }
+    }
+
+    private Path segmentPath(long segmentSequence) {
+        return directory.resolve("calls-" + segmentSequence + ".log");
+    }
+
+    private static List<Path> listSegments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> SEGMENT.matcher(file.getFileName().toString()).matches())
+                    .sorted((first, second) -> Long.compare(sequenceOf(first), sequenceOf(second)))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static long sequenceOf(Path segment) {
+        Matcher matcher = SEGMENT.matcher(segment.getFileName().toString());
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : 0;
+    }
+
+    private static void writeRecord(ByteArrayOutputStream records, RecordWriter writer) {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+        try (DataOutputStream output = new DataOutputStream(payload)) {
+            writer.write(output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] bytes = payload.toByteArray();
+        ByteBuffer header = ByteBuffer.allocate(8).putInt(bytes.length).putInt(checksum(bytes, 0, bytes.length));
+        records.write(header.array(), 0, 8);
+        records.write(bytes, 0, bytes.length);
+    }
+
+    private static int checksum(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private interface RecordWriter {
+        void write(DataOutputStream record) throws IOException;
+    }
+}
@@ -0,0 +1,526 @@
+package talkdesk.mafalda.calls.writebehind;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import talkdesk.mafalda.calls.exceptions.CallBadRequestException;
+import talkdesk.mafalda.calls.exceptions.CallNotFoundException;
+import talkdesk.mafalda.calls.exceptions.CallServiceUnavailableException;
+import talkdesk.mafalda.calls.metrics.CallMetrics;
+import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.repos.CallRepository;
+import talkdesk.mafalda.calls.service.CallVersions;
+import talkdesk.mafalda.calls.statistics.CallStatisticsCache;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static talkdesk.mafalda.calls.service.CallServiceImpl.ENDED_CALL;
+
+/**
+ * Saves the created and ended calls, chosen with the property calls.write.mode: direct (the default) leaves them to
+ * the call service, saving each request in its own transaction, write-behind acknowledges them once they are in the
+ * {@link CallJournal} and saves them in the database later, grouped in one transaction per flush.
+ * <p>
+ * A flush starts every calls.write-behind.flush-interval, or as soon as calls.write-behind.batch-size calls are
+ * waiting. The calls waiting are found by {@link #find(long)}, but the queries of the database only see them once
+ * flushed. At most calls.write-behind.max-pending calls wait, the requests beyond that are rejected with 503 Service
+ * Unavailable until the database catches up. The busy numbers are checked against the active call index as in the
+ * direct mode, so the admission does not need the database.
+ * <p>
+ * On startup the segments left in the journal by a crash are replayed and saved, skipping the calls already saved.
+ * The rollup statistics source updates the database as the calls end, so it cannot be used with write-behind.
+ */
+@Component
+public class CallWriteBehind {
+
+    public static final Logger LOGGER = LoggerFactory.getLogger(CallWriteBehind.class);
+    public static final String DIRECT = "direct";
+    public static final String WRITE_BEHIND = "write-behind";
+
+    private final CallRepository callRepository;
+
+    private final CallStatisticsCache callStatisticsCache;
+
+    private final CallVersions callVersions;
+
+    private final CallMetrics callMetrics;
+
+    private final boolean enabled;
+
+    private final Path directory;
+
+    private final int batchSize;
+
+    private final Duration flushInterval;
+
+    private final int maxPending;
+
+    /**
+     * transaction of each flush, always a new one so it is committed before the segments are deleted
+     */
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * guards the calls waiting and the appends to the journal, so the calls of the rotated segments are
+     * the ones being flushed
+     */
+    private final Object lock = new Object();
+
+    /**
+     * one flush at a time
+     */
+    private final Object flushLock = new Object();
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    /**
+     * created calls waiting to be flushed, ended if they were ended meanwhile, by id
+     */
+    private Map<Long, Call> pendingCreates = new LinkedHashMap<>();
+
+    /**
+     * ended calls waiting to be flushed that were created before, by id
+     */
+    private Map<Long, Call> pendingEnds = new LinkedHashMap<>();
+
+    private Map<Long, Call> flushingCreates = Collections.emptyMap();
+
+    private Map<Long, Call> flushingEnds = Collections.emptyMap();
+
+    /**
+     * number of flushes saved, so an end can tell whether a flush saved the call while it was read
+     */
+    private long flushes;
+
+    private CallJournal journal;
+
+    private ScheduledThreadPoolExecutor executor;
+
+    private int recoveredCalls;
+
+    public CallWriteBehind(CallRepository callRepository, PlatformTransactionManager transactionManager,
+                           CallStatisticsCache callStatisticsCache, CallVersions callVersions, CallMetrics callMetrics,
+                           @Value("${calls.write.mode:direct}") String mode,
+                           @Value("${calls.statistics.source:memory}") String statisticsSource,
+                           @Value("${calls.write-behind.directory:journal}") String directory,
+                           @Value("${calls.write-behind.batch-size:500}") int batchSize,
+                           @Value("${calls.write-behind.flush-interval:200ms}") Duration flushInterval,
+                           @Value("${calls.write-behind.max-pending:100000}") int maxPending) {
+        this.callRepository = callRepository;
+        this.callStatisticsCache = callStatisticsCache;
+        this.callVersions = callVersions;
+        this.callMetrics = callMetrics;
+        this.directory = Paths.get(directory);
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.maxPending = maxPending;
+        if (WRITE_BEHIND.equals(mode)) {
+            if ("rollup".equals(statisticsSource)) {
+                throw new IllegalStateException("The rollup statistics source cannot be used with the write-behind mode");
+            }
+            this.enabled = true;
+            this.transactionTemplate = new TransactionTemplate(transactionManager);
+            this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        } else if (DIRECT.equals(mode)) {
+            this.enabled = false;
+            this.transactionTemplate = null;
+        } else {
+            throw new IllegalArgumentException("The write mode must be direct or write-behind not " + mode);
+        }
+    }
+
+    /**
+     * Open the journal, save the calls left in it and start flushing
+     */
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            journal = new CallJournal(directory);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open the call journal in " + directory.toAbsolutePath(), e);
+        }
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("calls-write-behind-");
+        threadFactory.setDaemon(true);
+        executor = new ScheduledThreadPoolExecutor(1, threadFactory);
+        executor.scheduleWithFixedDelay(this::flushQuietly, flushInterval.toMillis(), flushInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+        callMetrics.monitorWriteBehind(this, CallWriteBehind::getPendingCalls);
+        LOGGER.info("Saving the calls behind the journal in {}, flushing {} calls or every {}",
+                directory.toAbsolutePath(), batchSize, flushInterval);
+    }
+
+    /**
+     * Flush the calls waiting and close the journal, the calls that fail to be saved are replayed on the next start
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to save the calls waiting, they are saved when the journal is replayed", e);
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close the call journal", e);
+        }
+    }
+
+    /**
+     * @return true if the calls are saved behind the journal
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return number of calls and ends saved from the journal on startup
+     */
+    public int getRecoveredCalls() {
+        return recoveredCalls;
+    }
+
+    /**
+     * @return number of calls and ends waiting to be saved
+     */
+    public int getPendingCalls() {
+        synchronized (lock) {
+            return pendingCreates.size() + pendingEnds.size() + flushingCreates.size() + flushingEnds.size();
+        }
+    }
+
+    /**
+     * Write new calls to the journal, returning once the journal is synced
+     *
+     * @param calls new calls, without an id
+     * @return the calls with their id
+     * @throws CallServiceUnavailableException if there are too many calls waiting
+     */
+    public List<Call> createAll(List<Call> calls) {
+        checkCapacity();
+        callRepository.allocateIds(calls);
+        long position;
+        synchronized (lock) {
+            position = journal.appendCreated(calls);
+            calls.forEach(call -> pendingCreates.put(call.getId(), copy(call)));
+        }
+        journal.sync(position);
+        requestFlushIfFull();
+        return calls;
+    }
+
+    /**
+     * Write the end of a call to the journal, returning once the journal is synced.
+     * The call is the one waiting to be saved, or else the one in the database, read without holding the lock.
+     * If a flush or another end of the call happens while it is read, the status is read again so the call is not
+     * ended twice.
+     *
+     * @param callId  id of the ongoing call
+     * @param endTime end time of the call
+     * @return a copy of the call, ended
+     * @throws CallNotFoundException           if the call does not exist
+     * @throws CallBadRequestException         if the call is already ended
+     * @throws CallServiceUnavailableException if there are too many calls waiting
+     */
+    public Call end(long callId, Timestamp endTime) {
+        checkCapacity();
+        Call endedCall = null;
+        long position = 0;
+        Call savedCall = null;
+        String savedStatus = null;
+        while (endedCall == null) {
+            long seenFlushes;
+            synchronized (lock) {
+                Call pendingCall = findPending(callId);
+                if (pendingCall != null) {
+                    endedCall = endedCopy(pendingCall, pendingCall.getStatus(), endTime);
+                    position = appendEnd(endedCall);
+                    break;
+                }
+                seenFlushes = flushes;
+            }
+            if (savedCall == null) {
+                savedCall = callRepository.findById(callId).orElseThrow(() -> callNotFound(callId));
+                savedStatus = savedCall.getStatus();
+            } else {
+                // the call read before may be kept by the persistence context, and only its status can change
+                savedStatus = callRepository.findStatusById(callId).orElseThrow(() -> callNotFound(callId));
+            }
+            synchronized (lock) {
+                if (flushes == seenFlushes && findPending(callId) == null) {
+                    endedCall = endedCopy(savedCall, savedStatus, endTime);
+                    position = appendEnd(endedCall);
+                }
+            }
+        }
+        journal.sync(position);
+        requestFlushIfFull();
+        return copy(endedCall);
+    }
+
+    /**
+     * @param callId id of a call
+     * @return a copy of the call if it is created or ended and waiting to be saved
+     */
+    public Optional<Call> find(long callId) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        synchronized (lock) {
+            return Optional.ofNullable(findPending(callId)).map(CallWriteBehind::copy);
+        }
+    }
+
+    /**
+     * Save the calls waiting in one transaction and delete their segments of the journal. If the transaction fails
+     * they keep waiting for the next flush.
+     */
+    public void flush() {
+        if (!enabled) {
+            return;
+        }
+        synchronized (flushLock) {
+            List<Path> segments;
+            synchronized (lock) {
+                if (pendingCreates.isEmpty() && pendingEnds.isEmpty()) {
+                    return;
+                }
+                flushingCreates = pendingCreates;
+                flushingEnds = pendingEnds;
+                pendingCreates = new LinkedHashMap<>();
+                pendingEnds = new LinkedHashMap<>();
+                segments = journal.rotate();
+            }
+            long start = System.nanoTime();
+            int calls = flushingCreates.size() + flushingEnds.size();
+            try {
+                write(flushingCreates.values(), flushingEnds.values(), false);
+            } catch (RuntimeException e) {
+                synchronized (lock) {
+                    restoreFlushing();
+                }
+                callMetrics.recordWriteBehindFlush(calls, System.nanoTime() - start, false);
+                throw e;
+            }
+            callMetrics.recordWriteBehindFlush(calls, System.nanoTime() - start, true);
+            journal.delete(segments);
+            List<Call> endedCalls = new ArrayList<>(flushingEnds.values());
+            flushingCreates.values().stream().filter(call -> ENDED_CALL.equals(call.getStatus())).forEach(endedCalls::add);
+            synchronized (lock) {
+                flushingCreates = Collections.emptyMap();
+                flushingEnds = Collections.emptyMap();
+                flushes++;
+            }
+            // the queries of the database see the calls from now on
+            endedCalls.forEach(callStatisticsCache::callChanged);
+            callVersions.callsChanged(!endedCalls.isEmpty());
+            LOGGER.debug("Saved {} calls and ends from the journal", calls);
+        }
+    }
+
+    /**
+     * Save the calls of the segments left in the journal, the calls already saved are skipped
+     * and the ends are applied only to the ongoing calls, so replaying a segment twice is harmless
+     *
+     * @throws IOException if a segment cannot be read
+     */
+    private void recover() throws IOException {
+        List<Path> segments = journal.getClosedSegments();
+        if (segments.isEmpty()) {
+            return;
+        }
+        Map<Long, Call> creates = new LinkedHashMap<>();
+        Map<Long, Call> ends = new LinkedHashMap<>();
+        for (Path segment : segments) {
+            CallJournal.replay(segment, call -> creates.put(call.getId(), call), endedCall -> {
+                Call call = creates.get(endedCall.getId());
+                if (call != null) {
+                    call.setStatus(ENDED_CALL);
+                    call.setEndTime(endedCall.getEndTime());
+                } else {
+                    ends.put(endedCall.getId(), endedCall);
+                }
+            });
+        }
+        write(creates.values(), ends.values(), true);
+        journal.delete(segments);
+        recoveredCalls = creates.size() + ends.size();
+        LOGGER.info("Replayed {} calls and {} ends from {} segments of the call journal",
+                creates.size(), ends.size(), segments.size());
+    }
+
+    /**
+     * Insert the created calls and end the ongoing ones in one transaction
+     *
+     * @param creates created calls, ended if they were ended before being saved
+     * @param ends    ended calls, saved before
+     * @param replay  true to skip the created calls already saved
+     */
+    private void write(Collection<Call> creates, Collection<Call> ends, boolean replay) {
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Call> inserts = new ArrayList<>(creates);
+            List<Call> updates = new ArrayList<>(ends);
+            if (replay && !inserts.isEmpty()) {
+                Set<Long> savedIds = callRepository.findExistingIds(
+                        inserts.stream().map(Call::getId).collect(Collectors.toList()));
+                inserts.stream()
+                        .filter(call -> savedIds.contains(call.getId()) && ENDED_CALL.equals(call.getStatus()))
+                        .forEach(updates::add);
+                inserts.removeIf(call -> savedIds.contains(call.getId()));
+            }
+            if (!inserts.isEmpty()) {
+                callRepository.insertAll(inserts);
+            }
+            if (!updates.isEmpty()) {
+                callRepository.endAll(updates);
+            }
+        });
+    }
+
+    /**
+     * Put the calls of a failed flush back with the calls waiting, the ends that came meanwhile
+     * are merged into their created calls
+     */
+    private void restoreFlushing() {
+        Map<Long, Call> creates = new LinkedHashMap<>(flushingCreates);
+        Map<Long, Call> ends = new LinkedHashMap<>(flushingEnds);
+        pendingEnds.forEach((id, endedCall) -> {
+            if (creates.containsKey(id)) {
+                creates.put(id, endedCall);
+            } else {
+                ends.put(id, endedCall);
+            }
+        });
+        creates.putAll(pendingCreates);
+        pendingCreates = creates;
+        pendingEnds = ends;
+        flushingCreates = Collections.emptyMap();
+        flushingEnds = Collections.emptyMap();
+    }
+
+    /**
+     * @param call    the call to end
+     * @param status  current status of the call
+     * @param endTime end time of the call
+     * @return a copy of the call, ended
+     * @throws CallBadRequestException if the call is already ended
+     */
+    private static Call endedCopy(Call call, String status, Timestamp endTime) {
+        if (ENDED_CALL.equals(status)) {
+            LOGGER.error("The call ID is already ended {}", call.getId());
+            throw new CallBadRequestException("The call is already ended: " + call.getId());
+        }
+        Call endedCall = copy(call);
+        endedCall.setStatus(ENDED_CALL);
+        endedCall.setEndTime(endTime);
+        return endedCall;
+    }
+
+    /**
+     * Append the end of a call to the journal and keep it waiting to be saved, called holding the lock
+     *
+     * @param endedCall the ended call
+     * @return the position of the journal to sync
+     */
+    private long appendEnd(Call endedCall) {
+        long position = journal.appendEnded(endedCall);
+        if (pendingCreates.containsKey(endedCall.getId())) {
+            pendingCreates.put(endedCall.getId(), endedCall);
+        } else {
+            pendingEnds.put(endedCall.getId(), endedCall);
+        }
+        return position;
+    }
+
+    private static CallNotFoundException callNotFound(long callId) {
+        LOGGER.error("Call ID does not exist: {}", callId);
+        return new CallNotFoundException(callId);
+    }
+
+    private Call findPending(long callId) {
+        Call call = pendingEnds.get(callId);
+        if (call == null) {
+            call = pendingCreates.get(callId);
+        }
+        if (call == null) {
+            call = flushingEnds.get(callId);
+        }
+        if (call == null) {
+            call = flushingCreates.get(callId);
+        }
+        return call;
+    }
+
+    private void checkCapacity() {
+        int pendingCalls = getPendingCalls();
+        if (pendingCalls >= maxPending) {
+            LOGGER.warn("There are {} calls waiting to be saved, rejecting the request", pendingCalls);
+            throw new CallServiceUnavailableException("Too many calls waiting to be saved, retry later.");
+        }
+    }
+
+    private void requestFlushIfFull() {
+        boolean full;
+        synchronized (lock) {
+            full = pendingCreates.size() + pendingEnds.size() >= batchSize;
+        }
+        if (full && flushRequested.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                flushRequested.set(false);
+                flushQuietly();
+            });
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to save the calls waiting, retrying on the next flush", e);
+        }
+    }
+
+    private static Call copy(Call call) {
+        Call copy = new Call();
+        copy.setId(call.getId());
+        copy.setCallerNumber(call.getCallerNumber());
+        copy.setCalleeNumber(call.getCalleeNumber());
+        copy.setStartTime(call.getStartTime());
+        copy.setEndTime(call.getEndTime());
+        copy.setType(call.getType());
+        copy.setStatus(call.getStatus());
+        return copy;
+    }
+}
@@ -0,0 +1,12 @@
+ALTER TABLE call ADD COLUMN rolled_up boolean NOT NULL DEFAULT false;
+
+CREATE TABLE call_daily_rollup (
+    call_date date NOT NULL,
+    type character varying(255) NOT NULL,
+    number_type character varying(20) NOT NULL,
+    number character varying(255) NOT NULL,
+    total_calls bigint NOT NULL,
+    total_duration bigint NOT NULL,
+    total_cost_in_cents bigint NOT NULL,
+    PRIMARY KEY(call_date, type, number_type, number)
+);
@@ -0,0 +1 @@
+CREATE INDEX call_start_time_id_idx ON call (start_time, id);
@@ -0,0 +1,3 @@
+-- the call ids are allocated by the application in blocks of 50 (spring.jpa.properties.calls.id.allocation-size),
+-- the increment of the sequence must be equal to the allocation size
+ALTER TABLE call ALTER COLUMN id SET INCREMENT BY 50;
@@ -0,0 +1,2 @@
+CREATE INDEX call_status_type_start_time_idx ON call (status, type, start_time);
+CREATE INDEX call_status_start_time_idx ON call (status, start_time);
@@ -0,0 +1,11 @@
+-- calls by type, the id is included so the count of each page is read from the index only
+CREATE INDEX call_type_start_time_idx ON call (type, start_time) INCLUDE (id);
+
+-- same for the calls by status and by status and type
+DROP INDEX call_status_start_time_idx;
+CREATE INDEX call_status_start_time_idx ON call (status, start_time) INCLUDE (id);
+DROP INDEX call_status_type_start_time_idx;
+CREATE INDEX call_status_type_start_time_idx ON call (status, type, start_time) INCLUDE (id);
+
+-- the ongoing calls are few, they are loaded on startup to know which numbers are busy
+CREATE INDEX call_on_call_numbers_idx ON call (caller_number, callee_number) WHERE status = 'ON_CALL';
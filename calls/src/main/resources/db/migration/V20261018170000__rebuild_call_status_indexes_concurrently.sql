@@ -0,0 +1,13 @@
+-- built CONCURRENTLY so the calls can still be written meanwhile, Flyway runs this migration outside a transaction
+-- because of it, so it must only have CONCURRENTLY statements
+
+-- a build that fails or is interrupted leaves an invalid index behind with the same name, so each index is dropped
+-- before it is built and the migration can be run again
+
+-- the calls by status and by status and type, each new index is built before the old one is dropped
+DROP INDEX CONCURRENTLY IF EXISTS call_status_start_time_id_idx;
+CREATE INDEX CONCURRENTLY IF NOT EXISTS call_status_start_time_id_idx ON call (status, start_time) INCLUDE (id);
+DROP INDEX CONCURRENTLY IF EXISTS call_status_start_time_idx;
+DROP INDEX CONCURRENTLY IF EXISTS call_status_type_start_time_id_idx;
+CREATE INDEX CONCURRENTLY IF NOT EXISTS call_status_type_start_time_id_idx ON call (status, type, start_time) INCLUDE (id);
+DROP INDEX CONCURRENTLY IF EXISTS call_status_type_start_time_idx;
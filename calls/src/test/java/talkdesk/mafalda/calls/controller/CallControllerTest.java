@@ -4,26 +4,46 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import talkdesk.mafalda.calls.dtos.CallDto;
 import talkdesk.mafalda.calls.exceptions.CallNotFoundException;
+import talkdesk.mafalda.calls.execution.CallExecutor;
+import talkdesk.mafalda.calls.metrics.CallMetrics;
 import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.model.CallCursorPage;
+import talkdesk.mafalda.calls.model.CallOutcome;
 import talkdesk.mafalda.calls.model.CallStatistics;
 import talkdesk.mafalda.calls.service.CallService;
+import talkdesk.mafalda.calls.stream.CallEventStream;
 
 import java.sql.Timestamp;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.function.Consumer;
 
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(CallController.class)
+@Import(CallExecutor.class)
 class CallControllerTest {
 
     public static final long CALL_ID = 1;
@@ -33,6 +53,8 @@ class CallControllerTest {
     public static final String CALLEE_NUMBER2 = "23454986";
     public static final String CALL_TYPE = "INBOUND";
     public static final String ENDED_CALL = "ENDED_CALL";
+    public static final String VERSION = "a1-7-0";
+    public static final String ETAG = "W/\"" + VERSION + "\"";
 
     @Autowired
     private MockMvc mockMvc;
@@ -40,6 +62,12 @@ class CallControllerTest {
     @MockBean
     private CallService callService;
 
+    @MockBean
+    private CallMetrics callMetrics;
+
+    @MockBean
+    private CallEventStream callEventStream;
+
     @Test
     void givenType_whenGettingCalls_thenShouldReturnPageInfoByType() throws Exception {
         Call call = createCall();
@@ -56,6 +84,71 @@ class CallControllerTest {
         verify(callService, times(1)).getCalls(0, 5, CALL_TYPE, "");
     }
 
+    @Test
+    void givenCursor_whenGettingCalls_thenShouldReturnCursorPage() throws Exception {
+        given(callService.getCalls("", 5, CALL_TYPE, "")).willReturn(
+                new CallCursorPage(Collections.singletonList(createCall()), "next"));
+
+        MvcResult mvcResult = mockMvc.perform(get("/calls/")
+                .param("cursor", "")
+                .param("size", "5")
+                .param("type", CALL_TYPE)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.nextCursor").value("next"))
+                .andExpect(jsonPath("$.content[0].id").value(CALL_ID));
+
+        verify(callService, never()).getCalls(anyInt(), anyInt(), anyString(), anyString());
+    }
+
+    @Test
+    void givenSubscriber_whenStreamingCalls_thenShouldSendTheEvents() throws Exception {
+        SseEmitter emitter = new SseEmitter();
+        given(callEventStream.subscribe()).willReturn(emitter);
+
+        MvcResult mvcResult = mockMvc.perform(get("/calls/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        emitter.send(SseEmitter.event().name("call-started").data(createCall(), MediaType.APPLICATION_JSON));
+        emitter.complete();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(content().string(startsWith("event:call-started\ndata:{\"id\":1,")));
+    }
+
+    @Test
+    void givenFilters_whenExportingCalls_thenShouldStreamOneCallPerLine() throws Exception {
+        Call call = createCall();
+        Timestamp from = Timestamp.valueOf("2021-07-09 00:00:00");
+        given(callService.exportCalls(eq(CALL_TYPE), eq(""), eq(from), isNull(), any())).willAnswer(invocation -> {
+            Consumer<Call> consumer = invocation.getArgument(4);
+            consumer.accept(call);
+            consumer.accept(call);
+            return 2L;
+        });
+
+        MvcResult mvcResult = mockMvc.perform(get("/calls/export")
+                .param("type", CALL_TYPE)
+                .param("from", "2021-07-09T00:00:00"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+        String[] lines = body.split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("{\"id\":" + CALL_ID + ","));
+        assertTrue(body.endsWith("}\n"));
+    }
+
     @Test
     void givenValidCall_whenPostingCall_thenCallIsCreated() throws Exception {
         CallDto callDto = new CallDto(CALLER_NUMBER, CALLEE_NUMBER, CALL_TYPE);
@@ -125,18 +218,118 @@ class CallControllerTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    void givenBatchOfIds_whenEndingCalls_thenShouldReturnTheOutcomeOfEachId() throws Exception {
+        given(callService.endCalls(Arrays.asList(CALL_ID, 2L))).willReturn(Arrays.asList(
+                new CallOutcome(CALL_ID, CallOutcome.ENDED, createCall()), new CallOutcome(2L, CallOutcome.NOT_FOUND, null)));
+
+        MvcResult mvcResult = mockMvc.perform(patch("/calls/end")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[1, 2]"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].outcome").value(CallOutcome.ENDED))
+                .andExpect(jsonPath("$[0].call.status").value(ENDED_CALL))
+                .andExpect(jsonPath("$[1].outcome").value(CallOutcome.NOT_FOUND))
+                .andExpect(jsonPath("$[1].call").doesNotExist());
+    }
+
+    @Test
+    void givenBatchOfIds_whenDeletingCalls_thenShouldReturnTheOutcomeOfEachId() throws Exception {
+        given(callService.deleteCalls(Collections.singletonList(CALL_ID))).willReturn(
+                Collections.singletonList(new CallOutcome(CALL_ID, CallOutcome.DELETED, null)));
+
+        MvcResult mvcResult = mockMvc.perform(delete("/calls")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[1]"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(CALL_ID))
+                .andExpect(jsonPath("$[0].outcome").value(CallOutcome.DELETED));
+    }
+
     @Test
     void givenStatisticsRequest_whenGettingCallsStatistics_thenShouldReturnAllCallStatistics() throws Exception {
         CallStatistics callStatistics = new CallStatistics();
 
-        given(callService.getCallStatistics()).willReturn(callStatistics);
+        given(callService.getCallStatistics("", null, null)).willReturn(callStatistics);
 
         ResultActions resultActions = mockMvc.perform(get("/calls/statistics")
                 .param("page", "0")
                 .param("size", "5")
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk());
-        verify(callService, times(1)).getCallStatistics();
+        verify(callService, times(1)).getCallStatistics("", null, null);
+    }
+
+    @Test
+    void givenTypeAndTimeRange_whenGettingCallsStatistics_thenShouldReturnStatisticsOfTheRange() throws Exception {
+        Timestamp from = Timestamp.valueOf("2021-07-09 00:00:00");
+        Timestamp to = Timestamp.valueOf("2021-07-16 00:00:00");
+        given(callService.getCallStatistics(CALL_TYPE, from, to)).willReturn(new CallStatistics());
+
+        mockMvc.perform(get("/calls/statistics")
+                .param("type", CALL_TYPE)
+                .param("from", "2021-07-09T00:00:00")
+                .param("to", "2021-07-16T00:00:00"))
+                .andExpect(status().isOk());
+        verify(callService, times(1)).getCallStatistics(CALL_TYPE, from, to);
+    }
+
+
+    @Test
+    void givenCurrentStatisticsVersion_whenGettingCallsStatistics_thenShouldReturnNotModified() throws Exception {
+        given(callService.getStatisticsVersion()).willReturn(VERSION);
+
+        mockMvc.perform(get("/calls/statistics")
+                .header(HttpHeaders.IF_NONE_MATCH, ETAG))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, ETAG))
+                .andExpect(content().string(""));
+        verify(callService, never()).getCallStatistics(anyString(), any(), any());
+    }
+
+    @Test
+    void givenOldStatisticsVersion_whenGettingCallsStatistics_thenShouldReturnStatisticsWithNewVersion() throws Exception {
+        given(callService.getStatisticsVersion()).willReturn(VERSION);
+        given(callService.getCallStatistics("", null, null)).willReturn(new CallStatistics());
+
+        mockMvc.perform(get("/calls/statistics")
+                .header(HttpHeaders.IF_NONE_MATCH, "W/\"a1-6-0\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, ETAG));
+        verify(callService, times(1)).getCallStatistics("", null, null);
+    }
+
+    @Test
+    void givenCurrentCallsVersion_whenGettingCalls_thenShouldReturnNotModified() throws Exception {
+        given(callService.getCallsVersion()).willReturn(VERSION);
+
+        mockMvc.perform(get("/calls")
+                .header(HttpHeaders.IF_NONE_MATCH, ETAG))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/calls")
+                .param("cursor", "")
+                .header(HttpHeaders.IF_NONE_MATCH, ETAG))
+                .andExpect(status().isNotModified());
+        verify(callService, never()).getCalls(anyInt(), anyInt(), anyString(), anyString());
+        verify(callService, never()).getCalls(anyString(), anyInt(), anyString(), anyString());
+    }
+
+    @Test
+    void givenRebuildRequest_whenRebuildingCallsStatistics_thenShouldReturnAllCallStatistics() throws Exception {
+        given(callService.rebuildCallStatistics()).willReturn(new CallStatistics());
+
+        mockMvc.perform(post("/calls/statistics/rebuild")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+        verify(callService, times(1)).rebuildCallStatistics();
     }
 
 
@@ -151,4 +344,4 @@ class CallControllerTest {
         call.setEndTime(new Timestamp(System.currentTimeMillis()));
         return call;
     }
-}
\ No newline at end of file
+}
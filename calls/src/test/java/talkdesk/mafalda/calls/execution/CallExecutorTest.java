@@ -0,0 +1,93 @@
+package talkdesk.mafalda.calls.execution;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import talkdesk.mafalda.calls.exceptions.CallServiceUnavailableException;
+import talkdesk.mafalda.calls.metrics.CallMetrics;
+import talkdesk.mafalda.calls.service.ActiveCallIndex;
+import talkdesk.mafalda.calls.tracing.QueryTrace;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CallExecutorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final CallMetrics callMetrics = new CallMetrics(meterRegistry, new ActiveCallIndex());
+
+    private CallExecutor callExecutor;
+
+    @AfterEach
+    void tearDown() {
+        QueryTrace.stop();
+        if (callExecutor != null) {
+            callExecutor.shutdown();
+        }
+    }
+
+    @Test
+    void givenServletMode_whenExecutingRequest_thenShouldExecuteItOnTheServletThread() {
+        callExecutor = createCallExecutor(CallExecutor.SERVLET, 1);
+
+        CompletableFuture<String> response = callExecutor.execute(CallWorkload.ADMISSION,
+                () -> Thread.currentThread().getName());
+
+        assertTrue(response.isDone());
+        assertEquals(Thread.currentThread().getName(), response.join());
+    }
+
+    @Test
+    void givenExecutorsMode_whenExecutingRequest_thenShouldExecuteItOnTheExecutorOfTheWorkloadWithTheTrace()
+            throws Exception {
+        callExecutor = createCallExecutor(CallExecutor.EXECUTORS, 1);
+        QueryTrace trace = QueryTrace.start();
+
+        CompletableFuture<QueryTrace> response = callExecutor.execute(CallWorkload.LIFECYCLE, () -> {
+            assertTrue(Thread.currentThread().getName().startsWith("calls-lifecycle-"));
+            return QueryTrace.current();
+        });
+
+        assertSame(trace, response.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void givenFullQueue_whenExecutingRequest_thenShouldRejectItWithoutDelayingOtherWorkloads() throws Exception {
+        callExecutor = createCallExecutor(CallExecutor.EXECUTORS, 1);
+        CountDownLatch slowStatistics = new CountDownLatch(1);
+        CompletableFuture<Boolean> executing = callExecutor.execute(CallWorkload.ANALYTICS, () -> await(slowStatistics));
+        CompletableFuture<Boolean> queued = callExecutor.execute(CallWorkload.ANALYTICS, () -> await(slowStatistics));
+
+        assertThrows(CallServiceUnavailableException.class,
+                () -> callExecutor.execute(CallWorkload.ANALYTICS, () -> await(slowStatistics)));
+        assertEquals("created", callExecutor.execute(CallWorkload.ADMISSION, () -> "created").get(5, TimeUnit.SECONDS));
+        assertEquals(1, meterRegistry.get(CallMetrics.EXECUTOR_REJECTED).tag("workload", "analytics").counter().count());
+        assertEquals(1, meterRegistry.get("executor.queued").tag("name", "analytics").gauge().value());
+
+        slowStatistics.countDown();
+        assertTrue(executing.get(5, TimeUnit.SECONDS));
+        assertTrue(queued.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void givenUnknownMode_whenCreatingExecutor_thenThrowIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> createCallExecutor("virtual", 1));
+    }
+
+    private CallExecutor createCallExecutor(String mode, int queueSize) {
+        return new CallExecutor(callMetrics, mode, 1, queueSize, 1, queueSize, 1, queueSize);
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package talkdesk.mafalda.calls.reactive;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import talkdesk.mafalda.calls.dtos.CallDto;
+import talkdesk.mafalda.calls.exceptions.CallNotFoundException;
+import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.model.CallStatisticsEntry;
+
+import java.sql.Timestamp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.BDDMockito.given;
+
+@WebFluxTest(ReactiveCallController.class)
+class ReactiveCallControllerTest {
+
+    public static final long CALL_ID = 1;
+    public static final String CALLER_NUMBER = "123456";
+    public static final String CALLER_NUMBER2 = "1233456";
+    public static final String CALLEE_NUMBER = "234986";
+    public static final String CALL_TYPE = "INBOUND";
+    public static final String ON_CALL = "ON_CALL";
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockBean
+    private ReactiveCallService reactiveCallService;
+
+    @Test
+    void givenCalls_whenGettingCalls_thenShouldStreamThemAsNewlineDelimitedJson() {
+        given(reactiveCallService.getCalls(1, 2, CALL_TYPE, ""))
+                .willReturn(Flux.just(createCall(CALLER_NUMBER), createCall(CALLER_NUMBER2)));
+
+        String body = webTestClient.get().uri("/calls?page=1&size=2&type=" + CALL_TYPE)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBody(String.class).returnResult().getResponseBody();
+
+        assertEquals(2, body.trim().split("\n").length);
+    }
+
+    @Test
+    void givenJsonAccepted_whenGettingCalls_thenShouldReturnAnArray() {
+        given(reactiveCallService.getCalls(0, 20, "", "")).willReturn(Flux.just(createCall(CALLER_NUMBER)));
+
+        webTestClient.get().uri("/calls").accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[0].callerNumber").isEqualTo(CALLER_NUMBER);
+    }
+
+    @Test
+    void givenCallDto_whenSaveCall_thenShouldReturnCreated() {
+        given(reactiveCallService.saveCall(any(CallDto.class))).willReturn(Mono.just(createCall(CALLER_NUMBER)));
+
+        webTestClient.post().uri("/calls/create")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new CallDto(CALLER_NUMBER, CALLEE_NUMBER, CALL_TYPE))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody()
+                .jsonPath("$.id").isEqualTo(CALL_ID);
+    }
+
+    @Test
+    void givenInvalidCallId_whenEndCall_thenShouldReturnNotFound() {
+        given(reactiveCallService.endCall(CALL_ID)).willReturn(Mono.error(new CallNotFoundException(CALL_ID)));
+
+        webTestClient.patch().uri("/calls/end/" + CALL_ID)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void givenStatistics_whenGettingCallStatistics_thenShouldStreamTheEntries() {
+        given(reactiveCallService.getCallStatistics(any(String.class), isNull(), isNull())).willReturn(Flux.just(
+                CallStatisticsEntry.totals("2021-07-09", CALL_TYPE, 2, "00:03:00", null),
+                CallStatisticsEntry.numberCalls(CallStatisticsEntry.CALLER, "2021-07-09", CALLER_NUMBER, 2)));
+
+        webTestClient.get().uri("/calls/statistics").accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[0].kind").isEqualTo(CallStatisticsEntry.TOTALS)
+                .jsonPath("$[0].totalDuration").isEqualTo("00:03:00")
+                .jsonPath("$[0].totalCost").doesNotExist()
+                .jsonPath("$[1].number").isEqualTo(CALLER_NUMBER);
+    }
+
+    private Call createCall(String callerNumber) {
+        Call call = new Call();
+        call.setId(CALL_ID);
+        call.setCallerNumber(callerNumber);
+        call.setCalleeNumber(CALLEE_NUMBER);
+        call.setType(CALL_TYPE);
+        call.setStatus(ON_CALL);
+        call.setStartTime(Timestamp.valueOf("2021-07-09 10:00:00"));
+        return call;
+    }
+}
@@ -0,0 +1,148 @@
+package talkdesk.mafalda.calls.reactive;
+
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.model.CallStatisticsEntry;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReactiveCallRepositoryTest {
+
+    public static final String INBOUND = "INBOUND";
+    public static final String OUTBOUND = "OUTBOUND";
+    public static final String ON_CALL = "ON_CALL";
+    public static final String ENDED_CALL = "ENDED_CALL";
+    public static final Timestamp JULY_9 = Timestamp.valueOf("2021-07-09 00:00:00");
+    public static final Timestamp JULY_10 = Timestamp.valueOf("2021-07-10 00:00:00");
+
+    private final ConnectionFactory connectionFactory =
+            ConnectionFactories.get("r2dbc:h2:mem:///reactive;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+
+    private ReactiveCallRepository reactiveCallRepository;
+
+    @BeforeEach
+    void setUp() {
+        DatabaseClient databaseClient = DatabaseClient.create(connectionFactory);
+        Flux.just("DROP TABLE IF EXISTS call",
+                "DROP SEQUENCE IF EXISTS call_id_seq",
+                "CREATE SEQUENCE call_id_seq START WITH 1 INCREMENT BY 50",
+                "CREATE TABLE call (id BIGINT PRIMARY KEY, caller_number VARCHAR(255) NOT NULL, " +
+                        "callee_number VARCHAR(255) NOT NULL, start_time TIMESTAMP, end_time TIMESTAMP, " +
+                        "type VARCHAR(255) NOT NULL, status VARCHAR(255), rolled_up BOOLEAN NOT NULL)")
+                .concatMap(statement -> databaseClient.sql(statement).then())
+                .blockLast();
+        reactiveCallRepository = new ReactiveCallRepository(connectionFactory, 50);
+    }
+
+    @Test
+    void givenNewCalls_whenInsert_thenShouldAllocateIdsFromTheBlocksOfTheSequence() {
+        Call first = reactiveCallRepository.insert(createCall("1", "2", OUTBOUND, "2021-07-09 10:00:00")).block();
+        List<Call> calls = reactiveCallRepository.insertAll(Arrays.asList(
+                createCall("3", "4", INBOUND, "2021-07-09 11:00:00"),
+                createCall("5", "6", INBOUND, "2021-07-09 12:00:00"))).collectList().block();
+
+        assertEquals(1, first.getId());
+        // the first value of the sequence is a block of one id, the next value is the last id of the block 2..51
+        assertEquals(Arrays.asList(2L, 3L), calls.stream().map(Call::getId).collect(Collectors.toList()));
+        Call saved = reactiveCallRepository.findById(3).block();
+        assertEquals("5", saved.getCallerNumber());
+        assertEquals(Timestamp.valueOf("2021-07-09 12:00:00"), saved.getStartTime());
+        assertEquals(ON_CALL, saved.getStatus());
+        assertNull(saved.getEndTime());
+    }
+
+    @Test
+    void givenFilters_whenFindCalls_thenShouldReturnThePageOrderedByStartTime() {
+        insert(createCall("1", "2", OUTBOUND, "2021-07-09 12:00:00"),
+                createCall("3", "4", INBOUND, "2021-07-09 10:00:00"),
+                createCall("5", "6", OUTBOUND, "2021-07-09 11:00:00"));
+
+        List<Call> outbound = reactiveCallRepository.findCalls(OUTBOUND, ON_CALL, 0, 20).collectList().block();
+        List<Call> secondPage = reactiveCallRepository.findCalls("", "", 1, 1).collectList().block();
+
+        assertEquals(Arrays.asList("5", "1"), outbound.stream().map(Call::getCallerNumber).collect(Collectors.toList()));
+        assertEquals(1, secondPage.size());
+        assertEquals("5", secondPage.get(0).getCallerNumber());
+        assertTrue(reactiveCallRepository.findCalls("", ENDED_CALL, 0, 20).collectList().block().isEmpty());
+    }
+
+    @Test
+    void givenOngoingCall_whenEndCall_thenShouldEndItOnlyOnce() {
+        Call call = reactiveCallRepository.insert(createCall("1", "2", OUTBOUND, "2021-07-09 10:00:00")).block();
+        Timestamp endTime = Timestamp.valueOf("2021-07-09 10:07:00");
+
+        Call ended = reactiveCallRepository.endCall(call.getId(), endTime).block();
+
+        assertEquals("1", ended.getCallerNumber());
+        assertEquals("2", ended.getCalleeNumber());
+        assertEquals(ENDED_CALL, ended.getStatus());
+        assertEquals(endTime, ended.getEndTime());
+        assertNull(reactiveCallRepository.endCall(call.getId(), endTime).block());
+        assertNull(reactiveCallRepository.endCall(99, endTime).block());
+        assertEquals(ENDED_CALL, reactiveCallRepository.findById(call.getId()).block().getStatus());
+    }
+
+    @Test
+    void givenCall_whenDeleteById_thenShouldDeleteItAndReturnIt() {
+        Call call = reactiveCallRepository.insert(createCall("1", "2", OUTBOUND, "2021-07-09 10:00:00")).block();
+
+        Call deleted = reactiveCallRepository.deleteById(call.getId()).block();
+
+        assertEquals("1", deleted.getCallerNumber());
+        assertEquals(ON_CALL, deleted.getStatus());
+        assertNull(reactiveCallRepository.findById(call.getId()).block());
+        assertNull(reactiveCallRepository.deleteById(call.getId()).block());
+    }
+
+    @Test
+    void givenEndedCalls_whenAggregatingStatistics_thenShouldStreamTheTotalsAndCountsByDay() {
+        Call outbound = reactiveCallRepository.insert(createCall("1", "2", OUTBOUND, "2021-07-09 10:00:00")).block();
+        Call inbound = reactiveCallRepository.insert(createCall("1", "3", INBOUND, "2021-07-09 11:00:00")).block();
+        reactiveCallRepository.insert(createCall("4", "5", OUTBOUND, "2021-07-09 12:00:00")).block();
+        reactiveCallRepository.endCall(outbound.getId(), Timestamp.valueOf("2021-07-09 10:07:00")).block();
+        reactiveCallRepository.endCall(inbound.getId(), Timestamp.valueOf("2021-07-09 11:01:30")).block();
+        List<String> types = Arrays.asList(INBOUND, OUTBOUND);
+
+        Map<String, CallStatisticsEntry> totals = reactiveCallRepository
+                .sumCallsByDayAndType(ENDED_CALL, types, JULY_9, JULY_10).collectList().block().stream()
+                .collect(Collectors.toMap(CallStatisticsEntry::getType, Function.identity()));
+        List<CallStatisticsEntry> callers = reactiveCallRepository
+                .countCallsByDayAndNumber(CallStatisticsEntry.CALLER, ENDED_CALL, types, JULY_9, JULY_10).collectList().block();
+
+        assertEquals("2021-07-09", totals.get(OUTBOUND).getDay());
+        assertEquals("00:07:00", totals.get(OUTBOUND).getTotalDuration());
+        assertEquals(0.1, totals.get(OUTBOUND).getTotalCost());
+        assertEquals("00:01:30", totals.get(INBOUND).getTotalDuration());
+        assertNull(totals.get(INBOUND).getTotalCost());
+        assertEquals(1, callers.size());
+        assertEquals("1", callers.get(0).getNumber());
+        assertEquals(2, callers.get(0).getTotalCalls());
+        assertEquals(CallStatisticsEntry.CALLER, callers.get(0).getKind());
+    }
+
+    private void insert(Call... calls) {
+        reactiveCallRepository.insertAll(Arrays.asList(calls)).blockLast();
+    }
+
+    private static Call createCall(String callerNumber, String calleeNumber, String type, String startTime) {
+        Call call = new Call();
+        call.setCallerNumber(callerNumber);
+        call.setCalleeNumber(calleeNumber);
+        call.setType(type);
+        call.setStatus(ON_CALL);
+        call.setStartTime(Timestamp.valueOf(startTime));
+        return call;
+    }
+}
@@ -0,0 +1,197 @@
+package talkdesk.mafalda.calls.reactive;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import talkdesk.mafalda.calls.dtos.CallDto;
+import talkdesk.mafalda.calls.exceptions.CallBadRequestException;
+import talkdesk.mafalda.calls.exceptions.CallNotFoundException;
+import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.service.ActiveCallIndex;
+import talkdesk.mafalda.calls.service.CallServiceImpl;
+
+import java.sql.Timestamp;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+class ReactiveCallServiceTest {
+
+    public static final long CALL_ID = 1;
+    public static final String CALLER_NUMBER = "123456";
+    public static final String CALLEE_NUMBER = "234986";
+    public static final String CALL_TYPE = "INBOUND";
+    public static final String ON_CALL = "ON_CALL";
+    public static final String ENDED_CALL = "ENDED_CALL";
+
+    @Mock
+    private ReactiveCallRepository reactiveCallRepository;
+
+    @Mock
+    private CallServiceImpl callServiceImpl;
+
+    @Spy
+    private ActiveCallIndex activeCallIndex;
+
+    private ReactiveCallService reactiveCallService;
+
+    @BeforeEach
+    void setUp() {
+        reactiveCallService = new ReactiveCallService(reactiveCallRepository, callServiceImpl, activeCallIndex, "database");
+    }
+
+    @Test
+    void givenMemoryStatistics_whenCreatingService_thenThrowIllegalStateException() {
+        assertThrows(IllegalStateException.class,
+                () -> new ReactiveCallService(reactiveCallRepository, callServiceImpl, activeCallIndex, "memory"));
+    }
+
+    @Test
+    void givenFailedInsert_whenSaveCall_thenShouldReleaseTheNumbers() {
+        Call call = createCall(ON_CALL);
+        CallDto callDto = new CallDto(CALLER_NUMBER, CALLEE_NUMBER, CALL_TYPE);
+        when(callServiceImpl.admitCall(callDto)).thenReturn(call);
+        when(reactiveCallRepository.insert(call)).thenReturn(Mono.error(new IllegalStateException("database unavailable")));
+
+        Mono<Call> savedCall = reactiveCallService.saveCall(callDto);
+
+        assertThrows(IllegalStateException.class, savedCall::block);
+        verify(activeCallIndex).remove(call);
+    }
+
+    @Test
+    void givenCancelledRequest_whenTheInsertFails_thenShouldReleaseTheNumbers() {
+        Call call = createCall(ON_CALL);
+        CallDto callDto = new CallDto(CALLER_NUMBER, CALLEE_NUMBER, CALL_TYPE);
+        Sinks.One<Call> insert = Sinks.one();
+        when(callServiceImpl.admitCall(callDto)).thenReturn(call);
+        when(reactiveCallRepository.insert(call)).thenReturn(insert.asMono());
+
+        reactiveCallService.saveCall(callDto).subscribe().dispose();
+        insert.tryEmitError(new IllegalStateException("database unavailable"));
+
+        verify(activeCallIndex).remove(call);
+    }
+
+    @Test
+    void givenCancelledRequest_whenTheCallIsInserted_thenShouldKeepTheNumbersBusy() {
+        Call call = createCall(ON_CALL);
+        CallDto callDto = new CallDto(CALLER_NUMBER, CALLEE_NUMBER, CALL_TYPE);
+        Sinks.One<Call> insert = Sinks.one();
+        when(callServiceImpl.admitCall(callDto)).thenReturn(call);
+        when(reactiveCallRepository.insert(call)).thenReturn(insert.asMono());
+
+        reactiveCallService.saveCall(callDto).subscribe().dispose();
+        insert.tryEmitValue(call);
+
+        verify(activeCallIndex, never()).remove(any());
+    }
+
+    @Test
+    void givenOngoingCall_whenEndCall_thenShouldRemoveItFromTheActiveCalls() {
+        Call call = createCall(ENDED_CALL);
+        when(reactiveCallRepository.endCall(eq(CALL_ID), any(Timestamp.class))).thenReturn(Mono.just(call));
+
+        assertSame(call, reactiveCallService.endCall(CALL_ID).block());
+        verify(activeCallIndex).remove(call);
+        verify(reactiveCallRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    void givenCancelledRequest_whenTheCallIsEnded_thenShouldReleaseTheNumbers() {
+        Call call = createCall(ENDED_CALL);
+        Sinks.One<Call> end = Sinks.one();
+        when(reactiveCallRepository.endCall(eq(CALL_ID), any(Timestamp.class))).thenReturn(end.asMono());
+
+        reactiveCallService.endCall(CALL_ID).subscribe().dispose();
+        end.tryEmitValue(call);
+
+        verify(activeCallIndex).remove(call);
+    }
+
+    @Test
+    void givenEndedCall_whenEndCall_thenThrowCallBadRequestException() {
+        when(reactiveCallRepository.endCall(eq(CALL_ID), any(Timestamp.class))).thenReturn(Mono.empty());
+        when(reactiveCallRepository.findById(CALL_ID)).thenReturn(Mono.just(createCall(ENDED_CALL)));
+
+        Mono<Call> endedCall = reactiveCallService.endCall(CALL_ID);
+
+        assertThrows(CallBadRequestException.class, endedCall::block);
+        verify(activeCallIndex, never()).remove(any());
+    }
+
+    @Test
+    void givenInvalidCallId_whenEndCall_thenThrowCallNotFoundException() {
+        when(reactiveCallRepository.endCall(eq(CALL_ID), any(Timestamp.class))).thenReturn(Mono.empty());
+        when(reactiveCallRepository.findById(CALL_ID)).thenReturn(Mono.empty());
+
+        Mono<Call> endedCall = reactiveCallService.endCall(CALL_ID);
+
+        assertThrows(CallNotFoundException.class, endedCall::block);
+    }
+
+    @Test
+    void givenOngoingCall_whenDeleteCall_thenShouldRemoveItFromTheActiveCalls() {
+        Call call = createCall(ON_CALL);
+        when(reactiveCallRepository.deleteById(CALL_ID)).thenReturn(Mono.just(call));
+
+        reactiveCallService.deleteCall(CALL_ID).block();
+
+        verify(activeCallIndex).remove(call);
+    }
+
+    @Test
+    void givenCancelledRequest_whenTheOngoingCallIsDeleted_thenShouldReleaseTheNumbers() {
+        Call call = createCall(ON_CALL);
+        Sinks.One<Call> delete = Sinks.one();
+        when(reactiveCallRepository.deleteById(CALL_ID)).thenReturn(delete.asMono());
+
+        reactiveCallService.deleteCall(CALL_ID).subscribe().dispose();
+        delete.tryEmitValue(call);
+
+        verify(activeCallIndex).remove(call);
+    }
+
+    @Test
+    void givenEndedCall_whenDeleteCall_thenShouldNotReleaseTheNumbers() {
+        when(reactiveCallRepository.deleteById(CALL_ID)).thenReturn(Mono.just(createCall(ENDED_CALL)));
+
+        reactiveCallService.deleteCall(CALL_ID).block();
+
+        verify(activeCallIndex, never()).remove(any());
+    }
+
+    @Test
+    void givenInvalidCallId_whenDeleteCall_thenThrowCallNotFoundException() {
+        when(reactiveCallRepository.deleteById(CALL_ID)).thenReturn(Mono.empty());
+
+        Mono<Void> deletion = reactiveCallService.deleteCall(CALL_ID);
+
+        assertThrows(CallNotFoundException.class, deletion::block);
+    }
+
+    @Test
+    void givenInvalidType_whenGetCallStatistics_thenThrowCallBadRequestException() {
+        assertThrows(CallBadRequestException.class, () -> reactiveCallService.getCallStatistics("LOCAL", null, null));
+    }
+
+    private Call createCall(String status) {
+        Call call = new Call();
+        call.setId(CALL_ID);
+        call.setCallerNumber(CALLER_NUMBER);
+        call.setCalleeNumber(CALLEE_NUMBER);
+        call.setType(CALL_TYPE);
+        call.setStatus(status);
+        call.setStartTime(Timestamp.valueOf("2021-07-09 10:00:00"));
+        return call;
+    }
+}
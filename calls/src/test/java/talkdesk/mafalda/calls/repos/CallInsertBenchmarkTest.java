@@ -0,0 +1,101 @@
+package talkdesk.mafalda.calls.repos;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import talkdesk.mafalda.calls.model.Call;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Measures the rows per second of the ways calls are inserted: one call per flush as saveCall does,
+ * JPA saveAll and the JDBC batch insert used by saveCalls.
+ * The numbers on the in-memory database only show the relative cost, the gain is larger on
+ * PostgreSQL where each statement or sequence read not batched is one network round trip.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class CallInsertBenchmarkTest {
+
+    public static final Logger LOGGER = LoggerFactory.getLogger(CallInsertBenchmarkTest.class);
+    public static final int CALLS = 20_000;
+
+    @Autowired
+    private CallRepository callRepository;
+
+    @Autowired
+    private TestEntityManager testEntityManager;
+
+    @Test
+    void givenManyCalls_whenInsertingInBatches_thenAllCallsAreSavedWithIds() {
+        List<Call> calls = createCalls("batch");
+
+        long begin = System.nanoTime();
+        List<Call> saved = callRepository.insertAll(calls);
+        report("JDBC batch insert", System.nanoTime() - begin);
+
+        assertEquals(CALLS, saved.size());
+        assertEquals(CALLS, saved.stream().mapToLong(Call::getId).distinct().count());
+        assertEquals(CALLS, callRepository.count());
+        Call last = saved.get(CALLS - 1);
+        assertEquals(last.getCallerNumber(), callRepository.findById(last.getId()).map(Call::getCallerNumber).orElse(null));
+    }
+
+    @Test
+    void givenManyCalls_whenSavingOneAtATime_thenAllCallsAreSavedWithIds() {
+        List<Call> calls = createCalls("single");
+
+        long begin = System.nanoTime();
+        for (Call call : calls) {
+            callRepository.saveAndFlush(call);
+            // each saveCall runs in its own persistence context
+            testEntityManager.clear();
+        }
+        report("JPA save one at a time", System.nanoTime() - begin);
+
+        assertEquals(CALLS, calls.stream().mapToLong(Call::getId).distinct().count());
+        assertEquals(CALLS, callRepository.count());
+    }
+
+    @Test
+    void givenManyCalls_whenSavingWithJpa_thenAllCallsAreSaved() {
+        List<Call> calls = createCalls("jpa");
+
+        long begin = System.nanoTime();
+        callRepository.saveAll(calls);
+        callRepository.flush();
+        report("JPA saveAll batched", System.nanoTime() - begin);
+
+        assertEquals(CALLS, callRepository.count());
+    }
+
+    private List<Call> createCalls(String prefix) {
+        Timestamp startTime = new Timestamp(System.currentTimeMillis());
+        List<Call> calls = new ArrayList<>(CALLS);
+        for (int i = 0; i < CALLS; i++) {
+            Call call = new Call();
+            call.setCallerNumber(prefix + "-caller-" + i);
+            call.setCalleeNumber(prefix + "-callee-" + i);
+            call.setType("OUTBOUND");
+            call.setStatus("ON_CALL");
+            call.setStartTime(startTime);
+            calls.add(call);
+        }
+        return calls;
+    }
+
+    private void report(String scenario, long elapsedNanos) {
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        LOGGER.info("Insert benchmark ({}): {} calls in {} ms ({} rows/s)",
+                scenario, CALLS, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), Math.round(CALLS / seconds));
+    }
+}
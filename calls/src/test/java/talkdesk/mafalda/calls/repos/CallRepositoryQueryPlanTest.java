@@ -0,0 +1,181 @@
+package talkdesk.mafalda.calls.repos;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.StreamUtils;
+import talkdesk.mafalda.calls.model.Call;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Fails if a finder of the repository reads the whole call table instead of an index.
+ * <p>
+ * The indexes of the migrations are created on a large seeded table and the SQL generated for each finder
+ * is explained. The embedded database does not support partial or covering indexes, so their WHERE and
+ * INCLUDE clauses are dropped: the index keys, which decide whether a finder can use the index, are the same.
+ * Neither does it build indexes concurrently, so the indexes are built as usual.
+ * The indexes outlive the test transaction, so they are created only if they do not exist.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "talkdesk.mafalda.calls.repos.CallRepositoryQueryPlanTest$RecordingStatementInspector")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class CallRepositoryQueryPlanTest {
+
+    public static final String INBOUND = "INBOUND";
+    public static final String OUTBOUND = "OUTBOUND";
+    public static final String ON_CALL = "ON_CALL";
+    public static final String ENDED_CALL = "ENDED_CALL";
+    public static final int CALLS = 20_000;
+    public static final String TABLE_SCAN = "tableScan";
+
+    @Autowired
+    private CallRepository callRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        for (String statement : readIndexStatements()) {
+            jdbcTemplate.execute(statement);
+        }
+        List<Call> calls = new ArrayList<>(CALLS);
+        long start = Timestamp.valueOf("2021-01-01 00:00:00").getTime();
+        for (int i = 0; i < CALLS; i++) {
+            // few ongoing calls, as in production
+            calls.add(createCall(String.valueOf(100_000 + i), String.valueOf(500_000 + i),
+                    i % 2 == 0 ? OUTBOUND : INBOUND, i % 100 == 0 ? ON_CALL : ENDED_CALL, start + i * 60_000L));
+        }
+        // rolled back with the test transaction, the index statements are executed before it has any change
+        callRepository.insertAll(calls);
+        RecordingStatementInspector.STATEMENTS.clear();
+    }
+
+    @Test
+    void givenStatus_whenFindingCallsByStatus_thenShouldUseAnIndex() {
+        assertIndexScans(() -> callRepository.findCallsByStatus(ON_CALL), ON_CALL);
+    }
+
+    @Test
+    void givenStatus_whenFindingPageOfCallsByStatus_thenShouldUseAnIndex() {
+        assertIndexScans(() -> callRepository.findCallsByStatus(ENDED_CALL, PageRequest.of(1, 20)), ENDED_CALL);
+    }
+
+    @Test
+    void givenType_whenFindingPageOfCallsByType_thenShouldUseAnIndex() {
+        assertIndexScans(() -> callRepository.findCallsByType(OUTBOUND, PageRequest.of(1, 20)), OUTBOUND);
+    }
+
+    @Test
+    void givenStatusAndType_whenFindingPageOfCalls_thenShouldUseAnIndex() {
+        assertIndexScans(() -> callRepository.findAllByStatusAndType(ENDED_CALL, OUTBOUND, PageRequest.of(1, 20)),
+                ENDED_CALL, OUTBOUND);
+    }
+
+    @Test
+    void givenTypeAndStatus_whenFindingCalls_thenShouldUseAnIndex() {
+        assertIndexScans(() -> callRepository.findCallsByTypeAndStatus(OUTBOUND, ON_CALL), OUTBOUND, ON_CALL);
+    }
+
+    @Test
+    void givenCursor_whenFindingCallsAfterIt_thenShouldSeekTheIndexFromTheCursor() {
+        Timestamp startTime = Timestamp.valueOf("2021-01-10 00:00:00");
+
+        callRepository.findCallsAfter(startTime, 12_000, "", "", 20);
+
+        assertFalse(RecordingStatementInspector.STATEMENTS.isEmpty());
+        for (String sql : RecordingStatementInspector.STATEMENTS) {
+            String plan = jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class, startTime, startTime, 12_000L, 20);
+            assertTrue(plan.toLowerCase(Locale.ROOT).contains("call_start_time_id_idx: start_time >="),
+                    () -> "No seek from the cursor:\n" + plan);
+        }
+    }
+
+    /**
+     * Run the finder and explain each statement it executed, with the string parameters given and
+     * the page limits and offsets after them
+     */
+    private void assertIndexScans(Runnable finder, Object... parameters) {
+        finder.run();
+        assertFalse(RecordingStatementInspector.STATEMENTS.isEmpty());
+        for (String sql : RecordingStatementInspector.STATEMENTS) {
+            Object[] arguments = Arrays.copyOf(parameters, countParameters(sql));
+            Arrays.fill(arguments, parameters.length, arguments.length, 20);
+            String plan = jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class, arguments);
+            assertFalse(plan.contains(TABLE_SCAN), () -> "Sequential scan of the call table:\n" + plan);
+            assertTrue(plan.toLowerCase(Locale.ROOT).contains("_idx"), () -> "No index scan:\n" + plan);
+        }
+    }
+
+    private static int countParameters(String sql) {
+        return (int) sql.chars().filter(character -> character == '?').count();
+    }
+
+    /**
+     * @return the statements of the migrations that create or drop the indexes of the call table, in order
+     */
+    private static List<String> readIndexStatements() throws IOException {
+        Resource[] migrations = new PathMatchingResourcePatternResolver().getResources("classpath:db/migration/*.sql");
+        Arrays.sort(migrations, Comparator.comparing(Resource::getFilename));
+        List<String> statements = new ArrayList<>();
+        for (Resource migration : migrations) {
+            String script = StreamUtils.copyToString(migration.getInputStream(), StandardCharsets.UTF_8);
+            for (String statement : script.replaceAll("--[^\n]*", "").split(";")) {
+                String trimmed = statement.trim().replaceAll("\\s+", " ").replace(" CONCURRENTLY ", " ")
+                        .replace(" IF NOT EXISTS ", " ").replace(" IF EXISTS ", " ");
+                if (trimmed.matches("CREATE INDEX \\w+ ON call .*")) {
+                    statements.add(trimmed.replace("CREATE INDEX ", "CREATE INDEX IF NOT EXISTS ")
+                            .replaceAll(" INCLUDE \\([^)]*\\)", "").replaceAll(" WHERE .*", ""));
+                } else if (trimmed.startsWith("DROP INDEX ")) {
+                    statements.add(trimmed.replace("DROP INDEX ", "DROP INDEX IF EXISTS "));
+                }
+            }
+        }
+        return statements;
+    }
+
+    private Call createCall(String callerNumber, String calleeNumber, String type, String status, long startTime) {
+        Call call = new Call();
+        call.setCallerNumber(callerNumber);
+        call.setCalleeNumber(calleeNumber);
+        call.setType(type);
+        call.setStatus(status);
+        call.setStartTime(new Timestamp(startTime));
+        return call;
+    }
+
+    /**
+     * Records the SQL of the statements prepared by Hibernate
+     */
+    public static class RecordingStatementInspector implements StatementInspector {
+
+        static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            if (sql.startsWith("select")) {
+                STATEMENTS.add(sql);
+            }
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package talkdesk.mafalda.calls.repos;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import talkdesk.mafalda.calls.model.Call;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class CallRepositoryTest {
+
+    public static final String INBOUND = "INBOUND";
+    public static final String OUTBOUND = "OUTBOUND";
+    public static final String ON_CALL = "ON_CALL";
+    public static final String ENDED_CALL = "ENDED_CALL";
+    public static final int PAGE_SIZE = 3;
+
+    @Autowired
+    private CallRepository callRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        List<Call> calls = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            // pairs of calls with the same start time, so the id breaks the ties
+            calls.add(createCall(i % 2 == 0 ? OUTBOUND : INBOUND, i % 3 == 0 ? ON_CALL : ENDED_CALL,
+                    Timestamp.valueOf("2021-07-09 10:00:00").getTime() - (i / 2) * 60_000L));
+        }
+        callRepository.saveAll(calls);
+    }
+
+    @Test
+    void givenNoFilters_whenSeekingAllPages_thenShouldReturnAllCallsInOrder() {
+        List<Call> expected = callRepository.findAll(Sort.by("startTime", "id"));
+
+        assertEquals(ids(expected), ids(readAllPages("", "")));
+    }
+
+    @Test
+    void givenTypeAndStatus_whenSeekingAllPages_thenShouldReturnFilteredCallsInOrder() {
+        List<Call> expected = callRepository.findAll(Sort.by("startTime", "id")).stream()
+                .filter(call -> OUTBOUND.equals(call.getType()) && ENDED_CALL.equals(call.getStatus()))
+                .collect(Collectors.toList());
+
+        assertEquals(ids(expected), ids(readAllPages(OUTBOUND, ENDED_CALL)));
+    }
+
+    @Test
+    void givenTimeRangeAndStatus_whenStreamingCalls_thenShouldReturnMatchingCallsInOrder() {
+        Timestamp from = Timestamp.valueOf("2021-07-09 09:57:00");
+        Timestamp to = Timestamp.valueOf("2021-07-09 10:00:00");
+        List<Call> expected = callRepository.findAll(Sort.by("startTime", "id")).stream()
+                .filter(call -> ENDED_CALL.equals(call.getStatus()))
+                .filter(call -> !call.getStartTime().before(from) && call.getStartTime().before(to))
+                .collect(Collectors.toList());
+
+        try (Stream<Call> calls = callRepository.streamCalls("", ENDED_CALL, from, to)) {
+            assertEquals(ids(expected), ids(calls.collect(Collectors.toList())));
+        }
+    }
+
+    @Test
+    void givenOngoingCall_whenEndingIt_thenShouldReturnTheEndedCallOnlyOnce() {
+        Timestamp endTime = Timestamp.valueOf("2021-07-09 11:00:00");
+        Call call = callRepository.findCallsByStatus(ON_CALL).get(0);
+
+        Call endedCall = callRepository.endCall(call.getId(), endTime).orElseThrow();
+
+        assertEquals(call.getId(), endedCall.getId());
+        assertEquals(call.getCallerNumber(), endedCall.getCallerNumber());
+        assertEquals(ENDED_CALL, endedCall.getStatus());
+        assertEquals(endTime, endedCall.getEndTime());
+        assertFalse(endedCall.isRolledUp());
+        assertTrue(callRepository.endCall(call.getId(), endTime).isEmpty());
+        assertTrue(callRepository.endCall(-1, endTime).isEmpty());
+    }
+
+    @Test
+    void givenRollupStatistics_whenEndingCall_thenShouldMarkItAsRolledUpInTheSameUpdate() {
+        CallRepositoryImpl rollupRepository = new CallRepositoryImpl(jdbcTemplate, 1000, 1000, "rollup");
+        Call call = callRepository.findCallsByStatus(ON_CALL).get(0);
+
+        Call endedCall = rollupRepository.endCall(call.getId(), Timestamp.valueOf("2021-07-09 11:00:00")).orElseThrow();
+
+        assertTrue(endedCall.isRolledUp());
+        assertEquals(Boolean.TRUE, jdbcTemplate.queryForObject("SELECT rolled_up FROM call WHERE id = ?", Boolean.class,
+                call.getId()));
+    }
+
+    @Test
+    void givenOngoingAndEndedCalls_whenEndingThemInBatch_thenShouldEndOnlyTheOngoingCalls() {
+        Timestamp endTime = Timestamp.valueOf("2021-07-09 11:00:00");
+        List<Call> calls = callRepository.findAll();
+        List<Long> ongoingIds = ids(callRepository.findCallsByStatus(ON_CALL));
+
+        assertEquals(ongoingIds.size(), callRepository.endCallsByIdIn(ids(calls), endTime, true));
+
+        assertEquals(0, callRepository.findCallsByStatus(ON_CALL).size());
+        for (Long id : ongoingIds) {
+            assertEquals(endTime, callRepository.findById(id).orElseThrow().getEndTime());
+            assertTrue(callRepository.findById(id).orElseThrow().isRolledUp());
+        }
+    }
+
+    @Test
+    void givenBatchOfIds_whenDeletingThem_thenShouldDeleteOnlyThoseCalls() {
+        List<Long> ids = ids(callRepository.findAll(Sort.by("id"))).subList(0, 4);
+
+        assertEquals(4, callRepository.deleteCallsByIdIn(ids));
+
+        assertEquals(6, callRepository.count());
+        assertTrue(callRepository.findCallsByIdIn(ids).isEmpty());
+    }
+
+    private List<Call> readAllPages(String type, String status) {
+        List<Call> calls = new ArrayList<>();
+        List<Call> page = callRepository.findCallsAfter(null, 0, type, status, PAGE_SIZE);
+        while (!page.isEmpty()) {
+            calls.addAll(page);
+            Call last = page.get(page.size() - 1);
+            page = callRepository.findCallsAfter(last.getStartTime(), last.getId(), type, status, PAGE_SIZE);
+        }
+        return calls;
+    }
+
+    private static List<Long> ids(List<Call> calls) {
+        return calls.stream().map(Call::getId).collect(Collectors.toList());
+    }
+
+    private Call createCall(String type, String status, long startTime) {
+        Call call = new Call();
+        call.setCallerNumber("123456");
+        call.setCalleeNumber("234986");
+        call.setType(type);
+        call.setStatus(status);
+        call.setStartTime(new Timestamp(startTime));
+        return call;
+    }
+}
@@ -0,0 +1,236 @@
+package talkdesk.mafalda.calls.service;
+
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import talkdesk.mafalda.calls.dtos.CallDto;
+import talkdesk.mafalda.calls.exceptions.CallBadRequestException;
+import talkdesk.mafalda.calls.metrics.CallMetrics;
+import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.repos.CallRepository;
+import talkdesk.mafalda.calls.statistics.CallStatisticsAggregator;
+import talkdesk.mafalda.calls.statistics.CallStatisticsCache;
+import talkdesk.mafalda.calls.statistics.CallStatisticsEngine;
+import talkdesk.mafalda.calls.stream.CallEventStream;
+import talkdesk.mafalda.calls.writebehind.CallWriteBehind;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.when;
+
+/**
+ * Stress tests for the call admission under concurrent requests
+ */
+@ExtendWith(SpringExtension.class)
+class CallServiceImplConcurrencyTest {
+
+    public static final Logger LOGGER = LoggerFactory.getLogger(CallServiceImplConcurrencyTest.class);
+    public static final String CALL_TYPE = "INBOUND";
+    public static final String ON_CALL = "ON_CALL";
+    public static final String ENDED_CALL = "ENDED_CALL";
+    public static final int THREADS = 16;
+    public static final int ATTEMPTS_PER_THREAD = 2000;
+    public static final int SHARED_NUMBERS = 4;
+
+    private CallServiceImpl callServiceImpl;
+
+    @Mock
+    private CallRepository callRepository;
+
+    @Spy
+    private ActiveCallIndex activeCallIndex;
+
+    private CallMetrics callMetrics;
+
+    private CallStatisticsAggregator callStatisticsAggregator;
+
+    private CallStatisticsEngine callStatisticsEngine;
+
+    private final Map<Long, Call> savedCalls = new ConcurrentHashMap<>();
+
+    private final Map<String, AtomicInteger> ongoingCallsByCaller = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean invariantViolated = new AtomicBoolean();
+
+    @BeforeEach
+    void setUp() {
+        callMetrics = new CallMetrics(new SimpleMeterRegistry(), activeCallIndex);
+        callStatisticsAggregator = new CallStatisticsAggregator(callRepository, callMetrics, CallStatisticsAggregator.DATABASE, 1);
+        callStatisticsEngine = new CallStatisticsEngine(callStatisticsAggregator);
+        callServiceImpl = new CallServiceImpl(callRepository, activeCallIndex, callStatisticsEngine, callStatisticsAggregator,
+                new CallStatisticsCache(callMetrics, Duration.ofSeconds(5), 1000), new CallVersions(Duration.ofSeconds(5)),
+                new CallEventStream(callMetrics, activeCallIndex, Duration.ofMinutes(30), 100, 1000, Duration.ZERO, 1),
+                new CallWriteBehind(callRepository, null, null, null, callMetrics, CallWriteBehind.DIRECT,
+                        "memory", "journal", 500, Duration.ofMillis(200), 100_000),
+                callMetrics);
+        AtomicLong ids = new AtomicLong();
+        when(callRepository.save(any(Call.class))).thenAnswer(invocation -> {
+            Call call = invocation.getArgument(0);
+            call.setId(ids.incrementAndGet());
+            savedCalls.put(call.getId(), call);
+            if (ongoingCallsByCaller.computeIfAbsent(call.getCallerNumber(), number -> new AtomicInteger()).incrementAndGet() > 1) {
+                invariantViolated.set(true);
+            }
+            return call;
+        });
+        // the conditional update ends an ongoing call once, like the database
+        when(callRepository.endCall(anyLong(), any(Timestamp.class))).thenAnswer(invocation -> {
+            Call call = savedCalls.get(invocation.<Long>getArgument(0));
+            synchronized (call) {
+                if (!ON_CALL.equals(call.getStatus())) {
+                    return Optional.empty();
+                }
+                call.setStatus(ENDED_CALL);
+                call.setEndTime(invocation.getArgument(1));
+            }
+            ongoingCallsByCaller.get(call.getCallerNumber()).decrementAndGet();
+            return Optional.of(call);
+        });
+        when(callRepository.existsById(anyLong())).thenAnswer(invocation ->
+                savedCalls.containsKey(invocation.<Long>getArgument(0)));
+    }
+
+    @Test
+    void givenConflictingNumbers_whenSavingAndEndingCallsConcurrently_thenNumberIsNeverOnTwoCalls() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+
+        long elapsed = hammer(thread -> {
+            for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                String caller = "caller-" + (i % SHARED_NUMBERS);
+                String callee = "callee-" + thread + "-" + i;
+                try {
+                    Call call = callServiceImpl.saveCall(new CallDto(caller, callee, CALL_TYPE));
+                    created.incrementAndGet();
+                    callServiceImpl.endCall(call.getId());
+                } catch (CallBadRequestException e) {
+                    rejected.incrementAndGet();
+                }
+            }
+        });
+
+        report("conflicting", created.get() + rejected.get(), elapsed);
+        assertFalse(invariantViolated.get());
+        assertTrue(created.get() > 0);
+        assertEquals(THREADS * ATTEMPTS_PER_THREAD, created.get() + rejected.get());
+        assertEquals(0, activeCallIndex.size());
+    }
+
+    @Test
+    void givenConflictingNumbers_whenSavingCallsConcurrently_thenOnlyOneCallPerNumberIsCreated() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+
+        long elapsed = hammer(thread -> {
+            for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                try {
+                    callServiceImpl.saveCall(new CallDto("caller-" + (i % SHARED_NUMBERS), "callee-" + thread + "-" + i, CALL_TYPE));
+                    created.incrementAndGet();
+                } catch (CallBadRequestException e) {
+                    // the caller number is already on a call
+                }
+            }
+        });
+
+        report("conflicting without end", THREADS * ATTEMPTS_PER_THREAD, elapsed);
+        assertFalse(invariantViolated.get());
+        assertEquals(SHARED_NUMBERS, created.get());
+    }
+
+    @Test
+    void givenDistinctNumbers_whenSavingCallsConcurrently_thenAllCallsAreCreated() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+
+        long elapsed = hammer(thread -> {
+            for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                callServiceImpl.saveCall(new CallDto("caller-" + thread + "-" + i, "callee-" + thread + "-" + i, CALL_TYPE));
+                created.incrementAndGet();
+            }
+        });
+
+        report("non conflicting", created.get(), elapsed);
+        assertFalse(invariantViolated.get());
+        assertEquals(THREADS * ATTEMPTS_PER_THREAD, created.get());
+        assertEquals(THREADS * ATTEMPTS_PER_THREAD, activeCallIndex.size());
+    }
+
+    @Test
+    void givenOngoingCall_whenEndingItConcurrently_thenOnlyOneRequestEndsIt() throws Exception {
+        Call call = callServiceImpl.saveCall(new CallDto("caller", "callee", CALL_TYPE));
+        AtomicInteger ended = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+
+        long elapsed = hammer(thread -> {
+            try {
+                callServiceImpl.endCall(call.getId());
+                ended.incrementAndGet();
+            } catch (CallBadRequestException e) {
+                rejected.incrementAndGet();
+            }
+        });
+
+        report("concurrent end", THREADS, elapsed);
+        assertEquals(1, ended.get());
+        assertEquals(THREADS - 1, rejected.get());
+        assertEquals(1, callServiceImpl.getCallStatistics().getTotalNumberOfCalls());
+    }
+
+    /**
+     * Run the task on all threads at the same time
+     *
+     * @param task the work of each thread, receiving the thread index
+     * @return elapsed time in nanoseconds
+     */
+    private long hammer(ThreadTask task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int thread = 0; thread < THREADS; thread++) {
+                int index = thread;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    task.run(index);
+                    return null;
+                }));
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+            return System.nanoTime() - begin;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void report(String scenario, int requests, long elapsedNanos) {
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        LOGGER.info("Admission stress test ({}): {} requests on {} threads in {} ms ({} requests/s)",
+                scenario, requests, THREADS, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), Math.round(requests / seconds));
+    }
+
+    @FunctionalInterface
+    private interface ThreadTask {
+        void run(int thread) throws Exception;
+    }
+}
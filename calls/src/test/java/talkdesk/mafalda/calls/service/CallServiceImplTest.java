@@ -1,26 +1,45 @@
 package talkdesk.mafalda.calls.service;
 
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.projection.ProjectionFactory;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import talkdesk.mafalda.calls.dtos.CallDto;
 import talkdesk.mafalda.calls.exceptions.CallBadRequestException;
 import talkdesk.mafalda.calls.exceptions.CallNotFoundException;
+import talkdesk.mafalda.calls.metrics.CallMetrics;
 import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.model.CallCursorPage;
+import talkdesk.mafalda.calls.model.CallOutcome;
 import talkdesk.mafalda.calls.model.CallStatistics;
+import talkdesk.mafalda.calls.model.DailyCallTotals;
+import talkdesk.mafalda.calls.model.DailyNumberCalls;
 import talkdesk.mafalda.calls.repos.CallRepository;
+import talkdesk.mafalda.calls.statistics.CallStatisticsAccumulator;
+import talkdesk.mafalda.calls.statistics.CallStatisticsAggregator;
+import talkdesk.mafalda.calls.statistics.CallStatisticsCache;
+import talkdesk.mafalda.calls.statistics.CallStatisticsEngine;
+import talkdesk.mafalda.calls.stream.CallEventStream;
+import talkdesk.mafalda.calls.writebehind.CallWriteBehind;
 
 import java.sql.Timestamp;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Optional;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -34,7 +53,7 @@ class CallServiceImplTest {
     public static final String CALLER_NUMBER = "123456";
     public static final String CALLER_NUMBER2 = "123489756";
     public static final String CALLEE_NUMBER = "234986";
-    public static final String CALLEE_NUMBER2 = "234986";
+    public static final String CALLEE_NUMBER2 = "2349861";
     public static final String CALL_TYPE = "INBOUND";
     public static final String OUTBOUND = "OUTBOUND";
     public static final String ON_CALL = "ON_CALL";
@@ -43,12 +62,38 @@ class CallServiceImplTest {
     public static final int PAGE_NUMBER = 0;
     public static final int PAGE_SIZE = 20;
 
-    @InjectMocks
     private CallServiceImpl callServiceImpl;
 
+    private final ProjectionFactory projectionFactory = new SpelAwareProxyProjectionFactory();
+
     @Mock
     private CallRepository callRepository;
 
+    @Spy
+    private ActiveCallIndex activeCallIndex;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private CallMetrics callMetrics;
+
+    private CallStatisticsAggregator callStatisticsAggregator;
+
+    private CallStatisticsEngine callStatisticsEngine;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        callMetrics = new CallMetrics(meterRegistry, activeCallIndex);
+        callStatisticsAggregator = new CallStatisticsAggregator(callRepository, callMetrics, CallStatisticsAggregator.DATABASE, 1);
+        callStatisticsEngine = new CallStatisticsEngine(callStatisticsAggregator);
+        callServiceImpl = new CallServiceImpl(callRepository, activeCallIndex, callStatisticsEngine, callStatisticsAggregator,
+                new CallStatisticsCache(callMetrics, Duration.ofSeconds(5), 1000), new CallVersions(Duration.ofSeconds(5)),
+                new CallEventStream(callMetrics, activeCallIndex, Duration.ofMinutes(30), 100, 1000, Duration.ZERO, 1),
+                new CallWriteBehind(callRepository, null, null, null, callMetrics, CallWriteBehind.DIRECT,
+                        "memory", "journal", 500, Duration.ofMillis(200), 100_000),
+                callMetrics);
+    }
+
     @Test
     void givenNoParams_whenGetCalls_thenShouldFindCall() {
         Call call = createDummyCall(ENDED_CALL);
@@ -153,6 +198,64 @@ class CallServiceImplTest {
     }
 
 
+    @Test
+    void givenMoreCallsThanPageSize_whenGetCallsWithCursor_thenShouldReturnNextCursor() {
+        Call call = createDummyCall(ENDED_CALL);
+        Call call2 = createDummyCall(ENDED_CALL);
+        call2.setId(INVALID_CALL_ID);
+
+        when(this.callRepository.findCallsAfter(null, 0, OUTBOUND, EMPTY_STRING, 2)).thenReturn(Arrays.asList(call, call2));
+        when(this.callRepository.findCallsAfter(call.getStartTime(), call.getId(), OUTBOUND, EMPTY_STRING, 2))
+                .thenReturn(Collections.singletonList(call2));
+
+        CallCursorPage callPage = callServiceImpl.getCalls(EMPTY_STRING, 1, OUTBOUND, EMPTY_STRING);
+        assertEquals(Collections.singletonList(call), callPage.getContent());
+        assertNotNull(callPage.getNextCursor());
+
+        CallCursorPage nextCallPage = callServiceImpl.getCalls(callPage.getNextCursor(), 1, OUTBOUND, EMPTY_STRING);
+        assertEquals(Collections.singletonList(call2), nextCallPage.getContent());
+        assertNull(nextCallPage.getNextCursor());
+        verify(callRepository, never()).count();
+    }
+
+    @Test
+    void givenInvalidCursor_whenGetCallsWithCursor_thenThrowCallBadRequestException() {
+        Exception exception = assertThrows(CallBadRequestException.class, () ->
+                this.callServiceImpl.getCalls("not-a-cursor", PAGE_SIZE, EMPTY_STRING, EMPTY_STRING));
+
+        assertTrue(exception.getMessage().contains("Invalid cursor not-a-cursor"));
+    }
+
+    @Test
+    void givenInvalidStatusParams_whenGetCallsWithCursor_thenThrowCallBadRequestException() {
+        Exception exception = assertThrows(CallBadRequestException.class, () ->
+                this.callServiceImpl.getCalls(EMPTY_STRING, PAGE_SIZE, EMPTY_STRING, OUTBOUND));
+
+        assertTrue(exception.getMessage().contains("The call status must be ON_CALL or ENDED_CALL not " + OUTBOUND));
+    }
+
+    @Test
+    void givenMatchingCalls_whenExportingCalls_thenShouldPassEachCallToConsumer() {
+        Call call = createDummyCall(ENDED_CALL);
+        when(this.callRepository.streamCalls(OUTBOUND, ENDED_CALL, null, null)).thenReturn(Stream.of(call, call));
+
+        List<Call> exported = new ArrayList<>();
+        long total = callServiceImpl.exportCalls(OUTBOUND, ENDED_CALL, null, null, exported::add);
+
+        assertEquals(2, total);
+        assertEquals(Arrays.asList(call, call), exported);
+    }
+
+    @Test
+    void givenInvalidTimeRange_whenExportingCalls_thenThrowCallBadRequestException() {
+        Timestamp from = Timestamp.valueOf("2021-07-10 00:00:00");
+        Timestamp to = Timestamp.valueOf("2021-07-09 00:00:00");
+
+        assertThrows(CallBadRequestException.class, () ->
+                this.callServiceImpl.exportCalls(EMPTY_STRING, EMPTY_STRING, from, to, call -> fail()));
+        verify(callRepository, never()).streamCalls(anyString(), anyString(), any(), any());
+    }
+
     @Test
     void givenValidCall_whenAddingCall_thenShouldCreateCall() {
         CallDto callDto = new CallDto(CALLER_NUMBER, CALLEE_NUMBER, CALL_TYPE);
@@ -165,6 +268,17 @@ class CallServiceImplTest {
         assertNotNull(callResult.getCalleeNumber());
     }
 
+    @Test
+    void givenBusyCaller_whenAddingCall_thenShouldRecordTheAdmissionCheck() {
+        when(callRepository.save(any(Call.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        callServiceImpl.saveCall(new CallDto(CALLER_NUMBER, CALLEE_NUMBER, CALL_TYPE));
+
+        assertThrows(CallBadRequestException.class, () ->
+                callServiceImpl.saveCall(new CallDto(CALLER_NUMBER, CALLEE_NUMBER2, CALL_TYPE)));
+
+        assertEquals(2, meterRegistry.get(CallMetrics.ADMISSION).timer().count());
+    }
+
     @Test
     void givenValidListOfCall_whenAddingCalls_thenShouldCreateCalls() {
         CallDto callDto = new CallDto(CALLER_NUMBER, CALLEE_NUMBER, CALL_TYPE);
@@ -180,16 +294,49 @@ class CallServiceImplTest {
             callsList.add(transformToEntity);
         }
 
-        when(callRepository.saveAll(anyList())).thenReturn(callsList);
+        when(callRepository.insertAll(anyList())).thenReturn(callsList);
 
         List<Call> callResult = callServiceImpl.saveCalls(calls);
-        verify(callRepository, times(1)).saveAll(anyList());
+        verify(callRepository, times(1)).insertAll(anyList());
         assertNotNull(callResult);
         assertEquals(callResult.get(0).getCalleeNumber(), CALLEE_NUMBER);
 
     }
 
 
+    @Test
+    void givenListOfCallsWithSameCallee_whenAddingCalls_thenThrowIllegalArgumentException() {
+        CallDto callDto = new CallDto(CALLER_NUMBER, CALLEE_NUMBER, CALL_TYPE);
+        CallDto callDto2 = new CallDto(CALLER_NUMBER2, CALLEE_NUMBER, CALL_TYPE);
+        List<CallDto> calls = new ArrayList<>();
+        calls.add(callDto);
+        calls.add(callDto2);
+
+        Exception exception = assertThrows(CallBadRequestException.class, () ->
+                callServiceImpl.saveCalls(calls));
+
+        String expectedMessage = "Callee number " + CALLEE_NUMBER + " is busy";
+        String actualMessage = exception.getMessage();
+        assertTrue(actualMessage.contains(expectedMessage));
+        verify(callRepository, never()).insertAll(anyList());
+        assertFalse(activeCallIndex.isCallerBusy(CALLER_NUMBER));
+        verify(activeCallIndex, never()).reserve(anyString(), anyString());
+    }
+
+    @Test
+    void givenBatchWithBusyCaller_whenAddingCalls_thenThrowBeforeReservingAnyNumber() {
+        activeCallIndex.reserve(CALLER_NUMBER2, CALLEE_NUMBER2);
+        List<CallDto> calls = Arrays.asList(new CallDto(CALLER_NUMBER, CALLEE_NUMBER, CALL_TYPE),
+                new CallDto(CALLER_NUMBER2, CALLEE_NUMBER, CALL_TYPE));
+
+        Exception exception = assertThrows(CallBadRequestException.class, () -> callServiceImpl.saveCalls(calls));
+
+        assertTrue(exception.getMessage().contains("Caller number " + CALLER_NUMBER2 + " is busy"));
+        assertFalse(activeCallIndex.isCallerBusy(CALLER_NUMBER));
+        assertEquals(1, activeCallIndex.size());
+        verify(callRepository, never()).insertAll(anyList());
+    }
+
     @Test
     void givenEqualCallerNumberAndCalleeNumber_whenAddingCall_thenThrowIllegalArgumentException() {
         CallDto callDto = new CallDto(CALLEE_NUMBER, CALLEE_NUMBER, CALL_TYPE);
@@ -215,6 +362,7 @@ class CallServiceImplTest {
         when(this.callRepository.findById(call.getId())).thenReturn(Optional.of(call));
         when(this.callRepository.findCallsByStatus(ON_CALL)).thenReturn(Collections.singletonList(call));
         when(this.callRepository.save(any(Call.class))).thenReturn(call);
+        callServiceImpl.loadActiveCalls();
 
         Exception exception = assertThrows(CallBadRequestException.class, () ->
                 callServiceImpl.saveCall(callDto));
@@ -234,6 +382,7 @@ class CallServiceImplTest {
         when(this.callRepository.findById(call.getId())).thenReturn(Optional.of(call));
         when(this.callRepository.findCallsByStatus(ON_CALL)).thenReturn(Collections.singletonList(call));
         when(this.callRepository.save(any(Call.class))).thenReturn(call);
+        callServiceImpl.loadActiveCalls();
 
 
         Exception exception = assertThrows(CallBadRequestException.class, () ->
@@ -245,18 +394,52 @@ class CallServiceImplTest {
     }
 
 
+    @Test
+    void givenCreatedCall_whenAddingCallWithSameCaller_thenThrowIllegalArgumentException() {
+        CallDto callDto = new CallDto(CALLER_NUMBER, CALLEE_NUMBER, CALL_TYPE);
+        CallDto callDto2 = new CallDto(CALLER_NUMBER, CALLER_NUMBER2, CALL_TYPE);
+
+        when(callRepository.save(any(Call.class))).thenReturn(this.callServiceImpl.transformToEntity(callDto));
+        callServiceImpl.saveCall(callDto);
+
+        Exception exception = assertThrows(CallBadRequestException.class, () ->
+                callServiceImpl.saveCall(callDto2));
+
+        String expectedMessage = "Caller number " + CALLER_NUMBER + " is busy";
+        String actualMessage = exception.getMessage();
+        assertTrue(actualMessage.contains(expectedMessage));
+    }
+
+    @Test
+    void givenEndedCall_whenAddingCallWithSameNumbers_thenShouldCreateCall() {
+        Call call = createDummyCall(ON_CALL);
+        CallDto callDto = new CallDto(CALLER_NUMBER, CALLEE_NUMBER, CALL_TYPE);
+
+        when(this.callRepository.findCallsByStatus(ON_CALL)).thenReturn(Collections.singletonList(call));
+        when(this.callRepository.endCall(eq(call.getId()), any(Timestamp.class))).thenReturn(Optional.of(createDummyCall(ENDED_CALL)));
+        when(this.callRepository.save(any(Call.class))).thenReturn(call);
+        callServiceImpl.loadActiveCalls();
+
+        callServiceImpl.endCall(call.getId());
+
+        assertFalse(activeCallIndex.isCallerBusy(CALLER_NUMBER));
+        assertFalse(activeCallIndex.isCalleeBusy(CALLEE_NUMBER));
+        assertNotNull(callServiceImpl.saveCall(callDto));
+    }
+
     @Test
     void givenValidCallId_whenDeletingCall_thenShouldFindAndDeleteCall() {
         Call call = createDummyCall(ENDED_CALL);
-        when(callRepository.findById(call.getId())).thenReturn(Optional.of(call));
+        when(callRepository.findCallById(call.getId())).thenReturn(Optional.of(call));
         callServiceImpl.deleteCall(call.getId());
         verify(callRepository).deleteById(call.getId());
+        verify(callRepository, never()).findById(anyLong());
     }
 
     @Test
     void givenInvalidCallId_whenDeletingCall_thenThrowReturnCallNotFoundException() {
         Call call = createDummyCall(ENDED_CALL);
-        when(callRepository.findById(call.getId())).thenReturn(Optional.of(call));
+        when(callRepository.findCallById(call.getId())).thenReturn(Optional.of(call));
 
         Exception exception = assertThrows(CallNotFoundException.class, () ->
                 callServiceImpl.deleteCall(INVALID_CALL_ID));
@@ -268,23 +451,22 @@ class CallServiceImplTest {
 
 
     @Test
-    void givenValidCallId_whenEndingCall_thenShouldFindAndEndedCall() {
-        Call call = createDummyCall(ON_CALL);
+    void givenValidCallId_whenEndingCall_thenShouldEndCallWithOneConditionalUpdate() {
+        Call call = createDummyCall(ENDED_CALL);
 
-        when(this.callRepository.findById(call.getId())).thenReturn(Optional.of(call));
-        when(this.callRepository.findById(call.getId())).thenReturn(Optional.of(call));
-        when(this.callRepository.save(any(Call.class))).thenReturn(call);
+        when(this.callRepository.endCall(eq(call.getId()), any(Timestamp.class))).thenReturn(Optional.of(call));
 
         Call final_call = callServiceImpl.endCall(call.getId());
-        verify(callRepository).save(call);
+        verify(callRepository, never()).findById(anyLong());
+        verify(callRepository, never()).save(any(Call.class));
         assertEquals(final_call.getStatus(), ENDED_CALL);
 
     }
 
     @Test
     void givenInvalidCallId_whenEndingCall_thenThrowReturnCallNotFoundException() {
-        Call call = createDummyCall(ON_CALL);
-        when(callRepository.findById(call.getId())).thenReturn(Optional.of(call));
+        when(callRepository.endCall(eq(INVALID_CALL_ID), any(Timestamp.class))).thenReturn(Optional.empty());
+        when(callRepository.existsById(INVALID_CALL_ID)).thenReturn(false);
 
         Exception exception = assertThrows(CallNotFoundException.class, () ->
                 callServiceImpl.endCall(INVALID_CALL_ID));
@@ -297,7 +479,8 @@ class CallServiceImplTest {
     @Test
     void givenCallIdAlreadyEnded_whenEndingCall_thenThrowReturnCallNotFoundException() {
         Call call = createDummyCall(ENDED_CALL);
-        when(callRepository.findById(call.getId())).thenReturn(Optional.of(call));
+        when(callRepository.endCall(eq(call.getId()), any(Timestamp.class))).thenReturn(Optional.empty());
+        when(callRepository.existsById(call.getId())).thenReturn(true);
 
         Exception exception = assertThrows(CallBadRequestException.class, () ->
                 callServiceImpl.endCall(call.getId()));
@@ -308,16 +491,55 @@ class CallServiceImplTest {
     }
 
 
+    @Test
+    void givenBatchOfIds_whenEndingCalls_thenShouldEndTheOngoingCallsAndReportEachId() {
+        Call ongoingCall = createDummyCall(ON_CALL);
+        Call endedCall = createDummyCall(ENDED_CALL);
+        endedCall.setId(3L);
+        when(callRepository.findCallsByIdIn(anyCollection())).thenReturn(Arrays.asList(endedCall, ongoingCall));
+        activeCallIndex.reserve(CALLER_NUMBER, CALLEE_NUMBER);
+
+        List<CallOutcome> outcomes = callServiceImpl.endCalls(Arrays.asList(CALL_ID, 3L, INVALID_CALL_ID, CALL_ID));
+
+        verify(callRepository).endCallsByIdIn(eq(Collections.singletonList(CALL_ID)), any(Timestamp.class), eq(false));
+        verify(callRepository, never()).save(any(Call.class));
+        assertEquals(Arrays.asList(CallOutcome.ENDED, CallOutcome.ALREADY_ENDED, CallOutcome.NOT_FOUND),
+                outcomes.stream().map(CallOutcome::getOutcome).collect(Collectors.toList()));
+        assertEquals(ENDED_CALL, outcomes.get(0).getCall().getStatus());
+        assertFalse(activeCallIndex.isCallerBusy(CALLER_NUMBER));
+        assertEquals(1, callServiceImpl.getCallStatistics().getTotalNumberOfCalls());
+    }
+
+    @Test
+    void givenBatchOfIds_whenDeletingCalls_thenShouldDeleteTheCallsFoundAndReportEachId() {
+        Call call = createDummyCall(ENDED_CALL);
+        when(callRepository.findCallsByIdIn(anyCollection())).thenReturn(Collections.singletonList(call));
+
+        List<CallOutcome> outcomes = callServiceImpl.deleteCalls(Arrays.asList(CALL_ID, INVALID_CALL_ID));
+
+        verify(callRepository).deleteCallsByIdIn(Collections.singleton(CALL_ID));
+        assertEquals(Arrays.asList(CallOutcome.DELETED, CallOutcome.NOT_FOUND),
+                outcomes.stream().map(CallOutcome::getOutcome).collect(Collectors.toList()));
+    }
+
+    @Test
+    void givenTooManyIds_whenEndingCalls_thenThrowCallBadRequestException() {
+        List<Long> ids = LongStream.rangeClosed(1, CallServiceImpl.MAX_BATCH_SIZE + 1).boxed().collect(Collectors.toList());
+
+        assertThrows(CallBadRequestException.class, () -> callServiceImpl.endCalls(ids));
+        assertThrows(CallBadRequestException.class, () -> callServiceImpl.deleteCalls(Collections.emptyList()));
+        verify(callRepository, never()).findCallsByIdIn(anyCollection());
+    }
+
     @Test
     void givenValidRequest_whenGetCallStatistics_thenShouldReturnStatisticsForAllCalls() {
         Call call = createDummyCall(ENDED_CALL);
 
         when(this.callRepository.findById(call.getId())).thenReturn(Optional.of(call));
 
-        when(this.callRepository.findCallsByStatus(ENDED_CALL)).thenReturn(Collections.singletonList(call));
-        when(this.callRepository.findCallsByTypeAndStatus(CALL_TYPE, ENDED_CALL)).thenReturn(Collections.singletonList(call));
-        when(this.callRepository.findCallsByTypeAndStatus(OUTBOUND, ENDED_CALL)).thenReturn(Collections.singletonList(call));
+        stubEndedCallsAggregation(call);
         when(this.callRepository.saveAll(anyList())).thenReturn(null);
+        callServiceImpl.rebuildCallStatistics();
 
         CallStatistics callStatistics = callServiceImpl.getCallStatistics();
 
@@ -325,6 +547,132 @@ class CallServiceImplTest {
         assertEquals(1, callStatistics.getTotalNumberOfCalls());
     }
 
+    @Test
+    void givenEndedCall_whenGetCallStatistics_thenShouldIncludeEndedCall() {
+        Call call = createDummyCall(ENDED_CALL);
+
+        when(this.callRepository.endCall(eq(call.getId()), any(Timestamp.class))).thenReturn(Optional.of(call));
+
+        assertEquals(0, callServiceImpl.getCallStatistics().getTotalNumberOfCalls());
+        callServiceImpl.endCall(call.getId());
+
+        CallStatistics callStatistics = callServiceImpl.getCallStatistics();
+        assertEquals(1, callStatistics.getTotalNumberOfCalls());
+        assertEquals(1, callStatistics.getTotalCallsByCallerNumber().get("2021-07-09").get(CALLER_NUMBER));
+    }
+
+    @Test
+    void givenRolledBackEnd_whenEndingCall_thenShouldKeepTheNumbersBusy() {
+        Call call = createDummyCall(ENDED_CALL);
+        when(this.callRepository.endCall(eq(call.getId()), any(Timestamp.class))).thenReturn(Optional.of(call));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            callServiceImpl.endCall(call.getId());
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(synchronization ->
+                    synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        verify(activeCallIndex, never()).remove(any());
+    }
+
+    @Test
+    void givenDeletedEndedCall_whenGetCallStatistics_thenShouldNotIncludeDeletedCall() {
+        Call call = createDummyCall(ENDED_CALL);
+
+        when(this.callRepository.findCallById(call.getId())).thenReturn(Optional.of(call));
+        stubEndedCallsAggregation(call);
+        callServiceImpl.rebuildCallStatistics();
+
+        callServiceImpl.deleteCall(call.getId());
+
+        CallStatistics callStatistics = callServiceImpl.getCallStatistics();
+        assertEquals(0, callStatistics.getTotalNumberOfCalls());
+        assertTrue(callStatistics.getTotalCostByOutbound().isEmpty());
+    }
+
+    @Test
+    void givenCreatedCall_whenGetVersions_thenShouldChangeOnlyTheCallsVersion() {
+        when(this.callRepository.save(any(Call.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        String callsVersion = callServiceImpl.getCallsVersion();
+        String statisticsVersion = callServiceImpl.getStatisticsVersion();
+
+        callServiceImpl.saveCall(new CallDto(CALLER_NUMBER, CALLEE_NUMBER, CALL_TYPE));
+
+        assertNotEquals(callsVersion, callServiceImpl.getCallsVersion());
+        assertEquals(statisticsVersion, callServiceImpl.getStatisticsVersion());
+    }
+
+    @Test
+    void givenEndedCall_whenGetVersions_thenShouldChangeBothVersions() {
+        Call call = createDummyCall(ENDED_CALL);
+        when(this.callRepository.endCall(eq(call.getId()), any(Timestamp.class))).thenReturn(Optional.of(call));
+        String callsVersion = callServiceImpl.getCallsVersion();
+        String statisticsVersion = callServiceImpl.getStatisticsVersion();
+
+        callServiceImpl.endCall(call.getId());
+
+        assertNotEquals(callsVersion, callServiceImpl.getCallsVersion());
+        assertNotEquals(statisticsVersion, callServiceImpl.getStatisticsVersion());
+    }
+
+    @Test
+    void givenTypeAndTimeRange_whenGetCallStatistics_thenShouldAggregateOnlyTheRange() {
+        Call call = createDummyCall(ENDED_CALL);
+        Timestamp from = Timestamp.valueOf("2021-07-09 00:00:00");
+        Timestamp to = Timestamp.valueOf("2021-07-10 00:00:00");
+        List<String> types = Collections.singletonList(OUTBOUND);
+        LocalDate callDate = call.getStartTime().toLocalDateTime().toLocalDate();
+        when(this.callRepository.sumCallsByDayAndTypeBetween(ENDED_CALL, types, from, to)).thenReturn(Collections.singletonList(
+                projectionFactory.createProjection(DailyCallTotals.class, Map.of("callDate", callDate, "type", OUTBOUND,
+                        "totalCalls", 1L, "totalDuration", 60_000L, "totalCostInCents", 10L))));
+        when(this.callRepository.countCallsByDayAndCallerNumberBetween(ENDED_CALL, types, from, to)).thenReturn(Collections.singletonList(
+                projectionFactory.createProjection(DailyNumberCalls.class,
+                        Map.of("callDate", callDate, "number", call.getCallerNumber(), "totalCalls", 1L))));
+
+        CallStatistics callStatistics = callServiceImpl.getCallStatistics(OUTBOUND, from, to);
+
+        assertEquals(1, callStatistics.getTotalNumberOfCalls());
+        assertEquals(0.1, callStatistics.getTotalCostByOutbound().get("2021-07-09"));
+        verify(callRepository, never()).sumCallsByDayAndType(anyString());
+    }
+
+    @Test
+    void givenInvalidTimeRange_whenGetCallStatistics_thenThrowCallBadRequestException() {
+        Timestamp from = Timestamp.valueOf("2021-07-10 00:00:00");
+        Timestamp to = Timestamp.valueOf("2021-07-09 00:00:00");
+
+        assertThrows(CallBadRequestException.class, () -> this.callServiceImpl.getCallStatistics(EMPTY_STRING, from, to));
+        verify(callRepository, never()).sumCallsByDayAndTypeBetween(anyString(), any(), any(), any());
+    }
+
+    @Test
+    void givenInvalidType_whenGetCallStatistics_thenThrowCallBadRequestException() {
+        assertThrows(CallBadRequestException.class, () -> this.callServiceImpl.getCallStatistics("OTHER", null, null));
+    }
+
+    private void stubEndedCallsAggregation(Call call) {
+        LocalDate callDate = call.getStartTime().toLocalDateTime().toLocalDate();
+        long duration = call.getEndTime().getTime() - call.getStartTime().getTime();
+        Map<String, Object> totals = new HashMap<>();
+        totals.put("callDate", callDate);
+        totals.put("type", call.getType());
+        totals.put("totalCalls", 1L);
+        totals.put("totalDuration", duration);
+        totals.put("totalCostInCents", CallStatisticsAccumulator.getCallCostInCents(call.getType(), duration));
+
+        when(this.callRepository.sumCallsByDayAndType(ENDED_CALL)).thenReturn(Collections.singletonList(
+                projectionFactory.createProjection(DailyCallTotals.class, totals)));
+        when(this.callRepository.countCallsByDayAndCallerNumber(ENDED_CALL)).thenReturn(Collections.singletonList(
+                projectionFactory.createProjection(DailyNumberCalls.class,
+                        Map.of("callDate", callDate, "number", call.getCallerNumber(), "totalCalls", 1L))));
+        when(this.callRepository.countCallsByDayAndCalleeNumber(ENDED_CALL)).thenReturn(Collections.singletonList(
+                projectionFactory.createProjection(DailyNumberCalls.class,
+                        Map.of("callDate", callDate, "number", call.getCalleeNumber(), "totalCalls", 1L))));
+    }
+
     private Call createDummyCall(String status) {
         Call call = new Call();
         call.setId(CALL_ID);
@@ -0,0 +1,86 @@
+package talkdesk.mafalda.calls.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import talkdesk.mafalda.calls.dtos.CallDto;
+import talkdesk.mafalda.calls.exceptions.CallNotFoundException;
+import talkdesk.mafalda.calls.metrics.CallMetrics;
+import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.model.CallStatistics;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(SpringExtension.class)
+class MeteredCallServiceTest {
+
+    public static final long CALL_ID = 1;
+    public static final String CALL_TYPE = "INBOUND";
+
+    @Mock
+    private CallServiceImpl callServiceImpl;
+
+    private final ActiveCallIndex activeCallIndex = new ActiveCallIndex();
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private MeteredCallService meteredCallService;
+
+    @BeforeEach
+    void setUp() {
+        meteredCallService = new MeteredCallService(callServiceImpl, new CallMetrics(meterRegistry, activeCallIndex));
+    }
+
+    @Test
+    void givenBulkRequest_whenSavingCalls_thenShouldTimeTheMethodAndCountTheCreatedCalls() {
+        List<CallDto> calls = Arrays.asList(new CallDto("1", "2", CALL_TYPE), new CallDto("3", "4", CALL_TYPE));
+        when(callServiceImpl.saveCalls(calls)).thenReturn(Arrays.asList(new Call(), new Call()));
+
+        meteredCallService.saveCalls(calls);
+
+        assertEquals(1, meterRegistry.get(CallMetrics.SERVICE).tags("method", "saveCalls", "exception", "none").timer().count());
+        assertEquals(2, meterRegistry.get(CallMetrics.LIFECYCLE).tag("event", CallMetrics.CREATED).counter().count());
+        assertEquals(1, meterRegistry.get(CallMetrics.BULK_SIZE).summary().count());
+        assertEquals(2, meterRegistry.get(CallMetrics.BULK_SIZE).summary().totalAmount());
+    }
+
+    @Test
+    void givenUnknownCall_whenEndingCall_thenShouldTimeTheExceptionWithoutCountingTheCall() {
+        when(callServiceImpl.endCall(CALL_ID)).thenThrow(new CallNotFoundException(CALL_ID));
+
+        assertThrows(CallNotFoundException.class, () -> meteredCallService.endCall(CALL_ID));
+
+        assertEquals(1, meterRegistry.get(CallMetrics.SERVICE)
+                .tags("method", "endCall", "exception", "CallNotFoundException").timer().count());
+        assertNull(meterRegistry.find(CallMetrics.LIFECYCLE).counter());
+    }
+
+    @Test
+    void givenStatisticsRequests_whenGettingCallStatistics_thenShouldTimeEachRequest() {
+        when(callServiceImpl.getCallStatistics()).thenReturn(new CallStatistics());
+        when(callServiceImpl.getCallStatistics(CALL_TYPE, null, null)).thenReturn(new CallStatistics());
+
+        meteredCallService.getCallStatistics();
+        meteredCallService.getCallStatistics(CALL_TYPE, null, null);
+
+        assertEquals(2, meterRegistry.get(CallMetrics.SERVICE).tag("method", "getCallStatistics").timer().count());
+    }
+
+    @Test
+    void givenOngoingCalls_whenReadingTheGauge_thenShouldReturnTheActiveCalls() {
+        activeCallIndex.reserve("1", "2");
+        activeCallIndex.reserve("3", "4");
+
+        assertEquals(2, meterRegistry.get(CallMetrics.ACTIVE).gauge().value());
+    }
+}
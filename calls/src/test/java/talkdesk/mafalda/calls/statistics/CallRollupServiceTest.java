@@ -0,0 +1,143 @@
+package talkdesk.mafalda.calls.statistics;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.model.CallDailyRollup;
+import talkdesk.mafalda.calls.model.CallDailyRollupId;
+import talkdesk.mafalda.calls.model.CallStatistics;
+import talkdesk.mafalda.calls.repos.CallDailyRollupRepository;
+import talkdesk.mafalda.calls.repos.CallRepository;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static talkdesk.mafalda.calls.model.CallDailyRollupId.CALLEE;
+import static talkdesk.mafalda.calls.model.CallDailyRollupId.CALLER;
+
+@ExtendWith(SpringExtension.class)
+class CallRollupServiceTest {
+
+    public static final String CALLER_NUMBER = "123456";
+    public static final String CALLEE_NUMBER = "234986";
+    public static final String OUTBOUND = "OUTBOUND";
+    public static final String ENDED_CALL = "ENDED_CALL";
+    public static final LocalDate DAY = LocalDate.of(2021, 7, 9);
+    public static final int CHUNK_SIZE = 2;
+
+    @Mock
+    private CallRepository callRepository;
+
+    @Mock
+    private CallDailyRollupRepository callDailyRollupRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private CallRollupService callRollupService;
+
+    @BeforeEach
+    void setUp() {
+        callRollupService = new CallRollupService(callRepository, callDailyRollupRepository, transactionManager, CHUNK_SIZE);
+    }
+
+    @Test
+    void givenEndedCall_whenCallEnded_thenShouldIncrementCallerAndCalleeRollups() {
+        Call call = createCall(1);
+
+        callRollupService.callEnded(call);
+
+        verify(callDailyRollupRepository).increment(DAY, OUTBOUND, CALLER, CALLER_NUMBER, 1, 750_000, 35);
+        verify(callDailyRollupRepository).increment(DAY, OUTBOUND, CALLEE, CALLEE_NUMBER, 1, 750_000, 35);
+        assertTrue(call.isRolledUp());
+    }
+
+    @Test
+    void givenRolledUpCall_whenCallDeleted_thenShouldDecrementRollups() {
+        Call call = createCall(1);
+        call.setRolledUp(true);
+
+        callRollupService.callDeleted(call);
+
+        verify(callDailyRollupRepository).increment(DAY, OUTBOUND, CALLER, CALLER_NUMBER, -1, -750_000, -35);
+        verify(callDailyRollupRepository).increment(DAY, OUTBOUND, CALLEE, CALLEE_NUMBER, -1, -750_000, -35);
+        verify(callDailyRollupRepository, times(2)).deleteIfEmpty(any(CallDailyRollupId.class));
+    }
+
+    @Test
+    void givenCallNotRolledUp_whenCallDeleted_thenShouldNotChangeRollups() {
+        callRollupService.callDeleted(createCall(1));
+
+        verifyNoInteractions(callDailyRollupRepository);
+    }
+
+    @Test
+    void givenRollups_whenGetCallStatistics_thenShouldAggregateRollups() {
+        when(callDailyRollupRepository.findAll()).thenReturn(Arrays.asList(
+                createRollup(CALLER, CALLER_NUMBER, 2, 900_000, 45),
+                createRollup(CALLEE, CALLEE_NUMBER, 2, 900_000, 45)));
+
+        CallStatistics callStatistics = callRollupService.getCallStatistics();
+
+        assertEquals(2, callStatistics.getTotalNumberOfCalls());
+        assertEquals("00:15:00", callStatistics.getTotalOutboundCallDuration().get(DAY.toString()));
+        assertEquals(0.45, callStatistics.getTotalCostByOutbound().get(DAY.toString()));
+        assertEquals(2, callStatistics.getTotalCallsByCallerNumber().get(DAY.toString()).get(CALLER_NUMBER));
+        assertEquals(2, callStatistics.getTotalCallsByCalleeNumber().get(DAY.toString()).get(CALLEE_NUMBER));
+        assertTrue(callStatistics.getTotalInboundCallDuration().isEmpty());
+    }
+
+    @Test
+    void givenCallsNotRolledUp_whenBackfilling_thenShouldCountCallsInChunks() {
+        List<Call> chunk = Arrays.asList(createCall(1), createCall(2));
+        List<Call> lastChunk = Collections.singletonList(createCall(3));
+        when(callRepository.findCallsByStatusAndRolledUpFalse(eq(ENDED_CALL), any(Pageable.class)))
+                .thenReturn(chunk)
+                .thenReturn(lastChunk)
+                .thenReturn(Collections.emptyList());
+
+        long total = callRollupService.backfill();
+
+        assertEquals(3, total);
+        verify(callDailyRollupRepository).increment(DAY, OUTBOUND, CALLER, CALLER_NUMBER, 2, 1_500_000, 70);
+        verify(callDailyRollupRepository).increment(DAY, OUTBOUND, CALLER, CALLER_NUMBER, 1, 750_000, 35);
+        verify(callDailyRollupRepository, times(4)).increment(any(LocalDate.class), anyString(), anyString(), anyString(),
+                anyLong(), anyLong(), anyLong());
+        assertTrue(chunk.stream().allMatch(Call::isRolledUp));
+        assertTrue(lastChunk.get(0).isRolledUp());
+    }
+
+    private Call createCall(long id) {
+        Call call = new Call();
+        call.setId(id);
+        call.setCallerNumber(CALLER_NUMBER);
+        call.setCalleeNumber(CALLEE_NUMBER);
+        call.setType(OUTBOUND);
+        call.setStatus(ENDED_CALL);
+        call.setStartTime(Timestamp.valueOf("2021-07-09 10:00:00.00"));
+        call.setEndTime(Timestamp.valueOf("2021-07-09 10:12:30.00"));
+        return call;
+    }
+
+    private CallDailyRollup createRollup(String numberType, String number, long calls, long duration, long cost) {
+        CallDailyRollup rollup = new CallDailyRollup();
+        rollup.setId(new CallDailyRollupId(DAY, OUTBOUND, numberType, number));
+        rollup.setTotalCalls(calls);
+        rollup.setTotalDuration(duration);
+        rollup.setTotalCostInCents(cost);
+        return rollup;
+    }
+}
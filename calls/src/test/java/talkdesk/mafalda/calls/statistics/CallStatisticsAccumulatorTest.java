@@ -0,0 +1,39 @@
+package talkdesk.mafalda.calls.statistics;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CallStatisticsAccumulatorTest {
+
+    @Test
+    void givenTimesAroundMidnight_whenFormattingDate_thenShouldMatchSimpleDateFormat() {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        long start = Timestamp.valueOf("2021-03-27 23:00:00").getTime();
+        // covers a daylight saving change in most time zones
+        for (long time = start; time < start + TimeUnit.DAYS.toMillis(3); time += TimeUnit.MINUTES.toMillis(7)) {
+            Timestamp timestamp = new Timestamp(time);
+            assertEquals(dateFormat.format(timestamp), CallStatisticsAccumulator.formatDate(timestamp));
+        }
+        assertEquals("1969-12-31", CallStatisticsAccumulator.formatDate(-1));
+        assertEquals("2021-07-09", CallStatisticsAccumulator.formatDate(Timestamp.valueOf("2021-07-09 00:00:00")));
+        assertEquals("2021-07-09", CallStatisticsAccumulator.formatDate(Timestamp.valueOf("2021-07-09 23:59:59.999")));
+    }
+
+    @Test
+    void givenDurations_whenFormattingDuration_thenShouldMatchStringFormat() {
+        for (long duration = 0; duration < TimeUnit.HOURS.toMillis(120); duration += 997_531) {
+            String expected = String.format("%02d:%02d:%02d",
+                    TimeUnit.MILLISECONDS.toHours(duration),
+                    TimeUnit.MILLISECONDS.toMinutes(duration) % TimeUnit.HOURS.toMinutes(1),
+                    TimeUnit.MILLISECONDS.toSeconds(duration) % TimeUnit.MINUTES.toSeconds(1));
+            assertEquals(expected, CallStatisticsAccumulator.formatCallDurationTime(duration));
+        }
+        assertEquals("00:00:00", CallStatisticsAccumulator.formatCallDurationTime(999));
+        assertEquals("123:04:05", CallStatisticsAccumulator.formatCallDurationTime(TimeUnit.HOURS.toMillis(123) + 245_000));
+    }
+}
@@ -0,0 +1,163 @@
+package talkdesk.mafalda.calls.statistics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import talkdesk.mafalda.calls.metrics.CallMetrics;
+import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.model.CallStatistics;
+import talkdesk.mafalda.calls.repos.CallRepository;
+import talkdesk.mafalda.calls.service.ActiveCallIndex;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class CallStatisticsAggregatorTest {
+
+    public static final String INBOUND = "INBOUND";
+    public static final String OUTBOUND = "OUTBOUND";
+    public static final String ON_CALL = "ON_CALL";
+    public static final String ENDED_CALL = "ENDED_CALL";
+
+    @Autowired
+    private CallRepository callRepository;
+
+    private final CallMetrics callMetrics = new CallMetrics(new SimpleMeterRegistry(), new ActiveCallIndex());
+
+    private CallStatisticsAggregator callStatisticsAggregator;
+
+    @BeforeEach
+    void setUp() {
+        callStatisticsAggregator = new CallStatisticsAggregator(callRepository, callMetrics, CallStatisticsAggregator.DATABASE, 1);
+    }
+
+    @Test
+    void givenEndedCalls_whenAggregatingInDatabase_thenShouldMatchStatisticsAggregatedInJava() {
+        callRepository.saveAll(Arrays.asList(
+                createCall("111111", "222222", OUTBOUND, ENDED_CALL, "2021-07-09 10:00:00.00", "2021-07-09 10:12:30.00"),
+                createCall("111111", "333333", OUTBOUND, ENDED_CALL, "2021-07-09 11:00:00.00", "2021-07-09 11:03:00.00"),
+                createCall("222222", "111111", INBOUND, ENDED_CALL, "2021-07-09 12:00:00.00", "2021-07-09 13:00:01.25"),
+                createCall("111111", "222222", OUTBOUND, ENDED_CALL, "2021-07-09 23:59:00.00", "2021-07-10 01:30:59.99"),
+                createCall("333333", "222222", OUTBOUND, ENDED_CALL, "2021-07-10 08:00:00.00", "2021-07-10 08:05:00.00"),
+                createCall("333333", "111111", INBOUND, ENDED_CALL, "2021-07-10 09:00:00.00", "2021-07-10 09:45:10.50"),
+                createCall("444444", "555555", OUTBOUND, ON_CALL, "2021-07-10 10:00:00.00", null)));
+
+        CallStatisticsAccumulator expected = new CallStatisticsAccumulator();
+        callRepository.findCallsByStatus(ENDED_CALL).forEach(expected::add);
+
+        CallStatisticsAccumulator aggregated = callStatisticsAggregator.aggregateEndedCalls();
+
+        assertEquals(expected, aggregated);
+        CallStatistics callStatistics = aggregated.toCallStatistics();
+        assertEquals(6, callStatistics.getTotalNumberOfCalls());
+        assertEquals("01:47:29", callStatistics.getTotalOutboundCallDuration().get("2021-07-09"));
+        assertEquals(1.75, callStatistics.getTotalCostByOutbound().get("2021-07-09"));
+    }
+
+    @Test
+    void givenNoEndedCalls_whenAggregatingInDatabase_thenShouldBeEmpty() {
+        callRepository.save(createCall("444444", "555555", OUTBOUND, ON_CALL, "2021-07-10 10:00:00.00", null));
+
+        assertEquals(new CallStatisticsAccumulator(), callStatisticsAggregator.aggregateEndedCalls());
+    }
+
+    @Test
+    void givenTypeAndTimeRange_whenAggregatingInDatabase_thenShouldOnlyCountMatchingCalls() {
+        callRepository.saveAll(Arrays.asList(
+                createCall("111111", "222222", OUTBOUND, ENDED_CALL, "2021-07-08 23:59:59.99", "2021-07-09 00:10:00.00"),
+                createCall("111111", "333333", OUTBOUND, ENDED_CALL, "2021-07-09 11:00:00.00", "2021-07-09 11:03:00.00"),
+                createCall("222222", "111111", INBOUND, ENDED_CALL, "2021-07-09 12:00:00.00", "2021-07-09 13:00:01.25"),
+                createCall("333333", "222222", OUTBOUND, ENDED_CALL, "2021-07-10 08:00:00.00", "2021-07-10 08:05:00.00"),
+                createCall("333333", "111111", OUTBOUND, ENDED_CALL, "2021-07-11 09:00:00.00", "2021-07-11 09:45:10.50"),
+                createCall("444444", "555555", OUTBOUND, ON_CALL, "2021-07-10 10:00:00.00", null)));
+        Timestamp from = Timestamp.valueOf("2021-07-09 00:00:00");
+        Timestamp to = Timestamp.valueOf("2021-07-11 00:00:00");
+
+        CallStatisticsAccumulator expected = new CallStatisticsAccumulator();
+        callRepository.findCallsByStatus(ENDED_CALL).stream()
+                .filter(call -> OUTBOUND.equals(call.getType()))
+                .filter(call -> !call.getStartTime().before(from) && call.getStartTime().before(to))
+                .forEach(expected::add);
+
+        CallStatisticsAccumulator aggregated = callStatisticsAggregator.aggregateEndedCalls(OUTBOUND, from, to);
+
+        assertEquals(expected, aggregated);
+        assertEquals(2, aggregated.toCallStatistics().getTotalNumberOfCalls());
+        assertEquals(callStatisticsAggregator.aggregateEndedCalls(),
+                callStatisticsAggregator.aggregateEndedCalls("", null, null));
+    }
+
+    @Test
+    void givenEndedCalls_whenAggregatingCalls_thenShouldMatchStatisticsAggregatedInDatabase() {
+        callRepository.saveAll(Arrays.asList(
+                createCall("111111", "222222", OUTBOUND, ENDED_CALL, "2021-07-09 10:00:00.00", "2021-07-09 10:12:30.00"),
+                createCall("+351222", "111111", INBOUND, ENDED_CALL, "2021-07-09 12:00:00.00", "2021-07-09 13:00:01.25"),
+                createCall("333333", "0222222", OUTBOUND, ENDED_CALL, "2021-07-10 08:00:00.00", "2021-07-10 08:05:00.00"),
+                createCall("444444", "555555", OUTBOUND, ON_CALL, "2021-07-10 10:00:00.00", null)));
+
+        CallStatisticsAggregator callsAggregator = new CallStatisticsAggregator(callRepository, callMetrics, CallStatisticsAggregator.CALLS, 2);
+        try {
+            assertEquals(callStatisticsAggregator.aggregateEndedCalls(), callsAggregator.aggregateEndedCalls());
+            assertEquals(callStatisticsAggregator.aggregateEndedCalls(INBOUND, null, Timestamp.valueOf("2021-07-10 00:00:00")),
+                    callsAggregator.aggregateEndedCalls(INBOUND, null, Timestamp.valueOf("2021-07-10 00:00:00")));
+        } finally {
+            callsAggregator.shutdown();
+        }
+    }
+
+    @Test
+    void givenManyCalls_whenAggregatingInParallel_thenShouldMatchSequentialAggregation() {
+        Random random = new Random(42);
+        List<Call> calls = new ArrayList<>();
+        long start = Timestamp.valueOf("2021-07-01 00:00:00").getTime();
+        for (int i = 0; i < 5 * CallStatisticsAggregator.MIN_PARTITION_SIZE + 17; i++) {
+            long startTime = start + random.nextInt(30 * 24 * 3600) * 1000L;
+            Call call = createCall(String.valueOf(100000 + random.nextInt(500)),
+                    random.nextInt(10) == 0 ? "+35191" + random.nextInt(100) : String.valueOf(100000 + random.nextInt(500)),
+                    random.nextBoolean() ? INBOUND : OUTBOUND, ENDED_CALL, null, null);
+            call.setStartTime(new Timestamp(startTime));
+            call.setEndTime(new Timestamp(startTime + random.nextInt(3 * 3600 * 1000)));
+            calls.add(call);
+        }
+
+        CallStatisticsAggregator parallelAggregator = new CallStatisticsAggregator(callRepository, callMetrics, CallStatisticsAggregator.CALLS, 4);
+        try {
+            CallStatisticsAccumulator sequential = callStatisticsAggregator.aggregate(calls);
+            CallStatisticsAccumulator parallel = parallelAggregator.aggregate(calls);
+
+            assertEquals(sequential, parallel);
+            CallStatistics expected = sequential.toCallStatistics();
+            CallStatistics actual = parallel.toCallStatistics();
+            assertEquals(expected.getTotalNumberOfCalls(), actual.getTotalNumberOfCalls());
+            assertEquals(expected.getTotalInboundCallDuration(), actual.getTotalInboundCallDuration());
+            assertEquals(expected.getTotalOutboundCallDuration(), actual.getTotalOutboundCallDuration());
+            assertEquals(expected.getTotalCallsByCallerNumber(), actual.getTotalCallsByCallerNumber());
+            assertEquals(expected.getTotalCallsByCalleeNumber(), actual.getTotalCallsByCalleeNumber());
+            assertEquals(expected.getTotalCostByOutbound(), actual.getTotalCostByOutbound());
+        } finally {
+            parallelAggregator.shutdown();
+        }
+    }
+
+    private Call createCall(String callerNumber, String calleeNumber, String type, String status,
+                            String startTime, String endTime) {
+        Call call = new Call();
+        call.setCallerNumber(callerNumber);
+        call.setCalleeNumber(calleeNumber);
+        call.setType(type);
+        call.setStatus(status);
+        call.setStartTime(startTime == null ? null : Timestamp.valueOf(startTime));
+        call.setEndTime(endTime == null ? null : Timestamp.valueOf(endTime));
+        return call;
+    }
+}
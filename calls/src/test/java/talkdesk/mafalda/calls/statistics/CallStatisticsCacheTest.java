@@ -0,0 +1,171 @@
+package talkdesk.mafalda.calls.statistics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import talkdesk.mafalda.calls.metrics.CallMetrics;
+import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.model.CallStatistics;
+import talkdesk.mafalda.calls.service.ActiveCallIndex;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CallStatisticsCacheTest {
+
+    public static final String INBOUND = "INBOUND";
+    public static final String OUTBOUND = "OUTBOUND";
+    public static final String ALL_TYPES = "";
+    public static final Timestamp JULY_9 = Timestamp.valueOf("2021-07-09 00:00:00");
+    public static final Timestamp JULY_10 = Timestamp.valueOf("2021-07-10 00:00:00");
+    public static final Timestamp JULY_11 = Timestamp.valueOf("2021-07-11 00:00:00");
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final CallMetrics callMetrics = new CallMetrics(meterRegistry, new ActiveCallIndex());
+
+    private final AtomicInteger computations = new AtomicInteger();
+
+    private final CallStatisticsCache callStatisticsCache = new CallStatisticsCache(callMetrics, Duration.ofMinutes(1), 10);
+
+    @Test
+    void givenCachedStatistics_whenGetCallStatistics_thenShouldNotComputeThemAgain() {
+        CallStatistics callStatistics = callStatisticsCache.get(OUTBOUND, JULY_9, JULY_10, this::compute);
+
+        assertSame(callStatistics, callStatisticsCache.get(OUTBOUND, JULY_9, JULY_10, this::compute));
+        assertEquals(1, computations.get());
+        assertEquals(1, meterRegistry.get(CallMetrics.STATISTICS_CACHE).tag("result", CallMetrics.HIT).counter().count());
+        assertEquals(1, meterRegistry.get(CallMetrics.STATISTICS_CACHE).tag("result", CallMetrics.MISS).counter().count());
+    }
+
+    @Test
+    void givenOtherRange_whenGetCallStatistics_thenShouldComputeIt() {
+        callStatisticsCache.get(OUTBOUND, JULY_9, JULY_10, this::compute);
+        callStatisticsCache.get(OUTBOUND, JULY_9, JULY_11, this::compute);
+        callStatisticsCache.get(INBOUND, JULY_9, JULY_10, this::compute);
+
+        assertEquals(3, computations.get());
+    }
+
+    @Test
+    void givenConcurrentMisses_whenGetCallStatistics_thenShouldComputeThemOnce() throws Exception {
+        int requests = 8;
+        CountDownLatch waiting = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(requests);
+        try {
+            List<Future<CallStatistics>> responses = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                responses.add(executor.submit(() -> callStatisticsCache.get(ALL_TYPES, null, null, () -> {
+                    await(waiting);
+                    return compute();
+                })));
+            }
+            // let the other requests find the statistics being computed before completing them
+            Thread.sleep(100);
+            waiting.countDown();
+
+            CallStatistics callStatistics = responses.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<CallStatistics> response : responses) {
+                assertSame(callStatistics, response.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, computations.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void givenEndedCall_whenGetCallStatistics_thenShouldComputeOnlyTheRangesOfTheCall() {
+        callStatisticsCache.get(ALL_TYPES, null, null, this::compute);
+        callStatisticsCache.get(OUTBOUND, JULY_9, JULY_10, this::compute);
+        callStatisticsCache.get(OUTBOUND, JULY_10, JULY_11, this::compute);
+        callStatisticsCache.get(INBOUND, JULY_9, JULY_10, this::compute);
+
+        callStatisticsCache.callChanged(createCall(OUTBOUND, "2021-07-09 10:00:00.00"));
+
+        callStatisticsCache.get(ALL_TYPES, null, null, this::compute);
+        callStatisticsCache.get(OUTBOUND, JULY_9, JULY_10, this::compute);
+        callStatisticsCache.get(OUTBOUND, JULY_10, JULY_11, this::compute);
+        callStatisticsCache.get(INBOUND, JULY_9, JULY_10, this::compute);
+        assertEquals(6, computations.get());
+    }
+
+    @Test
+    void givenExpiredStatistics_whenGetCallStatistics_thenShouldComputeThemAgain() {
+        CallStatisticsCache expiringCache = new CallStatisticsCache(callMetrics, Duration.ofNanos(1), 10);
+
+        expiringCache.get(OUTBOUND, JULY_9, JULY_10, this::compute);
+        expiringCache.get(OUTBOUND, JULY_9, JULY_10, this::compute);
+
+        assertEquals(2, computations.get());
+    }
+
+    @Test
+    void givenFullCache_whenGetCallStatistics_thenShouldEvictTheLeastRecentlyUsed() {
+        CallStatisticsCache smallCache = new CallStatisticsCache(callMetrics, Duration.ofMinutes(1), 2);
+        smallCache.get(OUTBOUND, JULY_9, JULY_10, this::compute);
+        smallCache.get(OUTBOUND, JULY_10, JULY_11, this::compute);
+        smallCache.get(OUTBOUND, JULY_9, JULY_10, this::compute);
+
+        smallCache.get(INBOUND, JULY_9, JULY_10, this::compute);
+        smallCache.get(OUTBOUND, JULY_9, JULY_10, this::compute);
+        smallCache.get(OUTBOUND, JULY_10, JULY_11, this::compute);
+
+        assertEquals(4, computations.get());
+    }
+
+    @Test
+    void givenFailedComputation_whenGetCallStatistics_thenShouldComputeThemAgain() {
+        Supplier<CallStatistics> failure = () -> {
+            computations.incrementAndGet();
+            throw new IllegalStateException("database unavailable");
+        };
+        assertThrows(IllegalStateException.class, () -> callStatisticsCache.get(OUTBOUND, JULY_9, JULY_10, failure));
+
+        assertNotNull(callStatisticsCache.get(OUTBOUND, JULY_9, JULY_10, this::compute));
+        assertEquals(2, computations.get());
+    }
+
+    @Test
+    void givenNoTtl_whenGetCallStatistics_thenShouldAlwaysComputeThem() {
+        CallStatisticsCache disabledCache = new CallStatisticsCache(callMetrics, Duration.ZERO, 10);
+
+        disabledCache.get(OUTBOUND, JULY_9, JULY_10, this::compute);
+        disabledCache.get(OUTBOUND, JULY_9, JULY_10, this::compute);
+
+        assertEquals(2, computations.get());
+    }
+
+    private CallStatistics compute() {
+        computations.incrementAndGet();
+        return new CallStatisticsAccumulator().toCallStatistics();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Call createCall(String type, String startTime) {
+        Call call = new Call();
+        call.setId(1L);
+        call.setType(type);
+        call.setStatus("ENDED_CALL");
+        call.setStartTime(Timestamp.valueOf(startTime));
+        return call;
+    }
+}
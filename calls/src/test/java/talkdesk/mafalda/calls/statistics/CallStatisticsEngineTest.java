@@ -0,0 +1,169 @@
+package talkdesk.mafalda.calls.statistics;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import talkdesk.mafalda.calls.exceptions.CallServiceUnavailableException;
+import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.model.CallStatistics;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CallStatisticsEngineTest {
+
+    public static final String CALLER_NUMBER = "123456";
+    public static final String CALLEE_NUMBER = "234986";
+    public static final String INBOUND = "INBOUND";
+    public static final String OUTBOUND = "OUTBOUND";
+    public static final String ENDED_CALL = "ENDED_CALL";
+    public static final String DAY = "2021-07-09";
+
+    private final CallStatisticsAggregator callStatisticsAggregator = mock(CallStatisticsAggregator.class);
+
+    private final CallStatisticsEngine callStatisticsEngine = new CallStatisticsEngine(callStatisticsAggregator);
+
+    @Test
+    void givenEndedCalls_whenGetCallStatistics_thenShouldAggregateByDay() {
+        callStatisticsEngine.add(createCall(1, OUTBOUND, "2021-07-09 10:00:00.00", "2021-07-09 10:12:30.00"));
+        callStatisticsEngine.add(createCall(2, OUTBOUND, "2021-07-09 11:00:00.00", "2021-07-09 11:03:00.00"));
+        callStatisticsEngine.add(createCall(3, INBOUND, "2021-07-09 12:00:00.00", "2021-07-09 13:00:01.00"));
+
+        CallStatistics callStatistics = callStatisticsEngine.getCallStatistics();
+
+        assertEquals(3, callStatistics.getTotalNumberOfCalls());
+        assertEquals("00:15:30", callStatistics.getTotalOutboundCallDuration().get(DAY));
+        assertEquals("01:00:01", callStatistics.getTotalInboundCallDuration().get(DAY));
+        assertEquals(0.45, callStatistics.getTotalCostByOutbound().get(DAY));
+        assertEquals(3, callStatistics.getTotalCallsByCallerNumber().get(DAY).get(CALLER_NUMBER));
+        assertEquals(3, callStatistics.getTotalCallsByCalleeNumber().get(DAY).get(CALLEE_NUMBER));
+    }
+
+    @Test
+    void givenAddedAndRemovedCall_whenGetCallStatistics_thenShouldBeEmpty() {
+        Call call = createCall(1, OUTBOUND, "2021-07-09 10:00:00.00", "2021-07-09 10:12:30.00");
+        callStatisticsEngine.add(call);
+        callStatisticsEngine.remove(call);
+
+        CallStatistics callStatistics = callStatisticsEngine.getCallStatistics();
+
+        assertEquals(0, callStatistics.getTotalNumberOfCalls());
+        assertTrue(callStatistics.getTotalOutboundCallDuration().isEmpty());
+        assertTrue(callStatistics.getTotalCostByOutbound().isEmpty());
+        assertTrue(callStatistics.getTotalCallsByCallerNumber().isEmpty());
+        assertTrue(callStatistics.getTotalCallsByCalleeNumber().isEmpty());
+    }
+
+    @Test
+    void givenNoChanges_whenGetCallStatistics_thenShouldReuseStatistics() {
+        callStatisticsEngine.add(createCall(1, INBOUND, "2021-07-09 10:00:00.00", "2021-07-09 10:12:30.00"));
+
+        CallStatistics callStatistics = callStatisticsEngine.getCallStatistics();
+
+        assertSame(callStatistics, callStatisticsEngine.getCallStatistics());
+        callStatisticsEngine.add(createCall(2, INBOUND, "2021-07-09 11:00:00.00", "2021-07-09 11:12:30.00"));
+        assertNotSame(callStatistics, callStatisticsEngine.getCallStatistics());
+    }
+
+    @Test
+    void givenCallsInDatabase_whenRebuilding_thenShouldReportConsistency() {
+        Call call = createCall(1, OUTBOUND, "2021-07-09 10:00:00.00", "2021-07-09 10:12:30.00");
+        Call call2 = createCall(2, INBOUND, "2021-07-10 10:00:00.00", "2021-07-10 10:12:30.00");
+
+        assertFalse(callStatisticsEngine.rebuild(() -> accumulate(call, call2)));
+        assertEquals(2, callStatisticsEngine.getCallStatistics().getTotalNumberOfCalls());
+
+        assertTrue(callStatisticsEngine.rebuild(() -> accumulate(call2, call)));
+        assertFalse(callStatisticsEngine.rebuild(() -> accumulate(call)));
+        assertEquals(1, callStatisticsEngine.getCallStatistics().getTotalNumberOfCalls());
+    }
+
+    @Test
+    void givenCallsChangedDuringOneRebuild_whenRebuilding_thenShouldRetry() {
+        Call call = createCall(1, OUTBOUND, "2021-07-09 10:00:00.00", "2021-07-09 10:12:30.00");
+        Call call2 = createCall(2, INBOUND, "2021-07-10 10:00:00.00", "2021-07-10 10:12:30.00");
+        AtomicInteger attempts = new AtomicInteger();
+
+        callStatisticsEngine.rebuild(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                callStatisticsEngine.add(call2);
+            }
+            return accumulate(call, call2);
+        });
+
+        assertEquals(2, attempts.get());
+        assertEquals(2, callStatisticsEngine.getCallStatistics().getTotalNumberOfCalls());
+    }
+
+    @Test
+    void givenCallsChangedDuringEveryRebuild_whenRebuilding_thenShouldKeepTheCurrentStatistics() {
+        Call call = createCall(1, OUTBOUND, "2021-07-09 10:00:00.00", "2021-07-09 10:12:30.00");
+        Call call2 = createCall(2, INBOUND, "2021-07-10 10:00:00.00", "2021-07-10 10:12:30.00");
+        callStatisticsEngine.add(call);
+
+        assertThrows(CallServiceUnavailableException.class, () -> callStatisticsEngine.rebuild(() -> {
+            callStatisticsEngine.remove(call);
+            callStatisticsEngine.add(call);
+            return accumulate(call, call2);
+        }));
+
+        assertEquals(1, callStatisticsEngine.getCallStatistics().getTotalNumberOfCalls());
+    }
+
+    @Test
+    void givenCallCommittedButNotAppliedYet_whenRebuilding_thenShouldNotCountItTwice() {
+        Call call = createCall(1, OUTBOUND, "2021-07-09 10:00:00.00", "2021-07-09 10:12:30.00");
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            callStatisticsEngine.callEnded(call);
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            synchronizations.forEach(synchronization -> synchronization.beforeCommit(false));
+
+            // the call is committed in the database, so the rebuild sees it before it is added
+            assertThrows(CallServiceUnavailableException.class, () -> callStatisticsEngine.rebuild(() -> accumulate(call)));
+
+            synchronizations.forEach(TransactionSynchronization::afterCommit);
+            synchronizations.forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(1, callStatisticsEngine.getCallStatistics().getTotalNumberOfCalls());
+        assertTrue(callStatisticsEngine.rebuild(() -> accumulate(call)));
+    }
+
+    @Test
+    void givenEndedCallsInDatabase_whenRebuildingFromDatabase_thenShouldReturnStatistics() {
+        Call call = createCall(1, OUTBOUND, "2021-07-09 10:00:00.00", "2021-07-09 10:12:30.00");
+        when(callStatisticsAggregator.aggregateEndedCalls()).thenReturn(accumulate(call));
+
+        CallStatistics callStatistics = callStatisticsEngine.rebuild();
+
+        assertEquals(1, callStatistics.getTotalNumberOfCalls());
+        assertEquals(0.35, callStatistics.getTotalCostByOutbound().get(DAY));
+    }
+
+    private CallStatisticsAccumulator accumulate(Call... calls) {
+        CallStatisticsAccumulator accumulator = new CallStatisticsAccumulator();
+        Arrays.stream(calls).forEach(accumulator::add);
+        return accumulator;
+    }
+
+    private Call createCall(long id, String type, String startTime, String endTime) {
+        Call call = new Call();
+        call.setId(id);
+        call.setCallerNumber(CALLER_NUMBER);
+        call.setCalleeNumber(CALLEE_NUMBER);
+        call.setType(type);
+        call.setStatus(ENDED_CALL);
+        call.setStartTime(Timestamp.valueOf(startTime));
+        call.setEndTime(Timestamp.valueOf(endTime));
+        return call;
+    }
+}
@@ -0,0 +1,51 @@
+package talkdesk.mafalda.calls.statistics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongObjectMapTest {
+
+    @Test
+    void givenRandomOperations_whenComparingWithHashMap_thenShouldHaveSameEntries() {
+        Random random = new Random(42);
+        LongObjectMap<String> map = new LongObjectMap<>();
+        Map<Long, String> expected = new HashMap<>();
+
+        for (int i = 0; i < 100_000; i++) {
+            // few distinct keys, so the keys collide and are removed often
+            long key = random.nextInt(500) - 250L;
+            if (random.nextBoolean()) {
+                assertEquals(expected.computeIfAbsent(key, String::valueOf), map.computeIfAbsent(key, String::valueOf));
+            } else {
+                expected.remove(key);
+                map.remove(key);
+            }
+            assertEquals(expected.get(key), map.get(key));
+        }
+
+        assertEquals(expected.size(), map.size());
+        Map<Long, String> entries = new HashMap<>();
+        map.forEach(entries::put);
+        assertEquals(expected, entries);
+    }
+
+    @Test
+    void givenSameEntriesInDifferentOrder_whenComparing_thenShouldBeEqual() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+        LongObjectMap<String> other = new LongObjectMap<>();
+        for (long key = 0; key < 100; key++) {
+            map.computeIfAbsent(key, String::valueOf);
+            other.computeIfAbsent(99 - key, String::valueOf);
+        }
+
+        assertEquals(map, other);
+        assertEquals(map.hashCode(), other.hashCode());
+        other.remove(50);
+        assertNotEquals(map, other);
+    }
+}
@@ -0,0 +1,79 @@
+package talkdesk.mafalda.calls.statistics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NumberCountsTest {
+
+    @Test
+    void givenNumbers_whenEncoding_thenOnlyPlainDigitsAreEncoded() {
+        assertEquals(1_234_986, NumberCounts.encode("234986"));
+        assertEquals(10, NumberCounts.encode("0"));
+        assertEquals(1_999_999_999_999_999_999L, NumberCounts.encode("999999999999999999"));
+        assertEquals(-1, NumberCounts.encode("+351234986"));
+        assertEquals(-1, NumberCounts.encode("1234567890123456789"));
+        assertEquals(-1, NumberCounts.encode(""));
+    }
+
+    @Test
+    void givenNumbersWithLeadingZeros_whenEncoding_thenShouldKeepTheZeros() {
+        for (String number : new String[]{"064035142", "004234891", "00", "0"}) {
+            long encoded = NumberCounts.encode(number);
+
+            assertTrue(encoded >= 0, number);
+            assertEquals(number, NumberCounts.decode(encoded));
+        }
+        assertNotEquals(NumberCounts.encode("0"), NumberCounts.encode("00"));
+    }
+
+    @Test
+    void givenRandomCalls_whenComparingWithHashMap_thenShouldHaveSameCounts() {
+        Random random = new Random(42);
+        String[] numbers = new String[300];
+        for (int i = 0; i < numbers.length; i++) {
+            numbers[i] = i % 10 == 0 ? "+351" + i : i % 10 == 1 ? "0" + i : i % 10 == 2 ? "00" + i
+                    : String.valueOf(910_000_000 + i);
+        }
+        NumberCounts counts = new NumberCounts();
+        Map<String, Long> expected = new HashMap<>();
+
+        for (int i = 0; i < 100_000; i++) {
+            String number = numbers[random.nextInt(numbers.length)];
+            // remove only calls that were added, as the statistics do
+            long delta = expected.containsKey(number) && random.nextBoolean() ? -1 : 1;
+            expected.merge(number, delta, (current, added) -> current + added == 0 ? null : current + added);
+            counts.add(number, delta);
+        }
+
+        assertEquals(expected, counts.toMap());
+    }
+
+    @Test
+    void givenSameCountsAddedDifferently_whenComparing_thenShouldBeEqual() {
+        NumberCounts counts = new NumberCounts();
+        counts.add("123456", 2);
+        counts.add("+351123", 1);
+        NumberCounts other = new NumberCounts();
+        other.add("+351123", 1);
+        other.add("123456", 1);
+        NumberCounts more = new NumberCounts();
+        more.add("123456", 1);
+        more.add("234986", 1);
+        more.add("234986", -1);
+
+        other.addAll(more);
+
+        assertEquals(counts, other);
+        assertEquals(counts.hashCode(), other.hashCode());
+        counts.add("+351123", -1);
+        assertNotEquals(counts, other);
+        assertFalse(counts.isEmpty());
+        counts.add("123456", -2);
+        assertTrue(counts.isEmpty());
+    }
+}
@@ -0,0 +1,215 @@
+package talkdesk.mafalda.calls.stream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import talkdesk.mafalda.calls.exceptions.CallServiceUnavailableException;
+import talkdesk.mafalda.calls.metrics.CallMetrics;
+import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.model.CallStatisticsDelta;
+import talkdesk.mafalda.calls.service.ActiveCallIndex;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CallEventStreamTest {
+
+    public static final String OUTBOUND = "OUTBOUND";
+    public static final String ENDED_CALL = "ENDED_CALL";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final CallMetrics callMetrics = new CallMetrics(meterRegistry, new ActiveCallIndex());
+
+    /**
+     * events sent to the subscribers, as name and data
+     */
+    private final BlockingQueue<Object[]> sent = new LinkedBlockingQueue<>();
+
+    private final CountDownLatch slowSubscriber = new CountDownLatch(1);
+
+    private CallEventStream callEventStream;
+
+    @AfterEach
+    void tearDown() {
+        slowSubscriber.countDown();
+        if (callEventStream != null) {
+            callEventStream.shutdown();
+        }
+    }
+
+    @Test
+    void givenSubscriber_whenCallsChange_thenShouldSendTheEventsInOrder() throws Exception {
+        callEventStream = createCallEventStream(10, 10, 0);
+        callEventStream.subscribe();
+        Call call = createCall("2021-07-09 10:07:00");
+
+        callEventStream.callsStarted(Collections.singletonList(call));
+        callEventStream.callEnded(call);
+        callEventStream.callDeleted(call);
+
+        assertEvent(CallEventStream.CALL_STARTED, call);
+        assertEvent(CallEventStream.CALL_ENDED, call);
+        assertEvent(CallEventStream.CALL_DELETED, call);
+    }
+
+    @Test
+    void givenEndedCalls_whenPublishingStatistics_thenShouldSendTheChangesSinceTheLastStatistics() throws Exception {
+        callEventStream = createCallEventStream(10, 10, 0);
+        callEventStream.callsStarted(Collections.nCopies(3, createCall(null)));
+        callEventStream.callEnded(createCall("2021-07-09 10:07:00"));
+        callEventStream.callEnded(createCall("2021-07-09 10:03:00"));
+        callEventStream.subscribe();
+
+        callEventStream.publishStatistics();
+        callEventStream.publishStatistics();
+
+        CallStatisticsDelta delta = (CallStatisticsDelta) poll(CallEventStream.STATISTICS);
+        assertEquals(3, delta.getCallsStarted());
+        assertEquals(2, delta.getCallsEnded());
+        assertEquals("00:10:00", delta.getTotalDuration());
+        assertEquals(0.2, delta.getTotalCost());
+        CallStatisticsDelta next = (CallStatisticsDelta) poll(CallEventStream.STATISTICS);
+        assertEquals(0, next.getCallsStarted());
+        assertEquals("00:00:00", next.getTotalDuration());
+        assertEquals(delta.getTo(), next.getFrom());
+    }
+
+    @Test
+    void givenSlowSubscriber_whenItsBufferIsFull_thenShouldDisconnectIt() throws Exception {
+        callEventStream = createCallEventStream(2, 10, 1);
+        callEventStream.subscribe();
+        Call call = createCall(null);
+
+        // the buffer of two changes overflows, whether the first one is already being sent or not
+        for (int i = 0; i < 4; i++) {
+            callEventStream.callsStarted(Collections.singletonList(call));
+        }
+
+        assertEquals(1, meterRegistry.get(CallMetrics.STREAM_DROPPED).counter().count());
+        assertEquals(0, meterRegistry.get(CallMetrics.STREAM_SUBSCRIBERS).gauge().value());
+    }
+
+    @Test
+    void givenStalledSubscribers_whenCallsChange_thenShouldStillSendToTheOthers() throws Exception {
+        // one thread kept, both stalled subscribers block a thread sending
+        callEventStream = createCallEventStream(10, 10, 2);
+        callEventStream.subscribe();
+        callEventStream.subscribe();
+        callEventStream.subscribe();
+        Call call = createCall(null);
+
+        callEventStream.callsStarted(Collections.singletonList(call));
+        callEventStream.callsStarted(Collections.singletonList(call));
+
+        // the first change sent to the three subscribers, then the second one to the subscriber not stalled
+        for (int i = 0; i < 4; i++) {
+            assertEvent(CallEventStream.CALL_STARTED, call);
+        }
+        assertEquals(3, meterRegistry.get(CallMetrics.STREAM_SUBSCRIBERS).gauge().value());
+    }
+
+    @Test
+    void givenBulkRequestLargerThanTheBuffer_whenCallsChange_thenShouldSendAllTheEvents() throws Exception {
+        // room for the three changes, each of more calls than the buffer
+        callEventStream = createCallEventStream(3, 10, 0);
+        callEventStream.subscribe();
+        List<Call> calls = Collections.nCopies(10, createCall("2021-07-09 10:07:00"));
+
+        callEventStream.callsStarted(calls);
+        callEventStream.callsEnded(calls);
+        callEventStream.callsDeleted(calls);
+
+        for (String name : Arrays.asList(CallEventStream.CALL_STARTED, CallEventStream.CALL_ENDED,
+                CallEventStream.CALL_DELETED)) {
+            for (Call call : calls) {
+                assertEvent(name, call);
+            }
+        }
+        assertEquals(1, meterRegistry.get(CallMetrics.STREAM_SUBSCRIBERS).gauge().value());
+    }
+
+    @Test
+    void givenMaxSubscribers_whenSubscribing_thenThrowCallServiceUnavailableException() {
+        callEventStream = createCallEventStream(10, 1, 0);
+        callEventStream.subscribe();
+
+        assertThrows(CallServiceUnavailableException.class, () -> callEventStream.subscribe());
+        assertEquals(1, meterRegistry.get(CallMetrics.STREAM_SUBSCRIBERS).gauge().value());
+    }
+
+    /**
+     * @param slowSubscribers number of first subscribers whose sends block until the end of the test
+     */
+    private CallEventStream createCallEventStream(int bufferSize, int maxSubscribers, int slowSubscribers) {
+        AtomicInteger subscribers = new AtomicInteger();
+        return new CallEventStream(callMetrics, new ActiveCallIndex(), Duration.ofMinutes(1), bufferSize, maxSubscribers,
+                Duration.ZERO, 1) {
+            @Override
+            protected SseEmitter createEmitter(long timeoutMillis) {
+                boolean slow = subscribers.incrementAndGet() <= slowSubscribers;
+                return new SseEmitter(timeoutMillis) {
+                    @Override
+                    public void send(SseEventBuilder builder) throws IOException {
+                        List<Object> data = builder.build().stream()
+                                .map(ResponseBodyEmitter.DataWithMediaType::getData)
+                                .collect(Collectors.toList());
+                        // event:name\ndata:, the data, \n\n
+                        String name = data.get(0).toString().substring("event:".length()).split("\n")[0];
+                        sent.add(new Object[]{name, data.get(1)});
+                        if (slow) {
+                            await(slowSubscriber);
+                        }
+                    }
+                };
+            }
+        };
+    }
+
+    private void assertEvent(String name, Object data) throws InterruptedException {
+        assertSame(data, poll(name));
+    }
+
+    private Object poll(String name) throws InterruptedException {
+        Object[] event = sent.poll(5, TimeUnit.SECONDS);
+        assertNotNull(event, "no " + name + " event was sent");
+        assertEquals(name, event[0]);
+        return event[1];
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Call createCall(String endTime) {
+        Call call = new Call();
+        call.setId(1L);
+        call.setCallerNumber("123456");
+        call.setCalleeNumber("234986");
+        call.setType(OUTBOUND);
+        call.setStartTime(Timestamp.valueOf("2021-07-09 10:00:00"));
+        if (endTime != null) {
+            call.setStatus(ENDED_CALL);
+            call.setEndTime(Timestamp.valueOf(endTime));
+        }
+        return call;
+    }
+}
@@ -0,0 +1,72 @@
+package talkdesk.mafalda.calls.tracing;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+import talkdesk.mafalda.calls.metrics.CallMetrics;
+import talkdesk.mafalda.calls.service.ActiveCallIndex;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class QueryTraceFilterTest {
+
+    public static final String URI = "/calls/{callId}";
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final CallMetrics callMetrics = new CallMetrics(meterRegistry, new ActiveCallIndex());
+
+    @Test
+    void givenMetricsMode_whenHandlingRequest_thenShouldRecordTheQueriesByEndpoint() throws Exception {
+        MockHttpServletResponse response = handle(new QueryTraceFilter(callMetrics, false));
+
+        assertEquals(3, meterRegistry.get(CallMetrics.REQUEST_STATEMENTS).tags("method", "DELETE", "uri", URI)
+                .summary().totalAmount());
+        assertEquals(1, meterRegistry.get(CallMetrics.REQUEST_ROWS).summary().totalAmount());
+        assertEquals(2, meterRegistry.get(CallMetrics.REQUEST_REPOSITORY_CALLS).summary().totalAmount());
+        assertEquals(1, meterRegistry.get(CallMetrics.REQUEST_DATABASE).timer().count());
+        assertNull(response.getHeader(QueryTrace.STATEMENTS_HEADER));
+    }
+
+    @Test
+    void givenHeadersMode_whenHandlingRequestWithoutBody_thenShouldReturnTheQueriesInTheHeaders() throws Exception {
+        MockHttpServletResponse response = handle(new QueryTraceFilter(callMetrics, true));
+
+        assertEquals("3", response.getHeader(QueryTrace.STATEMENTS_HEADER));
+        assertEquals("1", response.getHeader(QueryTrace.ROWS_HEADER));
+        assertEquals("2", response.getHeader(QueryTrace.REPOSITORY_CALLS_HEADER));
+        assertEquals("0.003", response.getHeader(QueryTrace.DATABASE_TIME_HEADER));
+        assertNull(QueryTrace.current());
+    }
+
+    /**
+     * Handle a request that finds and deletes a call
+     */
+    private MockHttpServletResponse handle(QueryTraceFilter filter) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("DELETE", "/calls/1");
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, URI);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) {
+                QueryTrace trace = QueryTrace.current();
+                trace.addRepositoryCall();
+                trace.addStatement(1000);
+                trace.addRow(1000);
+                trace.addRepositoryCall();
+                trace.addStatement(500);
+                trace.addStatement(500);
+            }
+        }));
+        return response;
+    }
+}
@@ -0,0 +1,76 @@
+package talkdesk.mafalda.calls.tracing;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TracingDataSourceTest {
+
+    private TracingDataSource tracingDataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:tracing;DB_CLOSE_DELAY=-1");
+        tracingDataSource = new TracingDataSource(dataSource);
+        jdbcTemplate = new JdbcTemplate(tracingDataSource);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS number (value VARCHAR(20) PRIMARY KEY, calls BIGINT)");
+        jdbcTemplate.batchUpdate("INSERT INTO number VALUES (?, 0)",
+                Arrays.asList(new Object[]{"111111"}, new Object[]{"222222"}, new Object[]{"333333"}));
+    }
+
+    @AfterEach
+    void tearDown() {
+        QueryTrace.stop();
+        jdbcTemplate.execute("DROP TABLE number");
+    }
+
+    @Test
+    void givenTrace_whenQuerying_thenShouldCountTheStatementAndTheRows() {
+        QueryTrace trace = QueryTrace.start();
+
+        List<String> numbers = jdbcTemplate.queryForList("SELECT value FROM number WHERE calls = ?", String.class, 0);
+
+        assertEquals(3, numbers.size());
+        assertEquals(1, trace.getStatements());
+        assertEquals(3, trace.getRows());
+        assertTrue(trace.getDatabaseNanos() > 0);
+    }
+
+    @Test
+    void givenTrace_whenUpdatingInBatch_thenShouldCountTheBatchAsOneStatement() {
+        QueryTrace trace = QueryTrace.start();
+
+        jdbcTemplate.batchUpdate("UPDATE number SET calls = calls + 1 WHERE value = ?",
+                Arrays.asList(new Object[]{"111111"}, new Object[]{"222222"}));
+        jdbcTemplate.queryForObject("SELECT SUM(calls) FROM number", Long.class);
+
+        assertEquals(2, trace.getStatements());
+        assertEquals(1, trace.getRows());
+    }
+
+    @Test
+    void givenNoTrace_whenGettingConnection_thenShouldNotWrapIt() throws SQLException {
+        try (Connection connection = tracingDataSource.getConnection()) {
+            assertFalse(Proxy.isProxyClass(connection.getClass()));
+        }
+        QueryTrace.start();
+        try (Connection connection = tracingDataSource.getConnection()) {
+            assertTrue(Proxy.isProxyClass(connection.getClass()));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package talkdesk.mafalda.calls.writebehind;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import talkdesk.mafalda.calls.model.Call;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CallJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void givenAppendedRecords_whenReopeningTheJournal_thenShouldReplayThemInOrder() throws IOException {
+        try (CallJournal journal = new CallJournal(directory)) {
+            journal.sync(journal.appendCreated(Arrays.asList(createCall(1L, "+351210000001"), createCall(2L, "+351210000002"))));
+            journal.sync(journal.appendEnded(endCall(createCall(1L, "+351210000001"))));
+        }
+
+        try (CallJournal journal = new CallJournal(directory)) {
+            List<Call> created = new ArrayList<>();
+            List<Call> ended = new ArrayList<>();
+            List<Path> segments = journal.getClosedSegments();
+
+            assertEquals(1, segments.size());
+            assertEquals(3, CallJournal.replay(segments.get(0), created::add, ended::add));
+            assertEquals(Arrays.asList(1L, 2L), Arrays.asList(created.get(0).getId(), created.get(1).getId()));
+            assertEquals("+351210000002", created.get(1).getCallerNumber());
+            assertEquals("ON_CALL", created.get(1).getStatus());
+            assertEquals(1L, ended.get(0).getId());
+            assertEquals(Timestamp.valueOf("2021-07-09 10:05:00"), ended.get(0).getEndTime());
+        }
+    }
+
+    @Test
+    void givenTornRecord_whenReplaying_thenShouldStopBeforeIt() throws IOException {
+        try (CallJournal journal = new CallJournal(directory)) {
+            journal.sync(journal.appendCreated(Arrays.asList(createCall(1L, "+351210000001"), createCall(2L, "+351210000002"))));
+        }
+        Path segment = directory.resolve("calls-1.log");
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(segment) - 3);
+        }
+
+        List<Call> created = new ArrayList<>();
+        assertEquals(1, CallJournal.replay(segment, created::add, call -> fail("no ended calls")));
+        assertEquals(1L, created.get(0).getId());
+    }
+
+    @Test
+    void givenRotatedJournal_whenDeletingTheClosedSegments_thenShouldKeepOnlyTheCurrentOne() throws IOException {
+        try (CallJournal journal = new CallJournal(directory)) {
+            journal.appendCreated(Arrays.asList(createCall(1L, "+351210000001")));
+
+            List<Path> segments = journal.rotate();
+            journal.appendCreated(Arrays.asList(createCall(2L, "+351210000002")));
+            journal.delete(segments);
+
+            assertTrue(journal.getClosedSegments().isEmpty());
+            assertFalse(Files.exists(segments.get(0)));
+            assertTrue(Files.exists(directory.resolve("calls-2.log")));
+        }
+    }
+
+    private static Call createCall(long id, String callerNumber) {
+        Call call = new Call();
+        call.setId(id);
+        call.setCallerNumber(callerNumber);
+        call.setCalleeNumber("+351910000000");
+        call.setType("OUTBOUND");
+        call.setStatus("ON_CALL");
+        call.setStartTime(Timestamp.valueOf("2021-07-09 10:00:00"));
+        return call;
+    }
+
+    private static Call endCall(Call call) {
+        call.setStatus("ENDED_CALL");
+        call.setEndTime(Timestamp.valueOf("2021-07-09 10:05:00"));
+        return call;
+    }
+}
@@ -0,0 +1,219 @@
+package talkdesk.mafalda.calls.writebehind;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.AdditionalAnswers;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import talkdesk.mafalda.calls.exceptions.CallBadRequestException;
+import talkdesk.mafalda.calls.exceptions.CallNotFoundException;
+import talkdesk.mafalda.calls.metrics.CallMetrics;
+import talkdesk.mafalda.calls.model.Call;
+import talkdesk.mafalda.calls.repos.CallRepository;
+import talkdesk.mafalda.calls.service.ActiveCallIndex;
+import talkdesk.mafalda.calls.service.CallVersions;
+import talkdesk.mafalda.calls.statistics.CallStatisticsCache;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CallWriteBehindTest {
+
+    public static final String ON_CALL = "ON_CALL";
+    public static final String ENDED_CALL = "ENDED_CALL";
+    public static final Timestamp END_TIME = Timestamp.valueOf("2021-07-09 10:05:00");
+
+    @Autowired
+    private CallRepository callRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path directory;
+
+    private final CallMetrics callMetrics = new CallMetrics(new SimpleMeterRegistry(), new ActiveCallIndex());
+
+    private final List<CallWriteBehind> writeBehinds = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        writeBehinds.forEach(CallWriteBehind::shutdown);
+        callRepository.deleteAll();
+    }
+
+    @Test
+    void givenCreatedAndEndedCalls_whenFlushing_thenShouldSaveThemTogether() {
+        CallWriteBehind callWriteBehind = start();
+        List<Call> calls = callWriteBehind.createAll(Arrays.asList(createCall("+351210000001"), createCall("+351210000002")));
+        callWriteBehind.end(calls.get(0).getId(), END_TIME);
+
+        assertEquals(0, callRepository.count());
+        assertEquals(ENDED_CALL, callWriteBehind.find(calls.get(0).getId()).orElseThrow().getStatus());
+        assertEquals(ON_CALL, callWriteBehind.find(calls.get(1).getId()).orElseThrow().getStatus());
+
+        callWriteBehind.flush();
+
+        assertEquals(ENDED_CALL, callRepository.findById(calls.get(0).getId()).orElseThrow().getStatus());
+        assertEquals(END_TIME, callRepository.findById(calls.get(0).getId()).orElseThrow().getEndTime());
+        assertEquals(ON_CALL, callRepository.findById(calls.get(1).getId()).orElseThrow().getStatus());
+        assertEquals(0, callWriteBehind.getPendingCalls());
+        assertFalse(callWriteBehind.find(calls.get(0).getId()).isPresent());
+    }
+
+    @Test
+    void givenSavedCall_whenEndingIt_thenShouldEndItOnFlushOnlyOnce() {
+        CallWriteBehind callWriteBehind = start();
+        Call call = callWriteBehind.createAll(Collections.singletonList(createCall("+351210000001"))).get(0);
+        callWriteBehind.flush();
+
+        callWriteBehind.end(call.getId(), END_TIME);
+
+        assertThrows(CallBadRequestException.class,
+                () -> callWriteBehind.end(call.getId(), END_TIME));
+        assertEquals(ON_CALL, callRepository.findById(call.getId()).orElseThrow().getStatus());
+        callWriteBehind.flush();
+        assertEquals(ENDED_CALL, callRepository.findById(call.getId()).orElseThrow().getStatus());
+    }
+
+    @Test
+    void givenCallEndedAndFlushedWhileReadingIt_whenEndingIt_thenThrowCallBadRequestException() {
+        CallRepository racingRepository = mock(CallRepository.class, AdditionalAnswers.delegatesTo(callRepository));
+        CallWriteBehind callWriteBehind = start(racingRepository);
+        Call call = callWriteBehind.createAll(Collections.singletonList(createCall("+351210000001"))).get(0);
+        callWriteBehind.flush();
+        AtomicBoolean raced = new AtomicBoolean();
+        when(racingRepository.findById(call.getId())).thenAnswer(invocation -> {
+            Optional<Call> savedCall = callRepository.findById(call.getId());
+            // another request ends the call and a flush saves it before this read returns
+            if (raced.compareAndSet(false, true)) {
+                callWriteBehind.end(call.getId(), END_TIME);
+                callWriteBehind.flush();
+            }
+            return savedCall;
+        });
+
+        assertThrows(CallBadRequestException.class, () -> callWriteBehind.end(call.getId(), END_TIME));
+        assertEquals(0, callWriteBehind.getPendingCalls());
+        assertEquals(ENDED_CALL, callRepository.findById(call.getId()).orElseThrow().getStatus());
+    }
+
+    @Test
+    void givenSavedCallBeingRead_whenCreatingCalls_thenShouldNotWaitForTheRead() {
+        CallRepository slowRepository = mock(CallRepository.class, AdditionalAnswers.delegatesTo(callRepository));
+        CallWriteBehind callWriteBehind = start(slowRepository);
+        Call call = callWriteBehind.createAll(Collections.singletonList(createCall("+351210000001"))).get(0);
+        callWriteBehind.flush();
+        when(slowRepository.findById(call.getId())).thenAnswer(invocation -> {
+            // another request creates a call on another thread while the end reads the call
+            CompletableFuture.supplyAsync(() -> callWriteBehind.createAll(
+                    Collections.singletonList(createCall("+351210000002")))).get(5, TimeUnit.SECONDS);
+            return callRepository.findById(call.getId());
+        });
+
+        assertEquals(ENDED_CALL, callWriteBehind.end(call.getId(), END_TIME).getStatus());
+        assertEquals(2, callWriteBehind.getPendingCalls());
+    }
+
+    @Test
+    void givenUnknownCall_whenEndingIt_thenThrowCallNotFoundException() {
+        CallWriteBehind callWriteBehind = start();
+
+        assertThrows(CallNotFoundException.class, () -> callWriteBehind.end(123L, END_TIME));
+    }
+
+    @Test
+    void givenCallsLeftInTheJournal_whenStarting_thenShouldSaveThem() {
+        CallWriteBehind crashed = start();
+        List<Call> calls = crashed.createAll(Arrays.asList(createCall("+351210000001"), createCall("+351210000002")));
+        crashed.end(calls.get(1).getId(), END_TIME);
+        writeBehinds.remove(crashed);
+
+        CallWriteBehind callWriteBehind = start();
+
+        assertEquals(2, callWriteBehind.getRecoveredCalls());
+        assertEquals(ON_CALL, callRepository.findById(calls.get(0).getId()).orElseThrow().getStatus());
+        assertEquals(ENDED_CALL, callRepository.findById(calls.get(1).getId()).orElseThrow().getStatus());
+    }
+
+    @Test
+    void givenSegmentOfCallsAlreadySaved_whenStarting_thenShouldOnlyEndTheOngoingCalls() throws IOException {
+        CallWriteBehind callWriteBehind = start();
+        Call call = callWriteBehind.createAll(Collections.singletonList(createCall("+351210000001"))).get(0);
+        callWriteBehind.flush();
+        callWriteBehind.shutdown();
+        writeBehinds.remove(callWriteBehind);
+        // the segment of a flush committed just before a crash, and the end written afterwards
+        try (CallJournal journal = new CallJournal(directory)) {
+            journal.sync(journal.appendCreated(Collections.singletonList(call)));
+            call.setEndTime(END_TIME);
+            journal.sync(journal.appendEnded(call));
+        }
+
+        start();
+
+        assertEquals(1, callRepository.count());
+        assertEquals(ENDED_CALL, callRepository.findById(call.getId()).orElseThrow().getStatus());
+    }
+
+    @Test
+    void givenRollupStatistics_whenCreatingWriteBehind_thenThrowIllegalStateException() {
+        assertThrows(IllegalStateException.class, () -> createCallWriteBehind("rollup"));
+    }
+
+    private CallWriteBehind start() {
+        return start(callRepository);
+    }
+
+    private CallWriteBehind start(CallRepository callRepository) {
+        CallWriteBehind callWriteBehind = createCallWriteBehind(callRepository, "memory");
+        callWriteBehind.start();
+        writeBehinds.add(callWriteBehind);
+        return callWriteBehind;
+    }
+
+    private CallWriteBehind createCallWriteBehind(String statisticsSource) {
+        return createCallWriteBehind(callRepository, statisticsSource);
+    }
+
+    private CallWriteBehind createCallWriteBehind(CallRepository callRepository, String statisticsSource) {
+        // flushed only by the tests
+        return new CallWriteBehind(callRepository, transactionManager,
+                new CallStatisticsCache(callMetrics, Duration.ofSeconds(5), 1000), new CallVersions(Duration.ofSeconds(5)),
+                callMetrics, CallWriteBehind.WRITE_BEHIND, statisticsSource, directory.toString(), 500,
+                Duration.ofHours(1), 100_000);
+    }
+
+    private static Call createCall(String callerNumber) {
+        Call call = new Call();
+        call.setCallerNumber(callerNumber);
+        call.setCalleeNumber("+351910000000");
+        call.setType("OUTBOUND");
+        call.setStatus(ON_CALL);
+        call.setStartTime(Timestamp.valueOf("2021-07-09 10:00:00"));
+        return call;
+    }
+}